@@ -0,0 +1,70 @@
+package Benchmarks;
+
+import Server.GameBoard;
+
+import java.util.Random;
+
+/**
+ * This is the benchmark boards class. It sets up the representative board states the benchmarks run on,
+ * so every benchmark measures the same positions.
+ *
+ */
+public final class BenchmarkBoards {
+    private BenchmarkBoards() {
+    }
+
+    /**
+     * create() sets up a board.
+     *
+     * @param position "empty", "opening" (4 pieces), "midgame" (20 pieces, nobody has won),
+     *                 "won" ('X' has 4 in a row) or "full" (a drawn game).
+     * @return The board.
+     */
+    public static GameBoard create(String position) {
+        GameBoard board = new GameBoard();
+        switch (position) {
+            case "empty":
+                return board;
+            case "opening":
+                return play(board, "3324");
+            case "midgame":
+                return randomGame(board, 20);
+            case "won":
+                return play(board, "3031323");
+            case "full":
+                return randomGame(board, GameBoard.ROWS * GameBoard.COLS);
+            default:
+                throw new IllegalArgumentException("Unknown position: " + position);
+        }
+    }
+
+    private static GameBoard play(GameBoard board, String moves) {
+        for (int i = 0; i < moves.length(); i++) {
+            board.play(moves.charAt(i) - '0');
+        }
+        return board;
+    }
+
+    /**
+     * randomGame() plays random games (always the same ones) until one gets to the wanted amount of pieces
+     * without anybody winning.
+     */
+    private static GameBoard randomGame(GameBoard board, int pieces) {
+        Random random = new Random(42);
+        while (true) {
+            board.reset();
+            boolean won = false;
+            while (board.moveCount() < pieces && !won) {
+                int col = random.nextInt(GameBoard.COLS);
+                if (board.canPlay(col)) {
+                    char player = board.currentPlayer();
+                    board.play(col);
+                    won = board.winCheck(player) == player;
+                }
+            }
+            if (!won) {
+                return board;
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package Benchmarks;
+
+import Server.GameBoard;
+import Server.MessageEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the board encoding benchmark. It measures how many boards per second printBoard() can encode
+ * for a player in each protocol: the text board, the binary BOARD frame and the DELTA frame.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardEncodingBenchmark {
+    @Param({"text", "binary", "delta"})
+    public String protocol;
+
+    @Param({"opening", "midgame", "full"})
+    public String position;
+
+    private MessageEncoder encoder;
+    private GameBoard board;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    @Setup
+    public void setUp() {
+        board = BenchmarkBoards.create(position);
+        if (protocol.equals("text")) {
+            encoder = MessageEncoder.TEXT;
+        } else if (protocol.equals("binary")) {
+            encoder = MessageEncoder.BINARY;
+        } else {
+            encoder = MessageEncoder.DELTA;
+        }
+    }
+
+    @Benchmark
+    public int printBoard() throws IOException {
+        bytes.reset();
+        encoder.board(out, board, board.moveCount());
+        return bytes.size();
+    }
+}
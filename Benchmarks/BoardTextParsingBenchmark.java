@@ -0,0 +1,41 @@
+package Benchmarks;
+
+import Client.BoardTextParser;
+import Server.GameBoard;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the board text parsing benchmark. It measures how long GUIClient's updateBoard() takes to parse
+ * the terminal-friendly board the server sends with the text protocol.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardTextParsingBenchmark {
+    @Param({"empty", "midgame", "full"})
+    public String position;
+
+    private String text; //The board as the server sends it, without the first line (the client already read it).
+    private final char[][] cells = new char[BoardTextParser.ROWS][BoardTextParser.COLS];
+
+    @Setup
+    public void setUp() {
+        String rendered = BenchmarkBoards.create(position).render();
+        text = rendered.substring(rendered.indexOf('\n') + 1);
+    }
+
+    @Benchmark
+    public char[][] updateBoard() throws IOException {
+        BoardTextParser.parse(new BufferedReader(new StringReader(text)), cells);
+        return cells;
+    }
+}
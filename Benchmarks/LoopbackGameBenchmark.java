@@ -0,0 +1,169 @@
+package Benchmarks;
+
+import Protocol.BinaryProtocol;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the loopback game benchmark. It starts a real server in the benchmark JVM and plays full games
+ * against it with two binary protocol clients over loopback sockets. One operation is one move: sending
+ * the column and waiting until the other player is asked for theirs (or the game is over), so
+ * moveThroughput is moves per second and moveLatency gives the p50/p99 move latency.
+ *
+ * When a game is over both clients hang up and two new ones connect, outside of the measured time.
+ *
+ */
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class LoopbackGameBenchmark {
+    @Param({"thread", "reactor"})
+    public String mode;
+
+    private int port;
+    private final Random random = new Random(42);
+    private Bot x, o; //The two players of the current game.
+    private Bot toMove; //Whose turn it is, null once the game is over.
+
+    @Setup(Level.Trial)
+    public void startServer() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) { //Find a free port.
+            port = probe.getLocalPort();
+        }
+        Thread server = new Thread(() -> Server.Server.main(new String[]{"--port=" + port, "--mode=" + mode}), "benchmark-server");
+        server.setDaemon(true); //Every thread the server starts is a daemon too, so the fork can exit.
+        server.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) { //Wait until it is listening.
+            try (Socket ignored = new Socket("localhost", port)) {
+                break;
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void startGameIfOver() throws IOException {
+        if (toMove != null) {
+            return;
+        }
+        if (x != null) {
+            x.close();
+            o.close();
+        }
+        Bot first = new Bot(port);
+        Bot second = new Bot(port);
+        //Whoever the lobby made player 1 gets asked for a move, the other one is told to wait.
+        boolean firstIsX = first.readUntil(BinaryProtocol.YOUR_TURN, BinaryProtocol.WAITING) == BinaryProtocol.YOUR_TURN;
+        second.readUntil(BinaryProtocol.YOUR_TURN, BinaryProtocol.WAITING);
+        toMove = firstIsX ? first : second;
+        x = toMove;
+        o = toMove == first ? second : first;
+    }
+
+    @TearDown(Level.Trial)
+    public void hangUp() {
+        if (x != null) {
+            x.close();
+            o.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void moveThroughput() throws IOException {
+        move();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void moveLatency() throws IOException {
+        move();
+    }
+
+    /**
+     * move() plays a random column for whoever's turn it is and waits for the server to ask the other
+     * player (or say the game is over).
+     */
+    private void move() throws IOException {
+        Bot mover = toMove;
+        Bot other = mover == x ? o : x;
+        int col;
+        do {
+            col = random.nextInt(BinaryProtocol.COLS);
+        } while (mover.heights[col] >= BinaryProtocol.ROWS);
+        mover.sendMove(col);
+
+        int moverGot = mover.readUntil(BinaryProtocol.WAITING, BinaryProtocol.GAME_OVER);
+        int otherGot = other.readUntil(BinaryProtocol.YOUR_TURN, BinaryProtocol.GAME_OVER);
+        toMove = moverGot == BinaryProtocol.GAME_OVER || otherGot == BinaryProtocol.GAME_OVER ? null : other;
+    }
+
+    /**
+     * One client, keeping track of the column heights from the deltas it is sent.
+     */
+    private static final class Bot {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        final int[] heights = new int[BinaryProtocol.COLS];
+        final byte[] payload = new byte[BinaryProtocol.MAX_FRAME_LENGTH];
+
+        Bot(int port) throws IOException {
+            socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.write(BinaryProtocol.hello(BinaryProtocol.VERSION));
+            out.flush();
+        }
+
+        void sendMove(int col) throws IOException {
+            BinaryProtocol.writeHeader(out, BinaryProtocol.MOVE, 1);
+            out.writeByte(col);
+            out.flush();
+        }
+
+        /**
+         * readUntil() reads frames until one of the two types arrives.
+         *
+         * @return The type that arrived.
+         */
+        int readUntil(int type1, int type2) throws IOException {
+            while (true) {
+                int length = in.readUnsignedShort();
+                int type = in.readUnsignedByte();
+                in.readFully(payload, 0, length - 1);
+                if (type == BinaryProtocol.ASSIGN || type == BinaryProtocol.SNAPSHOT) { //A new game.
+                    Arrays.fill(heights, 0);
+                } else if (type == BinaryProtocol.DELTA) {
+                    heights[payload[4]]++;
+                }
+                if (type == type1 || type == type2) {
+                    return type;
+                }
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //Already gone.
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package Benchmarks;
+
+import Server.MoveDecoder;
+import Server.MoveInput;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the move parsing benchmark. It measures how long it takes to turn a line a text client typed into
+ * a column, for good moves, columns that aren't on the board and input that isn't a number at all. Both
+ * from a String with parseColumn() and straight from the bytes the way the connections do with a MoveDecoder.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveParsingBenchmark {
+    @Param({"3", "42", "-1", "abc", ""})
+    public String input;
+
+    private final MoveDecoder decoder = new MoveDecoder();
+    private byte[] line; //The input as a client sends it, line break and all.
+
+    @Setup
+    public void setup() {
+        line = (input + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public int parseColumn() {
+        return MoveInput.parseColumn(input);
+    }
+
+    @Benchmark
+    public int decode() {
+        int column = MoveDecoder.INCOMPLETE;
+        for (byte b : line) {
+            int decoded = decoder.decode(b & 0xFF);
+            if (decoded != MoveDecoder.INCOMPLETE) {
+                column = decoded;
+            }
+        }
+        return column;
+    }
+}
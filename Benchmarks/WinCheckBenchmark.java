@@ -0,0 +1,39 @@
+package Benchmarks;
+
+import Server.GameBoard;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the win check benchmark. It measures how long checking a board for a win takes, which the game
+ * does after every single move (GameThread's winCheck, now in GameBoard).
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WinCheckBenchmark {
+    @Param({"empty", "opening", "midgame", "won", "full"})
+    public String position;
+
+    private GameBoard board;
+
+    @Setup
+    public void setUp() {
+        board = BenchmarkBoards.create(position);
+    }
+
+    @Benchmark
+    public char winCheckX() {
+        return board.winCheck('X');
+    }
+
+    @Benchmark
+    public char winCheckO() {
+        return board.winCheck('O');
+    }
+}
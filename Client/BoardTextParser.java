@@ -0,0 +1,62 @@
+package Client;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * This is the board text parser class. It turns the terminal-friendly game board the server sends with the
+ * text protocol back into the pieces on the board. It has nothing to do with Swing so it can be used by
+ * anything that talks to the server in text (the GUI client uses it to update its cells).
+ *
+ */
+public final class BoardTextParser {
+    public static final int ROWS = 6; //Amount of rows on the board.
+    public static final int COLS = 7; //Amount of columns on the board.
+
+    private BoardTextParser() {
+    }
+
+    /**
+     * parse() reads the server output line by line until it reaches the end of the game board.
+     * It is called once the first line of the board (the top "-----" line) has been read.
+     *
+     * @param sockIn The BufferedReader of the server.
+     * @param cells  Filled in with 'X', 'O' or ' ' for every position, [row][col] with row 0 the top row.
+     * @throws IOException
+     */
+    public static void parse(BufferedReader sockIn, char[][] cells) throws IOException {
+        int row = 0;
+
+        while (true) { //Loop repeats to read every line that the server is sending...
+            String currentLine = sockIn.readLine();
+            if (currentLine == null) {
+                throw new EOFException("Server disconnected.");
+            }
+            if (currentLine.equals("\n") || currentLine.isEmpty()) {
+                row--;
+            }
+            if (currentLine.startsWith("-")) { //If we reached the end of the game board...
+                break;
+            } else if (currentLine.startsWith("|")) {
+                int col = 0;
+                for (int i = 0; i < COLS; i++) {
+                    cells[row][i] = ' ';
+                }
+                /*
+                This loop is used to determine the column in the line/row of each piece
+                 received from the server.
+                 */
+                for (int i = 0; i < currentLine.length() && col < COLS; i++) {
+                    if (currentLine.charAt(i) == 'X' || currentLine.charAt(i) == 'O') {
+                        cells[row][col] = currentLine.charAt(i);
+                        col++;
+                    } else if (currentLine.charAt(i) == ' ' && currentLine.charAt(i - 1) == ' ' && currentLine.charAt(i + 1) == ' ') {
+                        col++;
+                    } //Triple empty spaces in the text count as blank/unclaimed positions.
+                }
+            }
+            row++;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package Client;
+
+import Protocol.BinaryProtocol;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * This is the board view class. It is the game board of the GUIClient, painted by hand as one component
+ * instead of a JLabel (with a font and a border of its own) per cell. All it keeps is a copy of the board it
+ * shows, and when it changes it only repaints the cells that changed. The board can be any size, the cells
+ * share out the component between them, so it shows the bigger boards of the other variants just the same.
+ * Like every Swing component it must only be touched from the event dispatch thread.
+ *
+ */
+public class BoardView extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    private static final Color EMPTY = Color.WHITE;
+    private static final Color X = Color.RED;
+    private static final Color O = Color.YELLOW;
+
+    private char[][] cells = new char[BinaryProtocol.ROWS][BinaryProtocol.COLS]; //The board being shown, 'X', 'O' or anything else for empty.
+
+    public BoardView() {
+        setOpaque(true); //Every pixel is painted, so Swing needn't paint what is behind it.
+    }
+
+    /**
+     * setBoard() shows another board, repainting only the cells that are different from the one shown now.
+     * A board of another size is repainted completely.
+     *
+     * @param board The board, 'X', 'O' or ' ' for every cell (row 0 is the top row).
+     */
+    public void setBoard(char[][] board) {
+        if (board.length != cells.length || board[0].length != cells[0].length) { //Another variant, every cell moved.
+            cells = new char[board.length][board[0].length];
+            for (int row = 0; row < board.length; row++) {
+                System.arraycopy(board[row], 0, cells[row], 0, board[row].length);
+            }
+            repaint();
+            return;
+        }
+        for (int row = 0; row < cells.length; row++) {
+            for (int col = 0; col < cells[row].length; col++) {
+                if (board[row][col] != cells[row][col]) { //The server resends boards we already have, nothing to paint for those.
+                    cells[row][col] = board[row][col];
+                    repaint(cellBounds(row, col)); //Swing merges these into one paint.
+                }
+            }
+        }
+    }
+
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        for (int row = 0; row < cells.length; row++) {
+            for (int col = 0; col < cells[row].length; col++) {
+                Rectangle cell = cellBounds(row, col);
+                if (clip != null && !clip.intersects(cell)) { //Only the cells that changed need painting.
+                    continue;
+                }
+                char piece = cells[row][col];
+                g.setColor(piece == 'X' ? X : piece == 'O' ? O : EMPTY);
+                g.fillRect(cell.x, cell.y, cell.width, cell.height);
+                g.setColor(Color.BLACK);
+                g.drawRect(cell.x, cell.y, cell.width - 1, cell.height - 1);
+            }
+        }
+    }
+
+    /**
+     * cellBounds() is where a cell is drawn. The cells share out the whole component like a GridLayout would.
+     */
+    private Rectangle cellBounds(int row, int col) {
+        int rows = cells.length;
+        int cols = cells[0].length;
+        int x = col * getWidth() / cols;
+        int y = row * getHeight() / rows;
+        return new Rectangle(x, y, (col + 1) * getWidth() / cols - x, (row + 1) * getHeight() / rows - y);
+    }
+}
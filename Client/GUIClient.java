@@ -1,7 +1,12 @@
 package Client;
 
+import Protocol.BinaryProtocol;
+
 import java.net.*;
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
 import javax.swing.*;
 import java.awt.*;
 
@@ -11,108 +16,279 @@ import java.awt.*;
  * When ran a nice GUI appears with buttons and labels that lets you play the game using coloured
  * pieces like the actual connect 4 game.
  *
+ * By default it asks the server for the compact binary protocol so it doesn't have to parse the terminal
+ * board. If the server doesn't support it (or the client is started with "--text") it falls back to the
+ * text protocol. Talking to the server (in either protocol) is left to ServerConnection, this class only
+ * shows what it hears.
+ * Started with "--computer=<level>" it asks the server for a game against the computer at that difficulty
+ * (1 to 5) instead of another player. Started with "--variant=<n>" it asks for a bigger board (1 is 8 x 9,
+ * 2 is 10 x 12 connect 5, see BinaryProtocol), the board and its buttons take the size of whatever board
+ * the server says each game is played on.
+ * If the connection is lost in the middle of a game on a server that keeps a journal, it keeps trying to
+ * reconnect for a while and carries on with the game once the server is back.
+ * Started with "--watch=<game id>" it watches that game instead of playing (the id of a game is shown in
+ * its players' window titles), "--watch=any" watches whatever is being played and moves on to the next game
+ * when one is over.
+ *
+ * The server is listened to on the thread that created the client, never on the Swing event dispatch thread,
+ * and that thread never touches the Swing components itself. It only notes down what changed, and a single
+ * invokeLater() at a time hands whatever piled up to the event dispatch thread, so a fast stream of moves
+ * (a spectator, or a bot game) is shown as one update per frame rather than one per message. The board is a
+ * single custom-painted BoardView that repaints only the cells that changed.
+ *
  */
-public class GUIClient {
+public class GUIClient implements ServerConnection.Listener {
+    private static final long RECONNECT_MS = 60_000; //How long to keep trying to get back into a game after losing the server.
 
+    private JFrame frame;
     private JLabel messageLabel; //The JLabel that displays information to the player about the game.
-    private JLabel[][] GUIBoard = new JLabel[6][7]; // 2D array "local" copy of the game board represented using the GUI JLabels.
+    private BoardView boardView; //The game board.
+    private JPanel buttonPanel; //One button per column.
+    private volatile IntConsumer moveSender = column -> { }; //Sends the column a button was clicked for, in whichever protocol the server picked.
 
-    public GUIClient() {
-        try (Socket conn = new Socket("localhost", 1024); PrintWriter sockOut = new PrintWriter(conn.getOutputStream(), true); BufferedReader sockIn = new BufferedReader(new InputStreamReader(conn.getInputStream()));) {
-            createGUI(sockOut); //Method called to create and initialize the GUI.
+    private final boolean watching; //True if we are a spectator rather than a player.
 
-            /*
-            This is loop constantly repeats to listen to what the server is outputting.
-            Based on what the server sent, a series of if statements determine what to do next.
-             */
-            while (true) {
-                String sockLine = sockIn.readLine();
-                if (sockLine.startsWith("-") || sockLine.startsWith("|")) { //If the server sent the updated game board...
-                    updateBoard(sockIn); //Update the board locally aswell.
-                } else if (sockLine.startsWith(" [") || sockLine.isEmpty() || sockLine.equals("\n")) { //If server sent some formatting that is meant for the terminal...
-                    //Ignore these lines from the server
-                } else {
-                    if (sockLine.startsWith("Please enter a column number")) { //If the server says it is the players turn...
-                        messageLabel.setText("Its your turn! Select a column to add piece"); //Update the information label to inform the user.
-                    } else { //For anything else we simply set the information label to let the user know what the server sent...
-                        messageLabel.setText(sockLine);
-                        if (sockLine.startsWith("You are player")) { //If a new game has begun...
-                            /*
-                            The following nested for loop
-                            clears and resets the game board for the start of a new game.
-                             */
-                            for (int row = 0; row < 6; row++) {
-                                for (int col = 0; col < 7; col++) {
-                                    JLabel cellToUpdate = GUIBoard[row][col];
-                                    cellToUpdate.setText(""); //Clears any text
-                                    cellToUpdate.setBackground(Color.WHITE); //Removes any background colour.
-                                }
-                            }
-                        }
-                    }
+    //What the event dispatch thread has yet to show, guarded by this.
+    private char[][] cells = emptyBoard(BinaryProtocol.VARIANT_CLASSIC); //The board as the server last sent it.
+    private String message = null; //The new text of the message label, null if it didn't change.
+    private String title = null; //The new window title, null if it didn't change.
+    private boolean updateQueued = false; //True while an invokeLater() is on its way to show all of it.
+
+    public GUIClient(boolean askForBinary, int variant, int computerLevel, long watchGameId) {
+        watching = watchGameId != BinaryProtocol.WATCH_NONE;
+        long resumeGameId = 0; //The game to get back into after losing the server, 0 if none.
+        int resumeToken = 0;
+        long reconnectUntil = 0;
+        while (true) {
+            ServerConnection server = null;
+            try (Socket conn = new Socket("localhost", 1024)) {
+                if (frame == null) {
+                    SwingUtilities.invokeAndWait(this::createGUI); //Method called to create and initialize the GUI.
                 }
+
+                server = new ServerConnection(conn, askForBinary, variant, computerLevel, resumeGameId, resumeToken, watchGameId);
+                ServerConnection connected = server;
+                if (!watching) { //A spectator's buttons do nothing.
+                    moveSender = column -> sendMove(connected, column);
+                }
+                server.read(this); //Listens to the server until the connection is closed.
+            } catch (UnknownHostException e) {
+                System.out.println("I think there's a problem with the host name.");
+                return;
+            } catch (IOException e) {
+                //Finds out below whether there is a game to get back into.
+            } catch (InterruptedException | InvocationTargetException e) {
+                System.out.println("Couldn't create the window.");
+                return;
+            }
+
+            if (server != null) { //Was connected, so whatever game it was playing is the one to get back into.
+                resumeGameId = server.resumeGameId();
+                resumeToken = server.resumeToken();
+                reconnectUntil = System.currentTimeMillis() + RECONNECT_MS;
+            }
+            if (watching && server != null) { //The server lets a spectator go once its game is over.
+                showMessage("The game is over.");
+                return;
+            }
+            if (resumeGameId == 0 || System.currentTimeMillis() > reconnectUntil) {
+                System.out.println("Had an IO error for the connection.");
+                return;
             }
+            moveSender = column -> { };
+            showMessage("Lost the server, reconnecting...");
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
 
-        } catch (UnknownHostException e) {
-            System.out.println("I think there's a problem with the host name.");
+    /**
+     * sendMove() sends the column the player picked to the server.
+     */
+    private static void sendMove(ServerConnection server, int column) {
+        try {
+            server.sendMove(column);
         } catch (IOException e) {
             System.out.println("Had an IO error for the connection.");
         }
     }
 
+    public synchronized void variant(int variant) { //A game is starting, on a board of this size.
+        if (cells.length != BinaryProtocol.rows(variant) || cells[0].length != BinaryProtocol.cols(variant)) {
+            cells = emptyBoard(variant);
+            queueUpdate();
+        }
+    }
+
+    public void assigned(char player) { //If a new game has begun...
+        showMessage(player == 'X' ? "You are player 1: 'X'" : "You are player 2: 'O'");
+        clearBoard();
+    }
+
+    public void gameId(long gameId) {
+        if (watching) {
+            showTitle("Connect 4 - watching game " + gameId);
+            showMessage("Watching game " + gameId);
+            clearBoard();
+        } else {
+            showTitle("Connect 4 - game " + gameId); //So the player can tell others which game to watch.
+        }
+    }
+
+    public void board(char[][] board) { //If the server sent the updated game board...
+        updateBoard(board); //Update the board locally aswell.
+    }
+
+    public void moved(int row, int col, char player) { //If the server sent the move that was just made...
+        updateCell(row, col, player);
+    }
+
+    public void yourTurn() { //If the server says it is the players turn...
+        showMessage("Its your turn! Select a column to add piece"); //Update the information label to inform the user.
+    }
+
+    public void waiting() {
+        showMessage("Waiting for other player...");
+    }
+
+    public void invalidMove(int reason) {
+        if (reason == BinaryProtocol.COLUMN_FULL) {
+            showMessage("That column is full! Please select another one");
+        } else if (reason == BinaryProtocol.INVALID_COLUMN) {
+            showMessage("Invalid column number. Try again!");
+        } else {
+            showMessage("Invalid Input. Try again!");
+        }
+    }
+
+    public void gameOver(int result) {
+        if (watching) { //A spectator is told the result from 'X's point of view.
+            showMessage(result == BinaryProtocol.WIN ? "'X' won!" : result == BinaryProtocol.LOSE ? "'O' won!" : "It's a draw!");
+            return;
+        }
+        if (result == BinaryProtocol.WIN) {
+            showMessage("You Win! New game starting in 5 seconds...");
+        } else if (result == BinaryProtocol.LOSE) {
+            showMessage("You Lose! New game starting in 5 seconds...");
+        } else {
+            showMessage("It's a draw! New game starting in 5 seconds...");
+        }
+    }
+
+    public void message(String line) { //For anything else we simply set the information label to let the user know what the server sent...
+        showMessage(line);
+    }
+
+    /**
+     * clearBoard() clears and resets the game board for the start of a new game.
+     */
+    private synchronized void clearBoard() {
+        for (char[] row : cells) {
+            Arrays.fill(row, ' ');
+        }
+        queueUpdate();
+    }
+
     /**
-     * updateBoard() is responsible for updating the game board locally
-     * and is called whenever the server sents an updated version of the game board.
-     * It reads the servers output line by line until it reaches the end of the game board
-     * and parses the terminal friendly version into the GUI version by updating the GUI cells.
+     * updateBoard() updates the game board locally from the board the server sent.
      *
-     * @param sockIn The BufferedReader of the server.
-     * @throws IOException
+     * @param board 'X', 'O' or ' ' for every cell, only valid during the call.
      */
-    private void updateBoard(BufferedReader sockIn) throws IOException {
-        int row = 0;
+    private synchronized void updateBoard(char[][] board) {
+        if (board.length != cells.length || board[0].length != cells[0].length) {
+            cells = new char[board.length][board[0].length];
+        }
+        for (int row = 0; row < board.length; row++) {
+            System.arraycopy(board[row], 0, cells[row], 0, board[row].length);
+        }
+        queueUpdate();
+    }
 
-        while (true) { //Loop repeats to read every line that the server is sending...
-            String currentLine = sockIn.readLine();
-            if (currentLine.equals("\n") || currentLine.isEmpty()) {
-                row--;
-            }
-            if (currentLine.startsWith("-")) { //If we reached the end of the game board...
-                break;
-            } else if (currentLine.startsWith("|")) {
-                int col = 0;
-                /*
-                This loop is used to determine the column in the line/row of each piece
-                 received from the server.
-                 */
-                for (int i = 0; i < currentLine.length(); i++) {
-                    if (currentLine.charAt(i) == 'X') { //If it is X make GUI piece red...
-                        JLabel cellToUpdate = GUIBoard[row][col];
-                        cellToUpdate.setBackground(Color.RED);
-                        col++;
-                    }
-                    if (currentLine.charAt(i) == 'O') { //If it is O make GUI piece red...
-                        JLabel cellToUpdate = GUIBoard[row][col];
-                        cellToUpdate.setBackground(Color.yellow);
-                        col++;
-                    }
-                    if (currentLine.charAt(i) == ' ' && currentLine.charAt(i - 1) == ' ' && currentLine.charAt(i + 1) == ' ') {
-                        col++;
-                    } //Triple empty spaces in the text count as blank/unclaimed positions.
-                }
+    /**
+     * updateCell() places a single piece on the game board.
+     *
+     * @param row   Row index (0 is the top row)
+     * @param col   Column index
+     * @param piece 'X' or 'O'
+     */
+    private synchronized void updateCell(int row, int col, char piece) {
+        cells[row][col] = piece;
+        queueUpdate();
+    }
+
+    /**
+     * emptyBoard() is an empty board of a variant's size.
+     */
+    private static char[][] emptyBoard(int variant) {
+        char[][] board = new char[BinaryProtocol.rows(variant)][BinaryProtocol.cols(variant)];
+        for (char[] row : board) {
+            Arrays.fill(row, ' ');
+        }
+        return board;
+    }
+
+    private synchronized void showMessage(String text) {
+        message = text;
+        queueUpdate();
+    }
+
+    private synchronized void showTitle(String text) {
+        title = text;
+        queueUpdate();
+    }
+
+    /**
+     * queueUpdate() makes sure the event dispatch thread is going to show the latest changes. Only one
+     * update is ever on its way, anything that changes before it runs is shown by it too. Must be called
+     * with this locked.
+     */
+    private void queueUpdate() {
+        if (!updateQueued) {
+            updateQueued = true;
+            SwingUtilities.invokeLater(this::applyUpdate);
+        }
+    }
+
+    /**
+     * applyUpdate() shows everything that changed since the last update, on the event dispatch thread.
+     */
+    private void applyUpdate() {
+        char[][] board;
+        String text, newTitle;
+        synchronized (this) {
+            board = new char[cells.length][];
+            for (int row = 0; row < cells.length; row++) {
+                board[row] = cells[row].clone();
             }
-            row++;
+            text = message;
+            newTitle = title;
+            message = null;
+            title = null;
+            updateQueued = false;
+        }
+        boardView.setBoard(board);
+        if (buttonPanel.getComponentCount() != board[0].length) { //A game on a board with another amount of columns.
+            addButtons(board[0].length);
+        }
+        if (text != null) {
+            messageLabel.setText(text);
+        }
+        if (newTitle != null) {
+            frame.setTitle(newTitle);
         }
     }
 
     /**
      createGUI() is the method that creates and initiates the GUI when the program is first ran.
      It uses swing for most components such as JFrames, JPanels, and JLabels. This method just makes
-     all the components visible and adds the connect 4 cells to the JLabel 2D Array. It does not
-     update the board at all throughout the game.
+     all the components visible, the board itself is one BoardView. It does not update the board at
+     all throughout the game. Runs on the event dispatch thread.
      */
-    private void createGUI(PrintWriter sockOut) {
-        JFrame frame = new JFrame("Connect 4");
+    private void createGUI() {
+        frame = new JFrame("Connect 4");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         JPanel panel = new JPanel(new BorderLayout());
         frame.add(panel);
@@ -123,36 +299,33 @@ public class GUIClient {
         panel.add(messageLabel, BorderLayout.NORTH); //Adds the JLabel to the top ("North") of the JPanel.
 
         //Connect 4 board
-        JPanel boardPanel = new JPanel(new GridLayout(6, 7)); //Created a 6 x 7 grid layout JPanel that will contain all the cells.
-        panel.add(boardPanel, BorderLayout.CENTER); //Adds the boardPanel to the middle ("Center") of the JPanel.
-
-        /*
-        For each position in the grid layout JPanel these nested for loops
-        create a "cell" JLabel and adds it to GUI JLabel 2D Array at their
-        position.
-         */
-        for (int row = 0; row < 6; row++) {
-            for (int col = 0; col < 7; col++) {
-                JLabel cell = new JLabel("");
-                cell.setHorizontalAlignment(0);
-                cell.setFont(new Font("", Font.BOLD, 80));
-                cell.setBorder(new javax.swing.border.LineBorder(Color.BLACK));
-                cell.setOpaque(true);
-                cell.setBackground(Color.WHITE);
-                GUIBoard[row][col] = cell;
-                boardPanel.add(cell);
-            }
-        }
+        boardView = new BoardView(); //Paints all the cells itself, whatever the size of the board.
+        panel.add(boardView, BorderLayout.CENTER); //Adds the board to the middle ("Center") of the JPanel.
 
-        // Creating the 7 button panel
-        JPanel buttonPanel = new JPanel(new GridLayout(1, 7));
+        // Creating the button panel, one button per column
+        buttonPanel = new JPanel();
         panel.add(buttonPanel, BorderLayout.SOUTH); //Adding the buttonPanel to the bottom ("South") of the JPanel.
+        addButtons(BinaryProtocol.COLS);
+
+        frame.setSize(1000, 800);
+        frame.setVisible(true);
+    }
+
+    /**
+     * addButtons() puts a button for every column of the board in the button panel, replacing the ones there
+     * were. Runs on the event dispatch thread.
+     *
+     * @param cols The amount of columns on the board.
+     */
+    private void addButtons(int cols) {
+        buttonPanel.removeAll();
+        buttonPanel.setLayout(new GridLayout(1, cols));
 
         /*
         For Loop creates a new JButton for each column
         and adds it to the button JPanel
          */
-        for (int col = 0; col < 7; col++) {
+        for (int col = 0; col < cols; col++) {
             JButton button = new JButton("" + col);
             button.setPreferredSize(new Dimension(0, 40));
             buttonPanel.add(button);
@@ -163,16 +336,31 @@ public class GUIClient {
             when it is clicked it sends the column number to the server.
              */
             button.addActionListener(e -> {
-                sockOut.println(column);
+                moveSender.accept(column);
             });
         }
-
-        frame.setSize(1000, 800);
-        frame.setVisible(true);
+        buttonPanel.revalidate();
+        buttonPanel.repaint();
     }
 
 
     public static void main(String[] args) {
-        new GUIClient();
+        boolean askForBinary = true;
+        int variant = BinaryProtocol.VARIANT_CLASSIC;
+        int computerLevel = BinaryProtocol.OPPONENT_HUMAN;
+        long watchGameId = BinaryProtocol.WATCH_NONE;
+        for (String arg : args) {
+            if (arg.equals("--text")) { //"--text" sticks to the text protocol.
+                askForBinary = false;
+            } else if (arg.startsWith("--variant=")) {
+                variant = Integer.parseInt(arg.substring("--variant=".length()));
+            } else if (arg.startsWith("--computer=")) {
+                computerLevel = Integer.parseInt(arg.substring("--computer=".length()));
+            } else if (arg.startsWith("--watch=")) { //"--watch=<game id>" or "--watch=any" to watch instead of playing.
+                String game = arg.substring("--watch=".length());
+                watchGameId = game.equals("any") ? BinaryProtocol.WATCH_ANY : Long.parseLong(game);
+            }
+        }
+        new GUIClient(askForBinary, variant, computerLevel, watchGameId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+package Client;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is the latency histogram class. It counts how many times fell in each of a fixed set of buckets so
+ * percentiles can be worked out at the end without keeping every single time. Each power of two is split
+ * into SUB_BUCKETS buckets, so a percentile is never more than about 6% off however long the times get.
+ *
+ * Recording is a single atomic increment, so any amount of threads can record into one histogram at once
+ * without locking.
+ *
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; //Buckets per power of two.
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder(); //Sum of every time recorded.
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * record() counts one time.
+     *
+     * @param nanos The time in nanoseconds.
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(0, nanos)));
+        total.add(nanos);
+        count.increment();
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double meanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : total.sum() / 1_000_000.0 / n;
+    }
+
+    /**
+     * percentileMillis() finds the time that the given fraction of all recorded times were at or below.
+     *
+     * @param fraction From 0 to 1, 0.99 for the 99th percentile.
+     * @return The time in milliseconds (the top of its bucket), 0 if nothing was recorded.
+     */
+    public double percentileMillis(double fraction) {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += counts.get(i);
+        }
+        long wanted = (long) Math.ceil(fraction * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= wanted && seen > 0) {
+                return upperBound(i) / 1_000_000.0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * summary() is a one line summary of the histogram for the report.
+     */
+    public String summary() {
+        return String.format("n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms",
+                count(), meanMillis(), percentileMillis(0.5), percentileMillis(0.9), percentileMillis(0.99), percentileMillis(0.999));
+    }
+
+    /**
+     * bucket() finds the bucket of a time. Times below SUB_BUCKETS get a bucket each, above that the
+     * highest bit picks the power of two and the SUB_BUCKET_BITS bits below it pick the bucket within it.
+     */
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int highest = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift = highest - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * upperBound() is the largest time that goes in a bucket.
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,419 @@
+package Client;
+
+import Protocol.BinaryProtocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is the load generator. It is a headless client that pretends to be lots of players at once so we can
+ * find out how many the server can handle. Every simulated player (a Bot) is its own connection and thread
+ * and talks to the server through the same ServerConnection the GUI client uses, without any of the Swing.
+ *
+ * The bots connect gradually over the ramp up, play for the duration and hang up gradually over the ramp
+ * down. Every bot plays random legal moves (or the given columns, in order) after thinking for a while.
+ * It records how long connecting took, how long until the bot was in a game, how long the server took to
+ * answer every move and how many errors happened, and prints a progress line every few seconds and a
+ * report at the end.
+ * With "--spectators=<n>" it also connects n Watchers that watch whatever is being played, to see what a
+ * crowd of spectators costs the players. They count the board updates and snapshots they were sent.
+ * With "--variant=<n>" the bots ask for the board of that variant (see BinaryProtocol) instead of the classic one.
+ *
+ * Usage: java Client.LoadGenerator [--host=localhost] [--port=1024] [--clients=100] [--ramp-up=10]
+ *        [--duration=60] [--ramp-down=5] [--think=200] [--moves=random|<columns, like 3324>] [--text]
+ *        [--spectators=0] [--variant=0]
+ * Times are in seconds, apart from the think time which is in milliseconds.
+ *
+ */
+public class LoadGenerator {
+    private static final long REPORT_PERIOD_MS = 5000; //Time between progress lines.
+
+    private final InetSocketAddress server;
+    private final boolean askForBinary;
+    private final int variant; //The board the bots ask for.
+    private final long thinkMs;
+    private final String script; //Columns to play in order, null to play random moves.
+
+    private final LatencyHistogram connectTimes = new LatencyHistogram();
+    private final LatencyHistogram pairTimes = new LatencyHistogram(); //From connected until the first game started.
+    private final LatencyHistogram moveTimes = new LatencyHistogram(); //From sending a move until the server answered it.
+    private final AtomicInteger active = new AtomicInteger(); //Bots connected right now.
+    private final LongAdder games = new LongAdder(); //Games finished (counted by player 'X' only).
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder connectErrors = new LongAdder();
+    private final LongAdder disconnects = new LongAdder(); //Connections the server dropped.
+    private volatile boolean rampingDown = false; //From then on the server hanging up on a bot whose opponent left is expected.
+    private final LongAdder invalidMoves = new LongAdder();
+    private final LongAdder spectatorUpdates = new LongAdder(); //Board updates the watchers were sent.
+    private final LongAdder spectatorSnapshots = new LongAdder(); //Whole boards the watchers were sent, at the start of a game or after falling behind.
+
+    public LoadGenerator(InetSocketAddress server, boolean askForBinary, int variant, long thinkMs, String script) {
+        this.server = server;
+        this.askForBinary = askForBinary;
+        this.variant = variant;
+        this.thinkMs = thinkMs;
+        this.script = script;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = "localhost";
+        int port = 1024;
+        int clients = 100;
+        long rampUp = 10, duration = 60, rampDown = 5, think = 200;
+        String moves = "random";
+        boolean askForBinary = true;
+        int spectators = 0;
+        int variant = BinaryProtocol.VARIANT_CLASSIC;
+
+        for (String arg : args) { //Reads the options.
+            if (arg.startsWith("--host=")) {
+                host = arg.substring("--host=".length());
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--clients=")) {
+                clients = Integer.parseInt(arg.substring("--clients=".length()));
+            } else if (arg.startsWith("--ramp-up=")) {
+                rampUp = Long.parseLong(arg.substring("--ramp-up=".length()));
+            } else if (arg.startsWith("--duration=")) {
+                duration = Long.parseLong(arg.substring("--duration=".length()));
+            } else if (arg.startsWith("--ramp-down=")) {
+                rampDown = Long.parseLong(arg.substring("--ramp-down=".length()));
+            } else if (arg.startsWith("--think=")) {
+                think = Long.parseLong(arg.substring("--think=".length()));
+            } else if (arg.startsWith("--moves=")) {
+                moves = arg.substring("--moves=".length());
+            } else if (arg.equals("--text")) {
+                askForBinary = false;
+            } else if (arg.startsWith("--spectators=")) {
+                spectators = Integer.parseInt(arg.substring("--spectators=".length()));
+            } else if (arg.startsWith("--variant=")) {
+                variant = Integer.parseInt(arg.substring("--variant=".length()));
+            } else {
+                System.out.println("Unknown option: " + arg);
+                return;
+            }
+        }
+
+        LoadGenerator generator = new LoadGenerator(new InetSocketAddress(host, port), askForBinary, variant, think,
+                moves.equals("random") ? null : moves);
+        generator.run(clients, spectators, rampUp * 1000, duration * 1000, rampDown * 1000);
+    }
+
+    /**
+     * run() ramps the bots up, lets them play and ramps them down again, then prints the report. The
+     * watchers all connect at the start.
+     */
+    public void run(int clients, int spectators, long rampUpMs, long durationMs, long rampDownMs) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        List<Bot> bots = new ArrayList<>(clients);
+        Thread reporter = new Thread(() -> report(start), "load-report");
+        reporter.setDaemon(true);
+        reporter.start();
+
+        List<Watcher> watchers = new ArrayList<>(spectators);
+        for (int i = 0; i < spectators; i++) {
+            Watcher watcher = new Watcher();
+            watchers.add(watcher);
+            Thread thread = new Thread(null, watcher, "watcher-" + i, 256 * 1024);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        for (int i = 0; i < clients; i++) { //Ramp up.
+            sleepUntil(start + rampUpMs * i / clients);
+            Bot bot = new Bot(i);
+            bots.add(bot);
+            Thread thread = new Thread(null, bot, "bot-" + i, 256 * 1024); //Small stacks, there can be thousands of these.
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        long stopAt = start + rampUpMs + durationMs;
+        sleepUntil(stopAt);
+        rampingDown = true;
+        for (int i = 0; i < bots.size(); i++) { //Ramp down.
+            sleepUntil(stopAt + rampDownMs * i / bots.size());
+            bots.get(i).stop();
+        }
+        for (Watcher watcher : watchers) {
+            watcher.stop();
+        }
+        sleepUntil(stopAt + rampDownMs + 1000); //Give the last ones a moment to hang up.
+
+        System.out.println();
+        System.out.println("Connect:     " + connectTimes.summary());
+        System.out.println("Pairing:     " + pairTimes.summary());
+        System.out.println("Move RTT:    " + moveTimes.summary());
+        System.out.println(String.format("Games: %d, moves: %d, connect errors: %d, dropped connections: %d, invalid moves: %d",
+                games.sum(), moves.sum(), connectErrors.sum(), disconnects.sum(), invalidMoves.sum()));
+        if (spectators > 0) {
+            System.out.println(String.format("Spectators: %d, updates received: %d, snapshots received: %d",
+                    spectators, spectatorUpdates.sum(), spectatorSnapshots.sum()));
+        }
+    }
+
+    /**
+     * report() prints a progress line every REPORT_PERIOD_MS.
+     */
+    private void report(long start) {
+        long lastMoves = 0;
+        while (true) {
+            try {
+                Thread.sleep(REPORT_PERIOD_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long movesNow = moves.sum();
+            System.out.println(String.format("%4ds: %d connected, %d games, %.0f moves/s, move p99 %.2fms, %d errors",
+                    (System.currentTimeMillis() - start) / 1000, active.get(), games.sum(),
+                    (movesNow - lastMoves) * 1000.0 / REPORT_PERIOD_MS, moveTimes.percentileMillis(0.99),
+                    connectErrors.sum() + disconnects.sum() + invalidMoves.sum()));
+            lastMoves = movesNow;
+        }
+    }
+
+    private static void sleepUntil(long time) throws InterruptedException {
+        long wait = time - System.currentTimeMillis();
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+    }
+
+    /**
+     * One simulated spectator, watching whatever is being played. Only counts what it is sent.
+     */
+    private final class Watcher implements Runnable, ServerConnection.Listener {
+        private volatile Socket socket;
+        private volatile boolean stopping = false;
+
+        public void run() {
+            try {
+                socket = new Socket();
+                if (stopping) {
+                    return;
+                }
+                socket.connect(server);
+                new ServerConnection(socket, true, BinaryProtocol.OPPONENT_HUMAN, 0, 0, BinaryProtocol.WATCH_ANY).read(this);
+            } catch (IOException e) {
+                if (!stopping) {
+                    connectErrors.increment();
+                }
+            } finally {
+                stop();
+            }
+        }
+
+        void stop() {
+            stopping = true;
+            Socket s = socket;
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException e) {
+                    //Already gone.
+                }
+            }
+        }
+
+        public void assigned(char player) {
+        }
+
+        public void gameId(long gameId) {
+        }
+
+        public void variant(int variant) {
+        }
+
+        public void board(char[][] cells) {
+            spectatorSnapshots.increment();
+        }
+
+        public void moved(int row, int col, char player) {
+            spectatorUpdates.increment();
+        }
+
+        public void yourTurn() {
+        }
+
+        public void waiting() {
+        }
+
+        public void invalidMove(int reason) {
+        }
+
+        public void gameOver(int result) {
+        }
+
+        public void message(String line) {
+        }
+    }
+
+    /**
+     * One simulated player. Everything apart from stop() runs on the bots own thread.
+     */
+    private final class Bot implements Runnable, ServerConnection.Listener {
+        private final Random random;
+        private final int[] heights = new int[BinaryProtocol.MAX_COLS]; //Pieces in every column.
+        private int rows = BinaryProtocol.ROWS; //The size of the board of the current game.
+        private int cols = BinaryProtocol.COLS;
+        private volatile boolean stopping = false;
+        private volatile Socket socket;
+        private ServerConnection connection;
+        private long connectedAt;
+        private boolean paired = false;
+        private char player; //'X' or 'O' in the current game.
+        private long moveSentAt = 0; //When the last move was sent, 0 once the server answered it.
+        private int scriptIndex = 0;
+
+        Bot(int id) {
+            random = new Random(id);
+        }
+
+        public void run() {
+            long started = System.nanoTime();
+            try {
+                socket = new Socket();
+                if (stopping) {
+                    return;
+                }
+                socket.connect(server);
+                connectedAt = System.nanoTime();
+                connectTimes.record(connectedAt - started);
+            } catch (IOException e) {
+                if (!stopping) {
+                    connectErrors.increment();
+                }
+                return;
+            }
+            active.incrementAndGet();
+            try {
+                connection = new ServerConnection(socket, askForBinary, variant, BinaryProtocol.OPPONENT_HUMAN, 0, 0, BinaryProtocol.WATCH_NONE);
+                connection.read(this);
+            } catch (IOException e) {
+                if (!stopping && !rampingDown) {
+                    disconnects.increment();
+                }
+            } finally {
+                active.decrementAndGet();
+                closeSocket();
+            }
+        }
+
+        void stop() {
+            stopping = true;
+            closeSocket();
+        }
+
+        private void closeSocket() {
+            Socket s = socket;
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException e) {
+                    //Already gone.
+                }
+            }
+        }
+
+        public void assigned(char player) {
+            if (!paired) {
+                paired = true;
+                pairTimes.record(System.nanoTime() - connectedAt);
+            }
+            this.player = player;
+            Arrays.fill(heights, 0);
+            scriptIndex = 0;
+            moveSentAt = 0;
+        }
+
+        public void gameId(long gameId) {
+        }
+
+        public void variant(int variant) {
+            rows = BinaryProtocol.rows(variant);
+            cols = BinaryProtocol.cols(variant);
+        }
+
+        public void board(char[][] cells) {
+            rows = cells.length; //The text protocol only ever plays the classic board, so it never says.
+            cols = cells[0].length;
+            for (int col = 0; col < cols; col++) {
+                heights[col] = 0;
+                while (heights[col] < rows && cells[rows - 1 - heights[col]][col] != ' ') {
+                    heights[col]++;
+                }
+            }
+        }
+
+        public void moved(int row, int col, char player) {
+            heights[col] = rows - row;
+        }
+
+        public void yourTurn() {
+            if (thinkMs > 0) {
+                try {
+                    Thread.sleep(thinkMs / 2 + random.nextInt((int) thinkMs + 1)); //Somewhere between half and one and a half times the think time.
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            try {
+                moveSentAt = System.nanoTime();
+                connection.sendMove(pickColumn());
+                moves.increment();
+            } catch (IOException e) {
+                closeSocket(); //The read loop finds out and counts it.
+            }
+        }
+
+        /**
+         * pickColumn() picks the next scripted column if there is one that isn't full, otherwise a random legal one.
+         */
+        private int pickColumn() {
+            while (script != null && scriptIndex < script.length()) {
+                int col = script.charAt(scriptIndex++) - '0';
+                if (col >= 0 && col < cols && heights[col] < rows) {
+                    return col;
+                }
+            }
+            int col;
+            do {
+                col = random.nextInt(cols);
+            } while (heights[col] >= rows);
+            return col;
+        }
+
+        public void waiting() {
+            answered();
+        }
+
+        public void invalidMove(int reason) {
+            invalidMoves.increment();
+            moveSentAt = 0;
+        }
+
+        public void gameOver(int result) {
+            answered();
+            if (player == 'X') {
+                games.increment();
+            }
+        }
+
+        public void message(String line) {
+        }
+
+        private void answered() {
+            if (moveSentAt != 0) {
+                moveTimes.record(System.nanoTime() - moveSentAt);
+                moveSentAt = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package Client;
+
+import Protocol.BinaryProtocol;
+
+import java.io.*;
+import java.net.Socket;
+
+/**
+ * This is the server connection class. It is everything a client needs to talk to the server without any
+ * of the GUI: it asks for the binary protocol, works out which protocol the server picked, sends moves and
+ * turns whatever the server sends (text lines or binary frames) into calls to a Listener. The GUI client
+ * and the headless LoadGenerator bots both use it, so they parse the server exactly the same way.
+ * It also remembers the game id and token of the RESUMABLE frame, so a client that loses the server in the
+ * middle of a game can reconnect with them and carry on.
+ * A connection can also watch games instead of playing them, see the constructor taking watchGameId.
+ * With version 8 it can ask for a bigger board than the classic one, every game then starts with a variant()
+ * telling the listener the size of the board that follows.
+ *
+ */
+public class ServerConnection implements Closeable {
+
+    /**
+     * What the server told us. Everything is called from the thread running read().
+     */
+    public interface Listener {
+        void assigned(char player); //A new game has begun and we are 'X' or 'O'.
+
+        void gameId(long gameId); //The id our game can be watched with, or the game we are now watching.
+
+        void variant(int variant); //The game that is starting is played on this BinaryProtocol variant's board (only from version 8, it is classic otherwise).
+
+        void board(char[][] cells); //The whole board, 'X', 'O' or ' ' for every cell (row 0 is the top row). Only valid during the call.
+
+        void moved(int row, int col, char player); //Only one piece was added to the board (row 0 is the top row).
+
+        void yourTurn();
+
+        void waiting(); //It is the other players turn.
+
+        void invalidMove(int reason); //One of BinaryProtocol's INVALID_MOVE reasons.
+
+        void gameOver(int result); //One of BinaryProtocol's GAME_OVER results.
+
+        void message(String line); //Anything else the server sent with the text protocol.
+    }
+
+    private final Socket socket;
+    private final BufferedInputStream in;
+    private final DataOutputStream out;
+    private final boolean binary; //True if the server picked the binary protocol.
+    private int lastSequence = -1; //Sequence number of the last board change we applied, -1 if we are waiting for a snapshot.
+    private final char[][] textBoard = new char[BoardTextParser.ROWS][BoardTextParser.COLS]; //The board parsed from the text protocol.
+    private int variant = BinaryProtocol.VARIANT_CLASSIC; //The board of the game being played, as the last VARIANT frame said.
+    private char[][] cells = new char[BinaryProtocol.ROWS][BinaryProtocol.COLS]; //The board the last binary BOARD or SNAPSHOT held.
+    private volatile long resumeGameId = 0; //The game we can get back into if the server restarts, 0 if none.
+    private volatile int resumeToken = 0;
+
+    /**
+     * Connects to the server and works out which protocol it picked. With the text protocol the server
+     * doesn't send anything until the game starts, so this waits until we have been paired up.
+     *
+     * @param socket        The socket, already connected.
+     * @param askForBinary  False to stick to the text protocol.
+     * @param computerLevel BinaryProtocol.OPPONENT_HUMAN or the difficulty of the computer to play.
+     * @throws IOException
+     */
+    public ServerConnection(Socket socket, boolean askForBinary, int computerLevel) throws IOException {
+        this(socket, askForBinary, computerLevel, 0, 0);
+    }
+
+    /**
+     * Connects to the server to get back into a game, with the game id and token of an earlier connection's
+     * resumeGameId() and resumeToken(). If the game no longer exists the server puts us in the lobby.
+     *
+     * @param socket        The socket, already connected.
+     * @param askForBinary  False to stick to the text protocol (which can't resume a game).
+     * @param computerLevel BinaryProtocol.OPPONENT_HUMAN or the difficulty of the computer to play.
+     * @param resumeGameId  The game to get back into, 0 for a new game.
+     * @param resumeToken   The token for our seat in it.
+     * @throws IOException
+     */
+    public ServerConnection(Socket socket, boolean askForBinary, int computerLevel, long resumeGameId, int resumeToken) throws IOException {
+        this(socket, askForBinary, computerLevel, resumeGameId, resumeToken, BinaryProtocol.WATCH_NONE);
+    }
+
+    /**
+     * Connects to the server to watch a game instead of playing. The server sends a gameId() for the game,
+     * its board and moves, and gameOver() from 'X's point of view at the end. With WATCH_ANY it carries on
+     * with another game, otherwise it hangs up once the game is over (or straight away if there is no such
+     * game). Watching needs the binary protocol.
+     *
+     * @param socket        The socket, already connected.
+     * @param askForBinary  False to stick to the text protocol (which can't watch).
+     * @param computerLevel BinaryProtocol.OPPONENT_HUMAN or the difficulty of the computer to play.
+     * @param resumeGameId  The game to get back into, 0 for a new game.
+     * @param resumeToken   The token for our seat in it.
+     * @param watchGameId   BinaryProtocol.WATCH_NONE to play, or the game (or WATCH_ANY) to watch.
+     * @throws IOException
+     */
+    public ServerConnection(Socket socket, boolean askForBinary, int computerLevel, long resumeGameId, int resumeToken, long watchGameId) throws IOException {
+        this(socket, askForBinary, BinaryProtocol.VARIANT_CLASSIC, computerLevel, resumeGameId, resumeToken, watchGameId);
+    }
+
+    /**
+     * Connects to the server to play (or watch) on the board of a variant. A server from before version 8
+     * (or one that doesn't know the variant) plays the classic board instead, the listener's variant() says
+     * which board each game is really played on.
+     *
+     * @param socket        The socket, already connected.
+     * @param askForBinary  False to stick to the text protocol (which only plays the classic board).
+     * @param variant       One of BinaryProtocol's VARIANT_ constants.
+     * @param computerLevel BinaryProtocol.OPPONENT_HUMAN or the difficulty of the computer to play (which only plays the classic board).
+     * @param resumeGameId  The game to get back into, 0 for a new game.
+     * @param resumeToken   The token for our seat in it.
+     * @param watchGameId   BinaryProtocol.WATCH_NONE to play, or the game (or WATCH_ANY) to watch.
+     * @throws IOException
+     */
+    public ServerConnection(Socket socket, boolean askForBinary, int variant, int computerLevel, long resumeGameId, int resumeToken, long watchGameId) throws IOException {
+        this.socket = socket;
+        in = new BufferedInputStream(socket.getInputStream());
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        if (askForBinary) {
+            out.write(BinaryProtocol.hello(BinaryProtocol.VERSION, variant, 0, computerLevel, resumeGameId, resumeToken, watchGameId)); //Ask the server for the binary protocol.
+            out.flush();
+        }
+
+        /*
+        The first byte the server sends tells us which protocol we got. A binary frame starts with
+        its 2 byte length, which is always below 256, so its first byte is 0. The text protocol
+        never starts with a 0.
+         */
+        in.mark(1);
+        int first = in.read();
+        in.reset();
+        if (first < 0) {
+            throw new EOFException("Server disconnected.");
+        }
+        binary = askForBinary && first == 0;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * resumeGameId() is the game we could get back into if the connection was lost now, 0 if there is none
+     * (the server keeps no journal, the game is over or we are using the text protocol).
+     */
+    public long resumeGameId() {
+        return resumeGameId;
+    }
+
+    public int resumeToken() {
+        return resumeToken;
+    }
+
+    /**
+     * sendMove() sends the column the player picked, as a binary MOVE frame or a line of text.
+     */
+    public void sendMove(int column) throws IOException {
+        synchronized (out) { //The reading thread may be sending a RESYNC at the same time.
+            if (binary) {
+                BinaryProtocol.writeHeader(out, BinaryProtocol.MOVE, 1);
+                out.writeByte(column);
+            } else {
+                out.write((column + System.lineSeparator()).getBytes());
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * read() listens to the server until the connection is closed.
+     *
+     * @param listener Told about everything the server sends.
+     * @throws IOException When the connection is closed.
+     */
+    public void read(Listener listener) throws IOException {
+        if (binary) {
+            readFrames(new DataInputStream(in), listener);
+        } else {
+            readLines(new BufferedReader(new InputStreamReader(in)), listener);
+        }
+    }
+
+    /**
+     * readLines() listens to the server when it is using the text protocol.
+     */
+    private void readLines(BufferedReader sockIn, Listener listener) throws IOException {
+        /*
+        This is loop constantly repeats to listen to what the server is outputting.
+        Based on what the server sent, a series of if statements determine what to do next.
+         */
+        while (true) {
+            String sockLine = sockIn.readLine();
+            if (sockLine == null) {
+                throw new EOFException("Server disconnected.");
+            }
+            if (sockLine.startsWith("-") || sockLine.startsWith("|")) { //If the server sent the updated game board...
+                BoardTextParser.parse(sockIn, textBoard);
+                listener.board(textBoard);
+            } else if (sockLine.startsWith(" [") || sockLine.isEmpty() || sockLine.equals("\n")) { //If server sent some formatting that is meant for the terminal...
+                //Ignore these lines from the server
+            } else if (sockLine.startsWith("Please enter a column number")) { //If the server says it is the players turn...
+                listener.yourTurn();
+            } else if (sockLine.startsWith("You are player")) { //If a new game has begun...
+                listener.assigned(sockLine.endsWith("'X'") ? 'X' : 'O');
+            } else if (sockLine.startsWith("Waiting for other player")) {
+                listener.waiting();
+            } else if (sockLine.startsWith("That column is full")) {
+                listener.invalidMove(BinaryProtocol.COLUMN_FULL);
+            } else if (sockLine.startsWith("Invalid column number")) {
+                listener.invalidMove(BinaryProtocol.INVALID_COLUMN);
+            } else if (sockLine.startsWith("Invalid Input")) {
+                listener.invalidMove(BinaryProtocol.INVALID_INPUT);
+            } else if (sockLine.startsWith("You Win!")) {
+                listener.gameOver(BinaryProtocol.WIN);
+            } else if (sockLine.startsWith("You Lose!")) {
+                listener.gameOver(BinaryProtocol.LOSE);
+            } else if (sockLine.startsWith("It's a draw!")) {
+                listener.gameOver(BinaryProtocol.DRAW);
+            } else { //For anything else we simply pass on what the server sent...
+                listener.message(sockLine);
+            }
+        }
+    }
+
+    /**
+     * readFrames() listens to the server when it is using the binary protocol. Every message is one frame
+     * so there is nothing to parse. With version 2 the board arrives as a snapshot at the start of a game
+     * followed by one delta per move, so only the cell that changed gets updated.
+     */
+    private void readFrames(DataInputStream sockIn, Listener listener) throws IOException {
+        byte[] payload = new byte[BinaryProtocol.MAX_FRAME_LENGTH];
+        java.nio.ByteBuffer payloadBuffer = java.nio.ByteBuffer.wrap(payload); //Used to read the bitboards out of the payload.
+        while (true) {
+            int length = sockIn.readUnsignedShort();
+            int type = sockIn.readUnsignedByte();
+            sockIn.readFully(payload, 0, length - 1);
+
+            if (type == BinaryProtocol.VARIANT) { //If a game is starting on another board than the last one...
+                if (BinaryProtocol.isVariant(payload[0]) && payload[0] != variant) {
+                    variant = payload[0];
+                    cells = new char[BinaryProtocol.rows(variant)][BinaryProtocol.cols(variant)];
+                }
+                listener.variant(variant);
+            } else if (type == BinaryProtocol.ASSIGN) { //If a new game has begun...
+                listener.assigned((char) payload[0]);
+            } else if (type == BinaryProtocol.BOARD) { //If the server sent the updated game board (always classic)...
+                long xBoard = payloadBuffer.getLong(0);
+                long oBoard = payloadBuffer.getLong(8);
+                for (int row = 0; row < BinaryProtocol.ROWS; row++) {
+                    for (int col = 0; col < BinaryProtocol.COLS; col++) {
+                        cells[row][col] = BinaryProtocol.pieceAt(xBoard, oBoard, row, col);
+                    }
+                }
+                listener.board(cells);
+            } else if (type == BinaryProtocol.SNAPSHOT) { //If the server sent the whole game board...
+                lastSequence = payloadBuffer.getInt(0);
+                readSnapshot(payload);
+                listener.board(cells);
+            } else if (type == BinaryProtocol.DELTA) { //If the server sent the move that was just made...
+                int sequence = payloadBuffer.getInt(0);
+                if (lastSequence >= 0 && sequence == lastSequence + 1) {
+                    lastSequence = sequence;
+                    listener.moved(payload[5], payload[4], (char) payload[6]);
+                } else if (lastSequence >= 0) { //We missed a move, ask for the whole board and ignore deltas until it arrives.
+                    lastSequence = -1;
+                    sendResync();
+                }
+            } else if (type == BinaryProtocol.YOUR_TURN) { //If the server says it is the players turn...
+                listener.yourTurn();
+            } else if (type == BinaryProtocol.WAITING) {
+                listener.waiting();
+            } else if (type == BinaryProtocol.INVALID_MOVE) {
+                listener.invalidMove(payload[0]);
+            } else if (type == BinaryProtocol.GAME_OVER) {
+                resumeGameId = 0; //Nothing to come back to.
+                listener.gameOver(payload[0]);
+            } else if (type == BinaryProtocol.RESUMABLE) {
+                resumeGameId = payloadBuffer.getLong(0);
+                resumeToken = payloadBuffer.getInt(8);
+            } else if (type == BinaryProtocol.GAME_ID) {
+                listener.gameId(payloadBuffer.getLong(0));
+            } else if (type == BinaryProtocol.PING) { //The server wants to know we are still here.
+                sendPong();
+            } //Anything else (like the servers HELLO) needs nothing from us.
+        }
+    }
+
+    /**
+     * readSnapshot() fills in the cells from the two bitboards of a SNAPSHOT, which are as long as the variant needs.
+     */
+    private void readSnapshot(byte[] payload) {
+        int length = BinaryProtocol.bitboardLength(variant);
+        for (int row = 0; row < cells.length; row++) {
+            for (int col = 0; col < cells[row].length; col++) {
+                int bit = BinaryProtocol.bitIndex(variant, row, col);
+                if (BinaryProtocol.isSet(payload, 4, length, bit)) {
+                    cells[row][col] = 'X';
+                } else if (BinaryProtocol.isSet(payload, 4 + length, length, bit)) {
+                    cells[row][col] = 'O';
+                } else {
+                    cells[row][col] = ' ';
+                }
+            }
+        }
+    }
+
+    /**
+     * sendResync() asks the server for a snapshot of the board because we missed a move.
+     */
+    private void sendResync() throws IOException {
+        synchronized (out) { //Another thread may be sending a move at the same time.
+            BinaryProtocol.writeHeader(out, BinaryProtocol.RESYNC, 0);
+            out.flush();
+        }
+    }
+
+    /**
+     * sendPong() answers the servers PING.
+     */
+    private void sendPong() throws IOException {
+        synchronized (out) {
+            BinaryProtocol.writeHeader(out, BinaryProtocol.PONG, 0);
+            out.flush();
+        }
+    }
+
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //Already gone.
+        }
+    }
+}
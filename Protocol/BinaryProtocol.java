@@ -0,0 +1,316 @@
+package Protocol;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * This is the binary protocol class. It holds everything the server and the clients have to agree on
+ * to talk to each other with the compact binary framing instead of the terminal-friendly text.
+ *
+ * A client asks for the binary protocol by sending HELLO_MAGIC followed by the highest version it
+ * understands as soon as it connects. If the server supports it, it answers with a HELLO frame
+ * holding the version it picked, every other message after that is a frame. If the client sends
+ * nothing (a telnet client) or something else, the server just carries on with the text protocol.
+ *
+ * Every frame is a 2 byte big-endian length (of the type and the payload), a 1 byte type and the payload.
+ *
+ * The board is sent as the two 64 bit bitboards of 'X' and 'O'. Each column takes COLUMN_BITS bits,
+ * so the piece in column c that is h places from the bottom is bit c * COLUMN_BITS + h.
+ * The boards of the bigger variants (version 8 and up) don't fit a long, their bitboards are the same
+ * layout with rows + 1 bits per column, written as big-endian numbers of bitboardLength() bytes.
+ *
+ * Version 1 sends the whole board in a BOARD frame after every move. Version 2 sends a SNAPSHOT of the
+ * board at the start of every game and then only a DELTA holding the move that was just made. Both
+ * carry a sequence number that goes up by one for every change to the board, so a client that sees a
+ * DELTA that doesn't follow on from what it has can send RESYNC and gets a fresh SNAPSHOT.
+ *
+ * From version 3 the hello carries the clients matchmaking preferences after the version byte: the
+ * board variant it wants to play (1 byte) and its rating (2 bytes, 0 if it has none). The lobby pairs
+ * players that want the same variant and whose ratings are in the same band.
+ *
+ * From version 4 one more byte follows the rating: 0 to be paired with another player, or the difficulty
+ * level (1 to COMPUTER_LEVELS) of the computer player the client wants to play against instead.
+ *
+ * From version 5 the server sends a RESUMABLE frame at the start of every game it keeps a journal of,
+ * holding the game id and a token for the clients seat. If the server restarts in the middle of the game,
+ * a client that reconnects with those 12 bytes after its computer level (8 byte game id, 4 byte token,
+ * both 0 for a new game) is put straight back into the game it was playing.
+ *
+ * From version 6 every player gets a GAME_ID frame at the start of a game, the id other clients can watch
+ * it with. A client that puts a game id (or WATCH_ANY) in the 8 bytes after the resume token is a
+ * spectator instead of a player: it gets a GAME_ID frame for the game it is watching, a SNAPSHOT of the board
+ * and then the same DELTA frames as the players, and a GAME_OVER from 'X's point of view at the end (WIN
+ * means 'X' won). A spectator that can't keep up gets a fresh SNAPSHOT instead of the moves it missed.
+ * Someone watching WATCH_ANY is moved on to another game when theirs is over, everyone else is
+ * disconnected.
+ *
+ * From version 7 the server may send a PING to a client it hasn't heard from in a while, and the client
+ * answers with a PONG. A client that doesn't answer is taken to be gone and is disconnected. The hello is
+ * the same as version 6's.
+ *
+ * From version 8 the variant in the hello is honoured: the client can ask for a bigger board and a longer
+ * line to win with (see the VARIANT_ constants). Games against the computer are always classic, and so is
+ * a variant the server doesn't know. Every game starts with a VARIANT frame, before the ASSIGN (or before the
+ * SNAPSHOT for a spectator), so the client knows the size of the board it is about to be sent. Columns and
+ * rows in every other frame are on that board. A spectator from before version 8 is only ever shown classic
+ * games.
+ *
+ * A game server behind the router (Server.Router) gets a handoff in front of everything a client sends:
+ * ROUTED_MAGIC, the id of the game the router paired the client for (8 bytes, 0 if it only came to resume or
+ * watch a game) and a flags byte. After that come the client's own bytes, starting with its hello. Clients
+ * never see any of it. A game server only takes handoffs from the routers it was told about, anyone else
+ * sending one is hung up on.
+ * The router checks a game server is up by sending it PROBE_MAGIC instead. The server answers with the same
+ * bytes and hangs up, the probe never gets near the lobby.
+ *
+ */
+public final class BinaryProtocol {
+    public static final byte[] HELLO_MAGIC = {'C', '4', 'B'}; //First bytes a binary client sends.
+    public static final int VERSION = 8; //Highest protocol version this code understands.
+    public static final int VERSION_DELTAS = 2; //First version that sends SNAPSHOT and DELTA instead of BOARD.
+    public static final int VERSION_PREFERENCES = 3; //First version whose hello carries the matchmaking preferences.
+    public static final int VERSION_OPPONENT = 4; //First version whose preferences say whether to play the computer.
+    public static final int VERSION_RESUME = 5; //First version that can be put back into a game after the server restarted.
+    public static final int VERSION_SPECTATE = 6; //First version that can watch other games.
+    public static final int VERSION_HEARTBEAT = 7; //First version that answers the servers PING.
+    public static final int VERSION_VARIANTS = 8; //First version that can play on other boards than the classic one.
+    public static final int HELLO_LENGTH = HELLO_MAGIC.length + 1; //Length of the hello up to and including the version.
+    public static final int MAX_PREFERENCES_LENGTH = 24; //Length of the longest preferences that can follow the version.
+    public static final byte[] ROUTED_MAGIC = {'C', '4', 'R'}; //First bytes a router sends a game server for every client it hands over.
+    public static final int ROUTED_LENGTH = ROUTED_MAGIC.length + 9; //Length of the handoff: magic, game id and flags.
+    public static final int ROUTED_TEXT = 1; //Handoff flag of a text client, the router already waited for its hello.
+    public static final int ROUTED_SECOND = 2; //Handoff flag of the client the router paired second, it is player 2.
+    public static final byte[] PROBE_MAGIC = {'C', '4', 'P'}; //What a router sends a game server to see it is up, and what the server answers.
+
+    public static final int VARIANT_CLASSIC = 0; //The 6 x 7 connect 4 board.
+    public static final int VARIANT_LARGE = 1; //An 8 x 9 board, still connect 4.
+    public static final int VARIANT_GRAND = 2; //A 10 x 12 board, connect 5.
+    public static final int VARIANTS = 3; //Amount of variants there are.
+    public static final int OPPONENT_HUMAN = 0; //Computer level of a client that wants to play another player.
+    public static final int COMPUTER_LEVELS = 5; //Highest computer difficulty level.
+    public static final long WATCH_NONE = 0; //Game id in the hello of a client that wants to play rather than watch.
+    public static final long WATCH_ANY = -1; //Game id in the hello of a spectator that will watch whatever is being played.
+
+    public static final int ROWS = 6; //Amount of rows on the board.
+    public static final int COLS = 7; //Amount of columns on the board.
+    public static final int COLUMN_BITS = ROWS + 1; //Bits used per column in a bitboard.
+    public static final int MAX_ROWS = 10; //Most rows and columns of any variant.
+    public static final int MAX_COLS = 12;
+    private static final int[][] SIZES = {{ROWS, COLS, 4}, {8, 9, 4}, {MAX_ROWS, MAX_COLS, 5}}; //Rows, columns and the line to win with, per variant.
+
+    //Frame types sent by the server
+    public static final int HELLO = 0; //Payload: version (1 byte)
+    public static final int ASSIGN = 1; //Payload: player symbol (1 byte, 'X' or 'O')
+    public static final int BOARD = 2; //Payload: 'X' bitboard (8 bytes), 'O' bitboard (8 bytes)
+    public static final int YOUR_TURN = 3; //Payload: player symbol (1 byte)
+    public static final int INVALID_MOVE = 4; //Payload: reason (1 byte)
+    public static final int GAME_OVER = 5; //Payload: result (1 byte)
+    public static final int WAITING = 6; //No payload, it is the other players turn.
+    public static final int SNAPSHOT = 7; //Payload: sequence (4 bytes), 'X' bitboard, 'O' bitboard (bitboardLength() bytes each, 8 for the classic board)
+    public static final int DELTA = 8; //Payload: sequence (4 bytes), column (1 byte), row (1 byte, 0 is the top row), player symbol (1 byte)
+    public static final int RESUMABLE = 9; //Payload: game id (8 bytes), token (4 bytes) to get back into the game with (version 5 and up)
+    public static final int GAME_ID = 10; //Payload: game id (8 bytes) the game can be watched with, or is being watched (version 6 and up)
+    public static final int PING = 11; //No payload, the client must answer with a PONG (version 7 and up)
+    public static final int VARIANT = 12; //Payload: variant (1 byte) of the game that is starting (version 8 and up)
+
+    //Frame types sent by the client
+    public static final int MOVE = 16; //Payload: column (1 byte)
+    public static final int RESYNC = 17; //No payload, asks for a SNAPSHOT (version 2 and up)
+    public static final int PONG = 18; //No payload, the answer to a PING (version 7 and up)
+
+    //INVALID_MOVE reasons
+    public static final int INVALID_INPUT = 1;
+    public static final int INVALID_COLUMN = 2;
+    public static final int COLUMN_FULL = 3;
+
+    //GAME_OVER results
+    public static final int WIN = 1;
+    public static final int LOSE = 2;
+    public static final int DRAW = 3;
+
+    public static final int MAX_FRAME_LENGTH = 64; //Largest frame (type plus payload) either side has to accept.
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * hello() builds the bytes a client sends to ask for the binary protocol, without any matchmaking preferences.
+     *
+     * @param version The highest version the client understands.
+     * @return The hello bytes.
+     */
+    public static byte[] hello(int version) {
+        return hello(version, VARIANT_CLASSIC, 0, OPPONENT_HUMAN, 0, 0, WATCH_NONE);
+    }
+
+    /**
+     * hello() builds the bytes a client sends to ask for the binary protocol.
+     *
+     * @param version The highest version the client understands.
+     * @param variant The board variant the client wants to play (ignored before version 3).
+     * @param rating  The clients rating, 0 if it has none (ignored before version 3).
+     * @param computerLevel OPPONENT_HUMAN or the difficulty of the computer to play (ignored before version 4).
+     * @param resumeGameId  The game id of the RESUMABLE frame of the game to get back into, 0 for a new game (ignored before version 5).
+     * @param resumeToken   The token of the same RESUMABLE frame, 0 for a new game (ignored before version 5).
+     * @param watchGameId   WATCH_NONE to play, or the game id (or WATCH_ANY) to watch as a spectator (ignored before version 6).
+     * @return The hello bytes.
+     */
+    public static byte[] hello(int version, int variant, int rating, int computerLevel, long resumeGameId, int resumeToken, long watchGameId) {
+        byte[] hello = new byte[HELLO_LENGTH + preferencesLength(version)];
+        System.arraycopy(HELLO_MAGIC, 0, hello, 0, HELLO_MAGIC.length);
+        hello[HELLO_LENGTH - 1] = (byte) version;
+        if (version >= VERSION_PREFERENCES) {
+            hello[HELLO_LENGTH] = (byte) variant;
+            hello[HELLO_LENGTH + 1] = (byte) (rating >> 8);
+            hello[HELLO_LENGTH + 2] = (byte) rating;
+        }
+        if (version >= VERSION_OPPONENT) {
+            hello[HELLO_LENGTH + 3] = (byte) computerLevel;
+        }
+        if (version >= VERSION_RESUME) {
+            for (int i = 0; i < 8; i++) {
+                hello[HELLO_LENGTH + 4 + i] = (byte) (resumeGameId >>> (56 - 8 * i));
+            }
+            for (int i = 0; i < 4; i++) {
+                hello[HELLO_LENGTH + 12 + i] = (byte) (resumeToken >>> (24 - 8 * i));
+            }
+        }
+        if (version >= VERSION_SPECTATE) {
+            for (int i = 0; i < 8; i++) {
+                hello[HELLO_LENGTH + 16 + i] = (byte) (watchGameId >>> (56 - 8 * i));
+            }
+        }
+        return hello;
+    }
+
+    /**
+     * routed() builds the handoff a router sends a game server before the bytes of a client it hands over.
+     *
+     * @param gameId The id of the game the router paired the client for, 0 if it is resuming or watching one.
+     * @param flags  ROUTED_TEXT for a text client (0 for a binary one), plus ROUTED_SECOND for player 2.
+     * @return The handoff bytes.
+     */
+    public static byte[] routed(long gameId, int flags) {
+        byte[] handoff = new byte[ROUTED_LENGTH];
+        System.arraycopy(ROUTED_MAGIC, 0, handoff, 0, ROUTED_MAGIC.length);
+        for (int i = 0; i < 8; i++) {
+            handoff[ROUTED_MAGIC.length + i] = (byte) (gameId >>> (56 - 8 * i));
+        }
+        handoff[ROUTED_LENGTH - 1] = (byte) flags;
+        return handoff;
+    }
+
+    /**
+     * preferencesLength() is the length of the preferences that follow the version in a hello.
+     *
+     * @param version The version the client sent.
+     * @return The amount of preference bytes, 0 before version 3.
+     */
+    public static int preferencesLength(int version) {
+        if (version >= VERSION_SPECTATE) {
+            return 24;
+        }
+        if (version >= VERSION_RESUME) {
+            return 16;
+        }
+        if (version >= VERSION_OPPONENT) {
+            return 4;
+        }
+        return version >= VERSION_PREFERENCES ? 3 : 0;
+    }
+
+    /**
+     * isVariant() checks that a variant is one this code knows.
+     */
+    public static boolean isVariant(int variant) {
+        return variant >= 0 && variant < VARIANTS;
+    }
+
+    public static int rows(int variant) {
+        return SIZES[variant][0];
+    }
+
+    public static int cols(int variant) {
+        return SIZES[variant][1];
+    }
+
+    /**
+     * connect() is how many pieces in a row win a game of the variant.
+     */
+    public static int connect(int variant) {
+        return SIZES[variant][2];
+    }
+
+    /**
+     * bitboardLength() is how many bytes a bitboard of the variant takes in a SNAPSHOT. Never less than the 8
+     * of the classic board's long, so classic snapshots look the same as they always have.
+     */
+    public static int bitboardLength(int variant) {
+        return Math.max(8, (cols(variant) * (rows(variant) + 1) + 7) / 8);
+    }
+
+    /**
+     * bitIndex() is the bit of a position in the bitboards of a variant.
+     *
+     * @param row Row index (0 is the top row)
+     * @param col Column index
+     */
+    public static int bitIndex(int variant, int row, int col) {
+        return col * (rows(variant) + 1) + (rows(variant) - 1 - row);
+    }
+
+    /**
+     * isSet() tells whether a bit is set in a bitboard written as bitboardLength() big-endian bytes.
+     *
+     * @param bytes  Where the bitboard is.
+     * @param offset Where in bytes it starts.
+     * @param length Its length, bitboardLength() of the variant.
+     * @param bit    The bit, see bitIndex().
+     */
+    public static boolean isSet(byte[] bytes, int offset, int length, int bit) {
+        return (bytes[offset + length - 1 - bit / 8] & (1 << (bit % 8))) != 0;
+    }
+
+    /**
+     * writeHeader() writes the length and type of a frame, the payload has to follow.
+     *
+     * @param out           Where to write.
+     * @param type          The frame type.
+     * @param payloadLength Length of the payload in bytes.
+     * @throws IOException
+     */
+    public static void writeHeader(DataOutput out, int type, int payloadLength) throws IOException {
+        out.writeShort(1 + payloadLength);
+        out.writeByte(type);
+    }
+
+    /**
+     * pieceAt() finds the piece at a position of a board sent in a BOARD frame.
+     *
+     * @param xBoard The 'X' bitboard.
+     * @param oBoard The 'O' bitboard.
+     * @param row    Row index (0 is the top row)
+     * @param col    Column index
+     * @return 'X', 'O' or ' ' if the position is empty
+     */
+    public static char pieceAt(long xBoard, long oBoard, int row, int col) {
+        long bit = bit(row, col);
+        if ((xBoard & bit) != 0) {
+            return 'X';
+        }
+        if ((oBoard & bit) != 0) {
+            return 'O';
+        }
+        return ' ';
+    }
+
+    /**
+     * bit() is the bit of a position in the bitboards.
+     *
+     * @param row Row index (0 is the top row)
+     * @param col Column index
+     */
+    public static long bit(int row, int col) {
+        return 1L << (col * COLUMN_BITS + (ROWS - 1 - row));
+    }
+}
@@ -0,0 +1,327 @@
+package Server;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is the alpha-beta search class. It finds the computer players moves with a negamax search: the
+ * score of a position for the player whose turn it is, is minus the score of the best position they can
+ * move to for the other player. Alpha-beta skips every move that can't change the result, which works best
+ * when the best moves are tried first, so the move the transposition table remembers goes first followed
+ * by the columns from the center outwards (the center takes part in the most lines).
+ *
+ * The search goes one move deeper at a time (iterative deepening) until it reaches the depth it was asked
+ * for or runs out of time, and plays the best move of the deepest search it finished.
+ *
+ * Every search runs on one shared fork/join pool with a thread per core. A search forks helper workers
+ * that search the same position on their own copy of the board and only share what they find through the
+ * transposition table (lazy SMP), the move played is the one the main worker finds. A search only gets an
+ * equal share of the pool's threads, so lots of computer games at once each get their fair share of the
+ * cores rather than the first few taking all of them.
+ *
+ */
+public class AlphaBetaSearch {
+    public static final int WIN = 10_000; //Score of a win, minus the amount of pieces on the board when it happened.
+    private static final int INFINITY = WIN + 1;
+    private static final int[] ORDER = {3, 2, 4, 1, 5, 0, 6}; //Center columns first.
+    private static final long CENTER = ((1L << GameBoard.ROWS) - 1) << (3 * GameBoard.COLUMN_BITS); //The center column.
+    private static final int SQUARES = GameBoard.ROWS * GameBoard.COLS;
+    private static final long SOLVED = 1L << 16; //Set in a result whose score is exact, see isSolved().
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private static final AtomicInteger running = new AtomicInteger(); //Searches going on right now.
+
+    private final TranspositionTable table;
+
+    public AlphaBetaSearch(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * bestMove() finds the best move for the player whose turn it is.
+     *
+     * @param position The position, it is not changed.
+     * @param maxDepth How many moves ahead to look at most.
+     * @param budgetMs How long the search may take, it always finishes looking one move ahead though.
+     * @return The column to place in.
+     */
+    public int bestMove(GameBoard position, int maxDepth, long budgetMs) {
+        return move(search(position, maxDepth, budgetMs));
+    }
+
+    /**
+     * search() finds the best move for the player whose turn it is and its score.
+     *
+     * @param position The position, it is not changed.
+     * @param maxDepth How many moves ahead to look at most.
+     * @param budgetMs How long the search may take, it always finishes looking one move ahead though.
+     * @return The result, see move() and score().
+     */
+    public long search(GameBoard position, int maxDepth, long budgetMs) {
+        int searches = running.incrementAndGet();
+        try {
+            int workers = Math.max(1, POOL.getParallelism() / searches); //Our share of the pool.
+            long deadline = System.nanoTime() + budgetMs * 1_000_000L;
+            return POOL.invoke(new Search(position, maxDepth, deadline, workers));
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    /**
+     * move() is the column a search found.
+     */
+    public static int move(long result) {
+        return (short) result;
+    }
+
+    /**
+     * score() is the score of the best move a search found, for the player who makes it. Above
+     * WIN - 42 the player wins, below -(WIN - 42) they lose, otherwise it is a guess.
+     */
+    public static int score(long result) {
+        return (int) (result >> 32);
+    }
+
+    /**
+     * isSolved() tells whether the score a search found is exact rather than a guess: somebody wins whatever
+     * the other does, or the search looked all the way to the end of the game in time.
+     */
+    public static boolean isSolved(long result) {
+        return (result & SOLVED) != 0;
+    }
+
+    private static long result(int move, int score, boolean solved) {
+        return ((long) score << 32) | (solved ? SOLVED : 0) | (move & 0xFFFFL);
+    }
+
+    /**
+     * One search: forks the helpers, runs the main worker and stops the helpers once it is done.
+     */
+    private final class Search extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final GameBoard position;
+        private final int maxDepth;
+        private final long deadline;
+        private final int workers;
+        private volatile boolean stop = false; //Set once the main worker is done, the helpers give up.
+
+        Search(GameBoard position, int maxDepth, long deadline, int workers) {
+            this.position = position;
+            this.maxDepth = maxDepth;
+            this.deadline = deadline;
+            this.workers = workers;
+        }
+
+        protected Long compute() {
+            Helper[] helpers = new Helper[workers - 1];
+            for (int i = 0; i < helpers.length; i++) {
+                helpers[i] = new Helper(new Worker(this, position, false), 1 + (i & 1)); //Half of them start a move deeper so they don't all do the same.
+                helpers[i].fork();
+            }
+            long result = new Worker(this, position, true).iterate(1);
+            stop = true;
+            for (Helper helper : helpers) {
+                helper.join();
+            }
+            return result;
+        }
+    }
+
+    private static final class Helper extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Worker worker;
+        private final int firstDepth;
+
+        Helper(Worker worker, int firstDepth) {
+            this.worker = worker;
+            this.firstDepth = firstDepth;
+        }
+
+        protected void compute() {
+            worker.iterate(firstDepth);
+        }
+    }
+
+    /**
+     * One thread of a search, with its own copy of the board.
+     */
+    private final class Worker {
+        private final Search search;
+        private final GameBoard board = new GameBoard();
+        private final boolean main; //The main worker always finishes looking one move ahead.
+        private int iteration; //Depth of the current iteration.
+        private int rootMove; //Best move found so far in the current iteration.
+        private long nodes = 0;
+        private boolean aborted = false;
+
+        Worker(Search search, GameBoard position, boolean main) {
+            this.search = search;
+            this.main = main;
+            board.copyFrom(position);
+        }
+
+        /**
+         * iterate() searches one move deeper at a time until the depth limit, the time limit or a forced
+         * win or loss is reached.
+         *
+         * @param firstDepth Depth of the first iteration.
+         * @return The best move of the deepest finished iteration and its score, see result().
+         */
+        long iterate(int firstDepth) {
+            int best = -1;
+            int bestScore = 0;
+            boolean solved = false;
+            for (int col : ORDER) { //Anything beats no move at all.
+                if (board.canPlay(col)) {
+                    best = col;
+                    break;
+                }
+            }
+            int lastDepth = Math.min(search.maxDepth, SQUARES - board.moveCount());
+            for (iteration = firstDepth; iteration <= lastDepth && !(search.stop && !main); iteration++) {
+                int score = negamax(iteration, 0, -INFINITY, INFINITY);
+                if (aborted) {
+                    break;
+                }
+                best = rootMove;
+                bestScore = score;
+                solved = iteration == SQUARES - board.moveCount(); //Looked all the way to the end of the game.
+                if (Math.abs(score) > WIN - SQUARES - 1) { //Somebody wins whatever, looking deeper won't change that.
+                    solved = true;
+                    break;
+                }
+            }
+            return result(best, bestScore, solved);
+        }
+
+        private int negamax(int depth, int ply, int alpha, int beta) {
+            if ((++nodes & 1023) == 0 && timeUp()) {
+                aborted = true;
+            }
+            if (aborted) {
+                return 0;
+            }
+            int moves = board.moveCount();
+            if (moves == SQUARES) { //Board is full, it is a draw.
+                return 0;
+            }
+            for (int col : ORDER) { //Take a win straight away.
+                if (board.canPlay(col) && board.isWinningMove(col)) {
+                    if (ply == 0) {
+                        rootMove = col;
+                    }
+                    return WIN - moves - 1;
+                }
+            }
+            if (depth == 0) {
+                return evaluate();
+            }
+            if (ply > 0) { //We can't win this move, so at best we win with our next one.
+                int most = WIN - moves - 3;
+                if (beta > most) {
+                    beta = most;
+                    if (alpha >= beta) {
+                        return beta;
+                    }
+                }
+            }
+
+            long key = board.key();
+            long entry = table.probe(key);
+            int tableMove = TranspositionTable.NO_MOVE;
+            if (entry != 0) {
+                tableMove = TranspositionTable.move(entry);
+                if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                    int score = TranspositionTable.score(entry);
+                    int bound = TranspositionTable.bound(entry);
+                    if (bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                            || (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+                        return score;
+                    }
+                }
+            }
+
+            int alphaBefore = alpha;
+            int best = -INFINITY;
+            int bestMove = TranspositionTable.NO_MOVE;
+            for (int i = -1; i < ORDER.length; i++) { //-1 is the move the table remembers.
+                int col = i < 0 ? tableMove : ORDER[i];
+                if (col == TranspositionTable.NO_MOVE || (i >= 0 && col == tableMove) || !board.canPlay(col)) {
+                    continue;
+                }
+                board.play(col);
+                int score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+                board.undo();
+                if (aborted) {
+                    return 0;
+                }
+                if (score > best) {
+                    best = score;
+                    bestMove = col;
+                    if (ply == 0) {
+                        rootMove = col;
+                    }
+                }
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) { //The other player won't let us get here, no need to look any further.
+                        break;
+                    }
+                }
+            }
+
+            int bound = best <= alphaBefore ? TranspositionTable.UPPER_BOUND
+                    : best >= beta ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+            table.store(key, depth, best, bound, bestMove);
+            return best;
+        }
+
+        private boolean timeUp() {
+            if (main && iteration == 1) {
+                return false;
+            }
+            return search.stop || System.nanoTime() > search.deadline;
+        }
+
+        /**
+         * evaluate() guesses the score of a position the search didn't look past, for the player whose turn
+         * it is. Every empty spot that would finish a line of 4 for a player is a threat, and pieces in the
+         * center column are worth a bit since they are part of the most lines.
+         */
+        private int evaluate() {
+            long mine = board.currentBoard();
+            long theirs = board.opponentBoard();
+            long empty = GameBoard.FULL_BOARD & ~(mine | theirs);
+            int score = 8 * (Long.bitCount(threats(mine) & empty) - Long.bitCount(threats(theirs) & empty));
+            score += 2 * (Long.bitCount(mine & CENTER) - Long.bitCount(theirs & CENTER));
+            return score;
+        }
+    }
+
+    /**
+     * threats() finds every spot that would give the player 4 in a row: the spot has 3 of the players
+     * pieces next to it in some direction, or 2 on one side and 1 on the other. Only spots on the board
+     * are returned, taken or not.
+     *
+     * @param board The bitboard of one player.
+     * @return The bitboard of the spots.
+     */
+    static long threats(long board) {
+        long threats = (board << 1) & (board << 2) & (board << 3); //Vertical, only ever on top.
+        for (int shift = GameBoard.COLUMN_BITS - 1; shift <= GameBoard.COLUMN_BITS + 1; shift++) { //Diagonal, horizontal, diagonal
+            long pair = (board << shift) & (board << (2 * shift));
+            threats |= pair & (board << (3 * shift));
+            threats |= pair & (board >>> shift);
+            pair = (board >>> shift) & (board >>> (2 * shift));
+            threats |= pair & (board << shift);
+            threats |= pair & (board >>> (3 * shift));
+        }
+        return threats & GameBoard.FULL_BOARD;
+    }
+}
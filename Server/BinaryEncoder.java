@@ -0,0 +1,77 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * This is the binary encoder class used for version 1 of the binary protocol. It writes every message
+ * as one small frame (see Protocol.BinaryProtocol), the whole board is 19 bytes instead of the roughly
+ * 300 bytes of text.
+ *
+ */
+public class BinaryEncoder implements MessageEncoder {
+
+    public void variant(DataOutputStream out, int variant) throws IOException {
+        //Versions before 8 only ever play the classic board.
+    }
+
+    public void assign(DataOutputStream out, char player) throws IOException {
+        BinaryProtocol.writeHeader(out, BinaryProtocol.ASSIGN, 1);
+        out.writeByte(player);
+    }
+
+    public void resumable(DataOutputStream out, long gameId, int token) throws IOException {
+        //Versions before 5 can't resume a game.
+    }
+
+    public void watchable(DataOutputStream out, long gameId) throws IOException {
+        //Versions before 6 know nothing about spectators.
+    }
+
+    public void board(DataOutputStream out, Board board, int sequence) throws IOException {
+        GameBoard classic = (GameBoard) board; //Versions before 8 only ever play the classic board.
+        BinaryProtocol.writeHeader(out, BinaryProtocol.BOARD, 16);
+        out.writeLong(classic.xBoard());
+        out.writeLong(classic.oBoard());
+    }
+
+    public void snapshot(DataOutputStream out, Board board, int sequence) throws IOException {
+        board(out, board, sequence);
+    }
+
+    public void yourTurn(DataOutputStream out, char player) throws IOException {
+        BinaryProtocol.writeHeader(out, BinaryProtocol.YOUR_TURN, 1);
+        out.writeByte(player);
+    }
+
+    public void waiting(DataOutputStream out) throws IOException {
+        BinaryProtocol.writeHeader(out, BinaryProtocol.WAITING, 0);
+    }
+
+    public void invalidMove(DataOutputStream out, int reason) throws IOException {
+        BinaryProtocol.writeHeader(out, BinaryProtocol.INVALID_MOVE, 1);
+        out.writeByte(reason);
+    }
+
+    public void gameOver(DataOutputStream out, int result) throws IOException {
+        BinaryProtocol.writeHeader(out, BinaryProtocol.GAME_OVER, 1);
+        out.writeByte(result);
+    }
+
+    /**
+     * ping() asks a version 7 client to show it is still there.
+     */
+    public static void ping(DataOutputStream out) throws IOException {
+        BinaryProtocol.writeHeader(out, BinaryProtocol.PING, 0);
+    }
+
+    /**
+     * hello() answers a clients hello with the protocol version the server picked.
+     */
+    public static void hello(DataOutputStream out, int version) throws IOException {
+        BinaryProtocol.writeHeader(out, BinaryProtocol.HELLO, 1);
+        out.writeByte(version);
+    }
+}
@@ -0,0 +1,97 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+/**
+ * This is the board interface. It is what a game needs of its board, whichever variant it is played on:
+ * dropping pieces, checking for wins and draws, and reading back where the pieces are to send the board to
+ * the players. GameSession, GameThread, the encoders and the journal only ever use a board through it.
+ *
+ * There are two of them. GameBoard is the classic 6 x 7 board, with bitboards, undo() and everything else
+ * the computer player searches with, which only it has. VariantBoard is every bigger board.
+ *
+ */
+public interface Board {
+
+    /**
+     * create() makes an empty board for a variant.
+     *
+     * @param variant One of BinaryProtocol's VARIANT_ constants.
+     * @return A GameBoard for the classic variant, a VariantBoard for any other.
+     */
+    static Board create(int variant) {
+        return variant == BinaryProtocol.VARIANT_CLASSIC ? new GameBoard() : new VariantBoard(variant);
+    }
+
+    int variant(); //One of BinaryProtocol's VARIANT_ constants.
+
+    int rows();
+
+    int cols();
+
+    int connect(); //How many pieces in a row win.
+
+    /**
+     * reset() clears the board at the start of a game.
+     */
+    void reset();
+
+    /**
+     * copyFrom() makes this board the same as another one.
+     *
+     * @param other The board to copy, of the same variant.
+     */
+    void copyFrom(Board other);
+
+    /**
+     * pieceAt() returns the piece at the given position.
+     *
+     * @param row Row index (0 is the top row)
+     * @param col Column index
+     * @return 'X', 'O' or ' ' if the position is empty
+     */
+    char pieceAt(int row, int col);
+
+    /**
+     * canPlay() checks if there is still room in the column.
+     *
+     * @param col The column (must be on the board)
+     */
+    boolean canPlay(int col);
+
+    /**
+     * dropPiece() places the players piece in the lowest empty spot in the column.
+     *
+     * @param col    The column to place in (must be on the board)
+     * @param player The char symbol of the player (either 'X' or 'O')
+     * @return true if the piece was placed, false if the column is full
+     */
+    boolean dropPiece(int col, char player);
+
+    /**
+     * winCheck() checks whether the player has a line of connect() pieces anywhere on the board.
+     *
+     * @param player The symbol of the player to check win for.
+     * @return The player symbol if they have won, ' ' if not.
+     */
+    char winCheck(char player);
+
+    boolean isFull();
+
+    char currentPlayer(); //Whose turn it is, 'X' moves first.
+
+    int moveCount();
+
+    int height(int col); //Amount of pieces in the column.
+
+    int placedRow(); //The row index of the last piece that was placed.
+
+    int placedCol(); //The column index of the last piece that was placed.
+
+    /**
+     * render() builds the terminal-friendly version of the board.
+     *
+     * @return The rendered board, including the trailing line separator.
+     */
+    String render();
+}
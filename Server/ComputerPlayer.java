@@ -0,0 +1,102 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+/**
+ * This is the computer player class. It takes the place of the second client in a GameThread for a client
+ * that asked to play the computer. It keeps hold of the board the game last sent it and works out its move
+ * with an AlphaBetaSearch when the game asks for one, all the other messages are simply ignored.
+ *
+ * The difficulty level sets how many moves ahead it looks and how long it may think about every move.
+ * Every computer player shares one transposition table, so its size is fixed however many games there are.
+ * If the server was given an OpeningBook, the book is checked before searching.
+ *
+ */
+public class ComputerPlayer implements Player {
+    private static final int[] DEPTH = {0, 1, 3, 6, 12, GameBoard.ROWS * GameBoard.COLS}; //Moves looked ahead per level.
+    private static final long[] BUDGET_MS = {0, 100, 200, 400, 1000, 3000}; //Time per move per level.
+    private static final TranspositionTable TABLE = new TranspositionTable(18); //8 MB
+    private static volatile OpeningBook openingBook = null; //Null if the server has no book.
+
+    private final int level;
+    private final AlphaBetaSearch search = new AlphaBetaSearch(TABLE);
+    private GameBoard board; //The board as the game last sent it.
+
+    /**
+     * @param level The difficulty, from 1 to BinaryProtocol.COMPUTER_LEVELS.
+     */
+    public ComputerPlayer(int level) {
+        this.level = Math.max(1, Math.min(level, BinaryProtocol.COMPUTER_LEVELS));
+    }
+
+    public int level() {
+        return level;
+    }
+
+    /**
+     * useOpeningBook() gives every computer player the book to look up early moves in.
+     *
+     * @param book The book, or null to always search.
+     */
+    public static void useOpeningBook(OpeningBook book) {
+        openingBook = book;
+    }
+
+    public void variant(int variant) {
+        //Always the classic board, the server never pairs the computer with anything else.
+    }
+
+    public void assign(char player) {
+    }
+
+    public void resumable(long gameId, int token) {
+    }
+
+    public void watchable(long gameId) {
+    }
+
+    public void board(RenderedBoard board) {
+        this.board = (GameBoard) board.board(); //Always the classic board, see variant().
+    }
+
+    public void snapshot(Board board, int sequence) {
+        this.board = (GameBoard) board;
+    }
+
+    public void yourTurn(char player) {
+    }
+
+    public void waiting() {
+    }
+
+    public void invalidMove(int reason) {
+    }
+
+    public void gameOver(int result) {
+    }
+
+    public void flush() {
+    }
+
+    public boolean drainInput() {
+        return false; //Never sends anything out of turn.
+    }
+
+    public int readMove() {
+        OpeningBook book = openingBook;
+        if (book != null) {
+            int col = book.bestMove(board);
+            if (col != OpeningBook.NO_MOVE) { //Known already, no need to think about it.
+                return col;
+            }
+        }
+        return search.bestMove(board, DEPTH[level], BUDGET_MS[level]);
+    }
+
+    public void timedOut() {
+        //The computer is never timed.
+    }
+
+    public void close() {
+    }
+}
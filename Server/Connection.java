@@ -0,0 +1,745 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * This is the connection class used by the reactor server mode. It wraps one non-blocking client channel,
+ * works out which protocol the client wants, turns whatever the client sends into moves (text lines are
+ * split the same way BufferedReader.readLine() does, binary input is split into frames) and queues up
+ * output until the event loop flushes it (once per round of the loop, however many messages the round sent) or,
+ * if the channel is full, until it can take it. Every move is handed to the GameSession the connection
+ * belongs to, between games the connection waits in the Lobby. Apart from isAlive() all methods must be
+ * called from the connections event loop thread.
+ * A client that asked to watch games instead of playing never goes to the lobby. Its Spectator's queue is
+ * emptied into the write queue whenever the channel has taken everything before it, so the shared frames
+ * go straight from the game to the socket and a slow spectator's backlog stays in the bounded queue.
+ * A version 7 client that goes quiet is sent a PING, and one that doesn't answer within the idle timeout
+ * is disconnected. The heartbeat is a TimingWheel timeout per connection, rescheduled every half timeout on
+ * the connection's event loop (and on the new one when it moves).
+ * A client that came through a Router starts with the router's handoff, which is taken off before the hello.
+ * The router's probes are answered there as well, they never get any further.
+ * Text lines are decoded by a MoveDecoder as the bytes come in. Input the game has no use for takes a token
+ * from the connection's TokenBucket, and once that is empty the connection stops reading (OP_READ is
+ * switched off and what is left of the read stays in the buffer) until the bucket has a token again.
+ *
+ */
+public class Connection implements ResumableGames.Returning {
+    private static volatile long idleTimeoutMs = 60_000; //How long a client that answers pings may stay silent, 0 for forever.
+
+    private final SocketChannel channel;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+    private final MoveDecoder lines = new MoveDecoder(); //Turns text input into moves, line by line.
+    private final TokenBucket wasted = new TokenBucket(); //Limits the input the game has no use for.
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>(); //Output waiting for the channel to be writable.
+    private final ByteBuffer[] gather = new ByteBuffer[16]; //The front of the write queue, handed to the channel in one write.
+    private boolean flushQueued = false; //True while the event loop is going to flush the connection.
+    private final ByteArrayOutputStream encoded = new ByteArrayOutputStream(); //Where the encoder writes a message before it is queued.
+    private final DataOutputStream encodedOut = new DataOutputStream(encoded);
+    private SelectionKey key;
+    private boolean reading = false; //True while onReadable() is handing received input to the session.
+    private boolean paused = false; //True while the client's bucket is empty and nothing more is read from it.
+    private volatile boolean closed = false; //Volatile because the lobby checks it from other event loops.
+    private long bytesReceived = 0; //Totals over the connections life, for the metrics.
+    private long bytesSent = 0;
+    private long lastHeard = System.nanoTime(); //When the client last sent anything.
+    private TimingWheel.Timeout heartbeat; //The next heartbeat, null if the client gets none.
+
+    private MessageEncoder encoder = null; //Null until the protocol has been negotiated.
+    private final byte[] hello = new byte[BinaryProtocol.HELLO_LENGTH + BinaryProtocol.MAX_PREFERENCES_LENGTH];
+    private int helloLength = 0; //Bytes of the hello received so far.
+    private int helloNeeded = BinaryProtocol.HELLO_LENGTH; //Grows once we know the version carries preferences.
+    private int version = 0; //The binary protocol version we agreed on, 0 for the text protocol.
+    private int variant = BinaryProtocol.VARIANT_CLASSIC; //The board variant the client wants to play.
+    private int rating = 0; //The rating the client claimed, 0 if it didn't.
+    private int computerLevel = BinaryProtocol.OPPONENT_HUMAN; //The difficulty of the computer the client wants to play, if any.
+    private long resumeGameId = 0; //The game the client wants to get back into after a restart, 0 for a new game.
+    private int resumeToken = 0;
+    private long watchGameId = BinaryProtocol.WATCH_NONE; //The game the client wants to watch, WATCH_NONE to play.
+    private final byte[] handoff = new byte[BinaryProtocol.ROUTED_LENGTH];
+    private int handoffLength = 0; //Bytes of a Router's handoff received so far, -1 once it is done with (or there is none).
+    private boolean routed = false; //True if a router handed the client to us.
+    private long routedGameId = 0; //The game the router paired the client for, 0 if none.
+    private boolean routedSecond = false; //True if the router paired the client as player 2.
+    private final byte[] frame = new byte[BinaryProtocol.MAX_FRAME_LENGTH + 2]; //The binary frame that is currently being received.
+    private int frameLength = 0; //Bytes of the current frame received so far.
+
+    private volatile EventLoop loop; //The event loop the connection is registered with, read by the timing wheel too.
+    private final Lobby<Connection> lobby;
+    private final ResumableGames<Connection> resumes; //Null if the server keeps no journal.
+    private final LiveGames live;
+    private Spectator spectator; //Null unless the client is watching games.
+    private GameSession session; //Null while the connection is negotiating or waiting in the lobby.
+    private char player; //The char symbol of the client (either 'X' or 'O')
+
+    public Connection(SocketChannel channel, EventLoop loop, Lobby<Connection> lobby, ResumableGames<Connection> resumes, LiveGames live) {
+        this.channel = channel;
+        this.loop = loop;
+        this.lobby = lobby;
+        this.resumes = resumes;
+        this.live = live;
+        Metrics.connectionOpened();
+    }
+
+    /**
+     * useIdleTimeout() sets how long a version 7 client may go without sending anything, pings included,
+     * before it is disconnected. It is sent a ping once it has been quiet for half of that.
+     *
+     * @param timeoutMs The timeout in milliseconds, 0 to never disconnect idle clients.
+     */
+    public static void useIdleTimeout(long timeoutMs) {
+        idleTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * join() ties the connection to the game session it is playing in.
+     *
+     * @param session The game session.
+     * @param player  The char symbol of the client (either 'X' or 'O')
+     */
+    public void join(GameSession session, char player) {
+        this.session = session;
+        this.player = player;
+    }
+
+    /**
+     * returnToLobby() leaves the game session and waits in the lobby for the next game (or goes back to the
+     * router it came from).
+     */
+    public void returnToLobby() {
+        session = null;
+        lobby.returned(this);
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+    }
+
+    public EventLoop loop() {
+        return loop;
+    }
+
+    /**
+     * detach() stops the current event loop from handling the connection, so it can be moved to the event
+     * loop of the game it was paired into. Must be called from the current event loop thread. Anything
+     * waiting to be flushed goes now, the next loop doesn't know about it. From then on the connection
+     * belongs to the target, so whatever the current loop still has for it (a heartbeat that is due, say)
+     * is handed over there instead of touching the cancelled key.
+     *
+     * @param target The event loop it is moving to, moveTo() must be called there next.
+     */
+    public void detach(EventLoop target) {
+        if (flushQueued) {
+            flushQueued = false;
+            loop.forget(this);
+            writeQueued();
+        }
+        key.cancel();
+        loop = target;
+    }
+
+    /**
+     * moveTo() registers a detached connection with the event loop it was detached for. Must be called from
+     * that event loop's thread. Output the old loop couldn't finish writing goes on from here, and so do the heartbeats.
+     *
+     * @throws IOException
+     */
+    public void moveTo() throws IOException {
+        loop.register(channel, this);
+        if (!writeQueue.isEmpty()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+        if (heartbeat != null && heartbeat.cancel()) { //Still on the old loop's schedule, an expired one hands itself over.
+            scheduleHeartbeat();
+        }
+    }
+
+    public int variant() {
+        return variant;
+    }
+
+    public int rating() {
+        return rating;
+    }
+
+    public int computerLevel() {
+        return computerLevel;
+    }
+
+    public long resumeGameId() {
+        return resumeGameId;
+    }
+
+    public int resumeToken() {
+        return resumeToken;
+    }
+
+    public boolean isRouted() {
+        return routed;
+    }
+
+    public long routedGameId() {
+        return routedGameId;
+    }
+
+    public boolean isRoutedSecond() {
+        return routedSecond;
+    }
+
+    public boolean isAlive() {
+        return !closed && channel.isOpen();
+    }
+
+    public char player() {
+        return player;
+    }
+
+    /**
+     * isNegotiated() tells whether the client's protocol is known yet.
+     */
+    public boolean isNegotiated() {
+        return encoder != null;
+    }
+
+    /**
+     * negotiationTimedOut() is called when the client had its chance to ask for the binary protocol.
+     * Anyone who hasn't by now is a text client.
+     */
+    public void negotiationTimedOut() {
+        if (!isNegotiated()) {
+            endHandoff(); //What looked like the start of a handoff (the start of a hello does) was the client's own.
+            if (!isNegotiated() && !closed) {
+                useText();
+            }
+        }
+    }
+
+    public void variant(int variant) {
+        send(out -> encoder.variant(out, variant));
+    }
+
+    public void assign(char player) {
+        send(out -> encoder.assign(out, player));
+    }
+
+    public void resumable(long gameId, int token) {
+        send(out -> encoder.resumable(out, gameId, token));
+    }
+
+    public void watchable(long gameId) {
+        send(out -> encoder.watchable(out, gameId));
+    }
+
+    public void board(RenderedBoard board) {
+        queue(ByteBuffer.wrap(board.encoded(encoder))); //Both players of the game share the encoded board.
+    }
+
+    public void snapshot(Board board, int sequence) {
+        send(out -> encoder.snapshot(out, board, sequence));
+    }
+
+    public void yourTurn(char player) {
+        send(out -> encoder.yourTurn(out, player));
+    }
+
+    public void waiting() {
+        send(out -> encoder.waiting(out));
+    }
+
+    public void invalidMove(int reason) {
+        send(out -> encoder.invalidMove(out, reason));
+    }
+
+    public void gameOver(int result) {
+        send(out -> encoder.gameOver(out, result));
+    }
+
+    /**
+     * send() encodes a message and queues it to be sent to the client.
+     *
+     * @param message Writes the message with the connections encoder.
+     */
+    private void send(Message message) {
+        if (closed) {
+            return;
+        }
+        try {
+            message.encode(encodedOut);
+        } catch (IOException e) {
+            //Can't happen, the encoder writes to memory.
+        }
+        queue(ByteBuffer.wrap(encoded.toByteArray()));
+        encoded.reset();
+    }
+
+    /**
+     * queue() adds a message to the output and has the event loop flush it at the end of the round, along with
+     * anything else sent to the client in the meantime.
+     */
+    private void queue(ByteBuffer message) {
+        if (closed || !message.hasRemaining()) { //Some messages are nothing at all in the text protocol.
+            return;
+        }
+        writeQueue.add(message);
+        if (!flushQueued) {
+            flushQueued = true;
+            loop.flushLater(this);
+        }
+    }
+
+    /**
+     * flush() is called by the event loop at the end of the round, it writes everything queued so far.
+     */
+    void flush() {
+        flushQueued = false;
+        if (!closed) {
+            onWritable(); //Most of the time the socket buffer has room for all of it.
+        }
+    }
+
+    private interface Message {
+        void encode(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * discardInput() throws away anything the client sent that hasn't been handed to the session yet.
+     */
+    public void discardInput() {
+        if (reading) { //Only the rest of the current read is waiting, everything before it was already handled.
+            readBuffer.position(readBuffer.limit());
+        } else { //Anything left over from a read that was paused.
+            readBuffer.clear();
+        }
+        lines.reset();
+        frameLength = 0;
+    }
+
+    /**
+     * onReadable() is called by the event loop whenever the client sent something.
+     */
+    void onReadable() {
+        if (paused) { //Registered with another event loop in the meantime, which reads again.
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            return;
+        }
+        int read;
+        try {
+            read = channel.read(readBuffer);
+        } catch (IOException e) {
+            disconnected(e.getMessage());
+            return;
+        }
+        if (read < 0) { //Client hung up.
+            disconnected("Connection closed by client.");
+            return;
+        }
+        bytesReceived += read;
+        Metrics.bytesReceived(read);
+        lastHeard = System.nanoTime();
+        readBuffer.flip();
+        receivedBuffer();
+    }
+
+    /**
+     * receivedBuffer() hands what is in the read buffer to whatever is reading it, until the client's bucket
+     * runs out. Anything left over stays at the front of the buffer for when reading resumes.
+     */
+    private void receivedBuffer() {
+        reading = true;
+        while (readBuffer.hasRemaining() && !closed && !paused) {
+            received(readBuffer.get());
+        }
+        reading = false;
+        readBuffer.compact();
+    }
+
+    /**
+     * wasted() takes a token for input the game had no use for, and stops reading from the client if there
+     * was none.
+     */
+    private void wasted() {
+        if (wasted.take() || paused || closed) {
+            return;
+        }
+        paused = true;
+        Metrics.inputThrottled();
+        if (key.isValid()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+        loop.schedule(this::resumeReading, Math.max(1, wasted.nanosUntilToken() / 1_000_000L));
+    }
+
+    /**
+     * resumeReading() starts reading from the client again once its bucket has a token, beginning with what
+     * was left in the read buffer.
+     */
+    private void resumeReading() {
+        if (closed) {
+            return;
+        }
+        if (!loop.inLoop()) { //Moved to another event loop for a game in the meantime.
+            loop.execute(this::resumeReading);
+            return;
+        }
+        if (!key.isValid()) { //Halfway to another event loop, try again once it is there.
+            loop.schedule(this::resumeReading, TimingWheel.TICK_MS);
+            return;
+        }
+        paused = false;
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        readBuffer.flip();
+        receivedBuffer();
+    }
+
+    /**
+     * received() hands one byte from the client to whatever is reading it.
+     */
+    private void received(byte b) {
+        if (handoffLength >= 0) {
+            readHandoff(b);
+        } else if (encoder == null) {
+            negotiate(b);
+        } else if (encoder == MessageEncoder.TEXT) {
+            readText(b);
+        } else {
+            readFrame(b);
+        }
+    }
+
+    /**
+     * readHandoff() checks the first bytes the client sends for a Router's handoff (or its probe). A routed
+     * text client doesn't have to wait for the negotiation timeout, the router already waited for its hello.
+     * A handoff from anyone but one of our routers is hung up on.
+     */
+    private void readHandoff(byte b) {
+        handoff[handoffLength++] = b;
+        if (handoffLength == BinaryProtocol.PROBE_MAGIC.length
+                && Arrays.equals(handoff, 0, handoffLength, BinaryProtocol.PROBE_MAGIC, 0, handoffLength)) {
+            answerProbe();
+            return;
+        }
+        if (handoffLength <= BinaryProtocol.ROUTED_MAGIC.length && b != BinaryProtocol.ROUTED_MAGIC[handoffLength - 1]) {
+            endHandoff(); //A client of our own.
+            return;
+        }
+        if (handoffLength == BinaryProtocol.ROUTED_MAGIC.length && !Router.isTrusted(channel.socket().getInetAddress())) {
+            System.out.println("Refused a handoff from " + channel.socket().getInetAddress() + ", it isn't one of our routers.");
+            handoffLength = -1;
+            close();
+            return;
+        }
+        if (handoffLength == BinaryProtocol.ROUTED_LENGTH) {
+            handoffLength = -1;
+            routed = true;
+            routedGameId = ByteBuffer.wrap(handoff, BinaryProtocol.ROUTED_MAGIC.length, 8).getLong();
+            routedSecond = (handoff[BinaryProtocol.ROUTED_LENGTH - 1] & BinaryProtocol.ROUTED_SECOND) != 0;
+            if ((handoff[BinaryProtocol.ROUTED_LENGTH - 1] & BinaryProtocol.ROUTED_TEXT) != 0) {
+                useText();
+            }
+        }
+    }
+
+    /**
+     * answerProbe() answers a Router's probe and hangs up. It was never a client, so it isn't counted as one.
+     */
+    private void answerProbe() {
+        handoffLength = -1;
+        closed = true;
+        Metrics.probeAnswered();
+        try {
+            channel.write(ByteBuffer.wrap(BinaryProtocol.PROBE_MAGIC)); //A new socket always takes a few bytes.
+        } catch (IOException e) {
+            //The router already gave up on it.
+        }
+        try {
+            channel.close(); //Also cancels the selection key.
+        } catch (IOException e) {
+            //Nothing left to do with a channel that won't close.
+        }
+    }
+
+    /**
+     * endHandoff() gives up on a handoff, what looked like the start of one is the client's own input.
+     */
+    private void endHandoff() {
+        int length = handoffLength;
+        handoffLength = -1;
+        for (int i = 0; i < length && !closed; i++) {
+            received(handoff[i]);
+        }
+    }
+
+    /**
+     * negotiate() checks the first bytes the client sends for the binary protocol hello.
+     */
+    private void negotiate(byte b) {
+        hello[helloLength++] = b;
+        if (helloLength <= BinaryProtocol.HELLO_MAGIC.length && b != BinaryProtocol.HELLO_MAGIC[helloLength - 1]) {
+            useText(); //Not a hello, must be a text client.
+            return;
+        }
+        int clientVersion = hello[BinaryProtocol.HELLO_LENGTH - 1];
+        if (helloLength == BinaryProtocol.HELLO_LENGTH) {
+            if (clientVersion < 1) { //No version we understand.
+                useText();
+                return;
+            }
+            helloNeeded += BinaryProtocol.preferencesLength(clientVersion);
+        }
+        if (helloLength == helloNeeded) {
+            int version = Math.min(clientVersion, BinaryProtocol.VERSION); //The highest version we both understand.
+            this.version = version;
+            if (version >= BinaryProtocol.VERSION_PREFERENCES) {
+                rating = ((hello[5] & 0xFF) << 8) | (hello[6] & 0xFF);
+            }
+            if (version >= BinaryProtocol.VERSION_OPPONENT) {
+                computerLevel = Math.min(hello[7] & 0xFF, BinaryProtocol.COMPUTER_LEVELS);
+            }
+            if (version >= BinaryProtocol.VERSION_RESUME) {
+                ByteBuffer resume = ByteBuffer.wrap(hello, 8, 12);
+                resumeGameId = resume.getLong();
+                resumeToken = resume.getInt();
+            }
+            if (version >= BinaryProtocol.VERSION_SPECTATE) {
+                watchGameId = ByteBuffer.wrap(hello, 20, 8).getLong();
+            }
+            if (version >= BinaryProtocol.VERSION_VARIANTS && computerLevel == BinaryProtocol.OPPONENT_HUMAN && BinaryProtocol.isVariant(hello[4])) {
+                variant = hello[4]; //Anyone else plays the classic board, the only one the computer knows.
+            }
+            encoder = MessageEncoder.forVersion(version);
+            send(out -> BinaryEncoder.hello(out, version));
+            if (version >= BinaryProtocol.VERSION_HEARTBEAT && idleTimeoutMs > 0) { //Older clients wouldn't know what a PING is.
+                scheduleHeartbeat();
+            }
+            if (watchGameId != BinaryProtocol.WATCH_NONE) {
+                spectate();
+            } else if (resumes == null || !resumes.claim(this)) { //Coming back to a game takes them straight to it.
+                lobby.enqueue(this);
+            }
+        }
+    }
+
+    private void scheduleHeartbeat() {
+        heartbeat = loop.schedule(this::heartbeat, idleTimeoutMs / 2);
+    }
+
+    /**
+     * heartbeat() runs every half idle timeout. It disconnects the client if it hasn't been heard from for the
+     * whole timeout, and sends it a PING if it has been quiet for half of it.
+     */
+    private void heartbeat() {
+        if (closed) {
+            return;
+        }
+        if (!loop.inLoop()) { //Fired on the old event loop just as the connection moved, too late for moveTo() to reschedule it.
+            loop.execute(this::heartbeat);
+            return;
+        }
+        if (!key.isValid()) { //Not on its new loop yet, nothing can be sent.
+            heartbeat = loop.schedule(this::heartbeat, TimingWheel.TICK_MS);
+            return;
+        }
+        long quietMs = (System.nanoTime() - lastHeard) / 1_000_000L;
+        if (quietMs >= idleTimeoutMs) {
+            Metrics.idleReaped();
+            disconnected("Timed out.");
+            return;
+        }
+        if (quietMs >= idleTimeoutMs / 2) {
+            send(out -> BinaryEncoder.ping(out));
+        }
+        scheduleHeartbeat();
+    }
+
+    /**
+     * spectate() starts sending the client the games it asked to watch. The game wakes the connection up on
+     * its own event loop whenever frames arrive at an empty queue.
+     */
+    private void spectate() {
+        spectator = new Spectator(watchGameId, version >= BinaryProtocol.VERSION_VARIANTS, () -> loop.execute(this::sendSpectated));
+        if (!live.watch(spectator)) { //No such game, or it is already over.
+            close();
+        }
+    }
+
+    /**
+     * sendSpectated() moves the frames waiting in the spectator's queue to the write queue, but only once the
+     * channel has taken everything before them. The frames are the game's shared buffers, nothing is copied.
+     */
+    private void sendSpectated() {
+        while (!closed && writeQueue.isEmpty()) {
+            ByteBuffer next = spectator.poll();
+            if (next == null) {
+                if (spectator.isEnded()) { //Watched the game to the end and everything has been sent.
+                    close();
+                }
+                return;
+            }
+            do {
+                writeQueue.add(next);
+            } while ((next = spectator.poll()) != null);
+            writeQueued();
+        }
+    }
+
+    /**
+     * useText() switches the client to the text protocol. Anything received while we were waiting for a hello is text input.
+     */
+    private void useText() {
+        encoder = MessageEncoder.TEXT;
+        for (int i = 0; i < helloLength && !closed; i++) {
+            readText(hello[i]);
+        }
+        lobby.enqueue(this);
+    }
+
+    private void readText(byte b) {
+        int column = lines.decode(b & 0xFF);
+        if (column == MoveDecoder.INCOMPLETE) {
+            return;
+        }
+        if (column == MoveDecoder.SKIPPED || session == null || !session.onMove(this, column)) { //Nobody wanted it.
+            wasted();
+        }
+    }
+
+    private void readFrame(byte b) {
+        frame[frameLength++] = b;
+        if (frameLength < 2) {
+            return;
+        }
+        int length = ((frame[0] & 0xFF) << 8) | (frame[1] & 0xFF);
+        if (length > BinaryProtocol.MAX_FRAME_LENGTH) { //Nobody sends frames this big, the stream is broken.
+            disconnected("Frame too long.");
+            return;
+        }
+        if (frameLength < 2 + length) {
+            return;
+        }
+        frameLength = 0;
+        if (session == null) { //Nothing to do with moves while waiting in the lobby.
+            wasted();
+            return;
+        }
+        if (length == 1 && (frame[2] & 0xFF) == BinaryProtocol.PONG) { //Only shows the client is there, which lastHeard already knows.
+            wasted();
+            return;
+        }
+        if (length == 2 && (frame[2] & 0xFF) == BinaryProtocol.MOVE) {
+            if (!session.onMove(this, frame[3] & 0xFF)) {
+                wasted();
+            }
+        } else if (length == 1 && (frame[2] & 0xFF) == BinaryProtocol.RESYNC) {
+            session.onResync(this);
+            wasted();
+        } else if (!session.onMove(this, MoveInput.NOT_A_NUMBER)) {
+            wasted();
+        }
+    }
+
+    /**
+     * onWritable() writes as much of the queued output as the channel accepts, and for a spectator carries on
+     * with whatever the game sent in the meantime.
+     */
+    void onWritable() {
+        writeQueued();
+        if (spectator != null) {
+            sendSpectated();
+        }
+    }
+
+    /**
+     * writeQueued() writes as much of the queued output as the channel accepts, as many messages at a time
+     * as fit in the gather array, so a round's worth of messages is normally one system call. If something is
+     * left over the connection asks the event loop to be told when the channel is writable again.
+     */
+    private void writeQueued() {
+        if (!key.isValid()) { //Halfway to another event loop, moveTo() has it written from there.
+            return;
+        }
+        try {
+            while (!writeQueue.isEmpty()) {
+                int count = 0;
+                for (ByteBuffer next : writeQueue) {
+                    gather[count++] = next;
+                    if (count == gather.length) {
+                        break;
+                    }
+                }
+                ByteBuffer last = gather[count - 1];
+                long written = channel.write(gather, 0, count);
+                Arrays.fill(gather, 0, count, null); //Lets the sent messages go.
+                bytesSent += written;
+                Metrics.bytesSent(written);
+                while (!writeQueue.isEmpty() && !writeQueue.peek().hasRemaining()) {
+                    writeQueue.poll();
+                }
+                if (last.hasRemaining()) { //Socket buffer is full, wait for OP_WRITE.
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            disconnected(e.getMessage());
+        }
+    }
+
+    /**
+     * disconnected() is called when the connection failed. A game in progress ends, a connection waiting
+     * in the lobby is simply closed (the lobby skips closed connections).
+     *
+     * @param reason Why it failed.
+     */
+    private void disconnected(String reason) {
+        if (session != null) {
+            session.onDisconnect(this, reason);
+        } else {
+            close();
+        }
+    }
+
+    /**
+     * crashed() is called by the event loop when handling the connection threw. The connection is dropped the
+     * same way as if the client had gone, everybody else on the loop carries on.
+     */
+    void crashed(RuntimeException e) {
+        System.out.println("Dropping a connection its event loop failed to handle: " + e);
+        try {
+            disconnected("Server error.");
+        } catch (RuntimeException again) {
+            close();
+        }
+    }
+
+    /**
+     * close() closes the channel, anything still queued is dropped.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writeQueue.clear();
+        if (heartbeat != null) {
+            heartbeat.cancel();
+        }
+        if (spectator != null) {
+            spectator.close();
+        }
+        Metrics.connectionClosed(bytesReceived, bytesSent);
+        try {
+            channel.close(); //Also cancels the selection key.
+        } catch (IOException e) {
+            //Nothing left to do with a channel that won't close.
+        }
+    }
+}
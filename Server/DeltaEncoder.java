@@ -0,0 +1,64 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * This is the delta encoder class used for version 2 of the binary protocol. It only differs from the
+ * BinaryEncoder in how the board is sent: a new game gets a SNAPSHOT of the (empty) board and every move
+ * after that is a 10 byte DELTA holding just the piece that was placed, tagged with its sequence number.
+ * The snapshot of a bigger board than the classic one (only ever sent from version 8) has longer bitboards.
+ *
+ */
+public class DeltaEncoder extends BinaryEncoder {
+
+    public void board(DataOutputStream out, Board board, int sequence) throws IOException {
+        if (board.moveCount() == 0) { //Start of a game, the client needs the whole board once.
+            snapshot(out, board, sequence);
+            return;
+        }
+        int row = board.placedRow();
+        int col = board.placedCol();
+        BinaryProtocol.writeHeader(out, BinaryProtocol.DELTA, 7);
+        out.writeInt(sequence);
+        out.writeByte(col);
+        out.writeByte(row);
+        out.writeByte(board.pieceAt(row, col));
+    }
+
+    public void snapshot(DataOutputStream out, Board board, int sequence) throws IOException {
+        if (!(board instanceof GameBoard)) { //Only the classic board has bitboards of its own.
+            variantSnapshot(out, board, sequence);
+            return;
+        }
+        GameBoard classic = (GameBoard) board;
+        BinaryProtocol.writeHeader(out, BinaryProtocol.SNAPSHOT, 20);
+        out.writeInt(sequence);
+        out.writeLong(classic.xBoard());
+        out.writeLong(classic.oBoard());
+    }
+
+    /**
+     * variantSnapshot() writes the SNAPSHOT of a board that has no bitboards of its own, building them
+     * cell by cell in the layout BinaryProtocol describes.
+     */
+    private static void variantSnapshot(DataOutputStream out, Board board, int sequence) throws IOException {
+        int variant = board.variant();
+        int length = BinaryProtocol.bitboardLength(variant);
+        byte[] bitboards = new byte[2 * length]; //'X's then 'O's.
+        for (int row = 0; row < board.rows(); row++) {
+            for (int col = 0; col < board.cols(); col++) {
+                char piece = board.pieceAt(row, col);
+                if (piece != ' ') {
+                    int bit = BinaryProtocol.bitIndex(variant, row, col);
+                    bitboards[(piece == 'X' ? 0 : length) + length - 1 - bit / 8] |= 1 << (bit % 8);
+                }
+            }
+        }
+        BinaryProtocol.writeHeader(out, BinaryProtocol.SNAPSHOT, 4 + bitboards.length);
+        out.writeInt(sequence);
+        out.write(bitboards);
+    }
+}
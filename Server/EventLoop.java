@@ -0,0 +1,153 @@
+package Server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This is the event loop class used by the reactor server mode. Each event loop owns one Selector and one
+ * thread, and every connection registered with it is only ever touched from that thread. Other threads
+ * hand work to the loop through execute(), and game sessions can ask for delayed work with schedule()
+ * (used for the 5 second pause between games instead of a sleeping thread). The delays are kept by the
+ * TimingWheel, which hands the work back to the loop when it is due.
+ * A connection or task that throws is dropped on its own (the connection as if its client had gone), the
+ * loop and every other connection on it carry on.
+ * Connections don't write as they are sent messages, they ask to be flushed instead. Once the loop has
+ * handled everything that was ready it flushes each of them once, so whatever one move caused (the board,
+ * the result or whose turn it is, for both players) goes to every client in a single gathering write.
+ *
+ */
+public class EventLoop implements Runnable {
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>(); //Work handed over from other threads.
+    private volatile Thread thread; //The loop thread, once it is running.
+    private final ArrayList<Connection> unflushed = new ArrayList<>(); //Connections with output waiting for the end of this round, only touched by the loop thread.
+    private volatile long busyNanos = 0; //Total time spent handling events rather than waiting in select(), only written by the loop thread.
+
+    public EventLoop() throws IOException {
+        selector = Selector.open();
+        Metrics.watch(this);
+    }
+
+    /**
+     * busyNanos() is how long the loop has spent handling events so far, for the utilization metric.
+     */
+    public long busyNanos() {
+        return busyNanos;
+    }
+
+    /**
+     * execute() runs the task on the event loop thread as soon as possible. Safe to call from any thread.
+     *
+     * @param task The task to run.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * inLoop() tells whether the caller is the event loop thread.
+     */
+    public boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * schedule() runs the task on the event loop thread after the given delay. Safe to call from any thread.
+     *
+     * @param task    The task to run.
+     * @param delayMs Delay in milliseconds.
+     * @return The timeout, to cancel the task with.
+     */
+    public TimingWheel.Timeout schedule(Runnable task, long delayMs) {
+        return TimingWheel.SHARED.schedule(() -> execute(task), delayMs);
+    }
+
+    /**
+     * flushLater() has the connection flushed once the loop has handled everything that is ready. Must be
+     * called from the event loop thread.
+     */
+    void flushLater(Connection connection) {
+        unflushed.add(connection);
+    }
+
+    /**
+     * forget() drops a connection that was waiting to be flushed, it flushed itself already. Must be called
+     * from the event loop thread.
+     */
+    void forget(Connection connection) {
+        unflushed.remove(connection);
+    }
+
+    /**
+     * register() registers a freshly accepted channel with this loop. Must be called from the event
+     * loop thread (normally from inside a task passed to execute()).
+     *
+     * @param channel    The client channel.
+     * @param connection The connection that will handle the channels events.
+     * @throws IOException
+     */
+    public void register(SocketChannel channel, Connection connection) throws IOException {
+        channel.configureBlocking(false);
+        connection.attach(channel.register(selector, SelectionKey.OP_READ, connection)); //Connection.moveTo() adds OP_WRITE if it needs it.
+    }
+
+    public void run() {
+        thread = Thread.currentThread();
+        while (true) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                System.out.println("Event loop failed to select.");
+                System.out.println(e.getMessage());
+                return;
+            }
+            long woke = System.nanoTime();
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) { //Handles every channel that is ready...
+                SelectionKey key = keys.next();
+                keys.remove();
+                Connection connection = (Connection) key.attachment();
+                if (!key.isValid()) {
+                    continue;
+                }
+                try {
+                    if (key.isReadable()) {
+                        connection.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.onWritable();
+                    }
+                } catch (RuntimeException e) { //A bug in handling one connection shouldn't strand everybody else on the loop.
+                    connection.crashed(e);
+                }
+            }
+
+            Runnable task;
+            while ((task = tasks.poll()) != null) { //Runs the work other threads (and the timing wheel) handed to us.
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.out.println("An event loop task failed: " + e);
+                }
+            }
+
+            for (int i = 0; i < unflushed.size(); i++) { //One write per connection for everything this round sent it.
+                Connection connection = unflushed.get(i);
+                try {
+                    connection.flush();
+                } catch (RuntimeException e) {
+                    connection.crashed(e);
+                }
+            }
+            unflushed.clear();
+            busyNanos += System.nanoTime() - woke;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+/**
+ * This is the game board class. It is the connect 4 engine used by every server mode: it drops pieces,
+ * checks for wins and draws, undoes moves and renders the terminal-friendly version of the board that
+ * is sent to the clients.
+ *
+ * The board is stored as two 64 bit bitboards, one per player, plus the height of every column.
+ * Each column takes 7 bits (the 6 rows plus an always empty bit on top so lines can't wrap into the
+ * next column), so the piece in column c that is h places from the bottom is bit c * 7 + h.
+ * That makes placing a piece a single bit set and lets a win be found with a few shifts and ands
+ * instead of walking the board. Nothing is allocated after construction, so it is cheap enough for
+ * anything that needs to simulate lots of games.
+ *
+ * This is the classic 6 x 7 connect 4 board, the only one the computer player and the benchmarks know.
+ * The bigger boards of the other variants don't fit in a long, Board.create() makes a VariantBoard for them.
+ * Everything a game needs is in the Board interface, the bitboards, undo() and the rest of what the search
+ * uses are only here.
+ *
+ */
+public class GameBoard implements Board {
+    public static final int ROWS = 6; //Amount of rows on the board.
+    public static final int COLS = 7; //Amount of columns on the board.
+    public static final int COLUMN_BITS = ROWS + 1; //Bits used per column, the extra one keeps columns apart.
+    public static final long FULL_BOARD = fullBoardMask(); //Every playable bit set.
+
+    private long xBoard = 0; //Bitboard of player 'X' pieces.
+    private long oBoard = 0; //Bitboard of player 'O' pieces.
+    private final int[] height = new int[COLS]; //Amount of pieces in every column.
+    private final int[] moves = new int[ROWS * COLS]; //Columns played so far, in order, so moves can be undone.
+    private int moveCount = 0;
+
+    private int placedRow = 0; //The row index of the last piece that was placed.
+    private int placedCol = 0; //The column index of the last piece that was placed.
+
+    public GameBoard() {
+        //Everything starts out empty, there is nothing to reset().
+    }
+
+    @Override
+    public int variant() {
+        return BinaryProtocol.VARIANT_CLASSIC;
+    }
+
+    @Override
+    public int rows() {
+        return ROWS;
+    }
+
+    @Override
+    public int cols() {
+        return COLS;
+    }
+
+    /**
+     * connect() is how many pieces in a row win.
+     */
+    @Override
+    public int connect() {
+        return 4;
+    }
+
+    /**
+     * reset() clears the board at the start of a game.
+     */
+    @Override
+    public void reset() {
+        xBoard = 0;
+        oBoard = 0;
+        for (int col = 0; col < COLS; col++) {
+            height[col] = 0;
+        }
+        moveCount = 0;
+        placedRow = 0;
+        placedCol = 0;
+    }
+
+    /**
+     * copyFrom() makes this board the same as another one, moves included, so it can be searched
+     * without touching the original.
+     *
+     * @param other The board to copy, another classic board.
+     */
+    @Override
+    public void copyFrom(Board other) {
+        GameBoard board = (GameBoard) other;
+        xBoard = board.xBoard;
+        oBoard = board.oBoard;
+        System.arraycopy(board.height, 0, height, 0, COLS);
+        System.arraycopy(board.moves, 0, moves, 0, board.moveCount);
+        moveCount = board.moveCount;
+        placedRow = board.placedRow;
+        placedCol = board.placedCol;
+    }
+
+    /**
+     * pieceAt() returns the piece at the given position.
+     *
+     * @param row Row index (0 is the top row)
+     * @param col Column index
+     * @return 'X', 'O' or ' ' if the position is empty
+     */
+    @Override
+    public char pieceAt(int row, int col) {
+        long bit = 1L << (col * COLUMN_BITS + (ROWS - 1 - row));
+        if ((xBoard & bit) != 0) {
+            return 'X';
+        }
+        if ((oBoard & bit) != 0) {
+            return 'O';
+        }
+        return ' ';
+    }
+
+    /**
+     * canPlay() checks if there is still room in the column.
+     *
+     * @param col The column (must be 0-6)
+     * @return true if a piece can be dropped in the column
+     */
+    @Override
+    public boolean canPlay(int col) {
+        return height[col] < ROWS;
+    }
+
+    /**
+     * dropPiece() places the players piece in the lowest empty spot in the column that they selected.
+     *
+     * @param col    The column to place in (must be 0-6)
+     * @param player The char symbol of the player (either 'X' or 'O')
+     * @return true if the piece was placed, false if the column is full
+     */
+    @Override
+    public boolean dropPiece(int col, char player) {
+        if (!canPlay(col)) {
+            return false;
+        }
+        long bit = 1L << (col * COLUMN_BITS + height[col]);
+        if (player == 'X') {
+            xBoard |= bit;
+        } else {
+            oBoard |= bit;
+        }
+        placedRow = ROWS - 1 - height[col]; //Keeps track of last placed row.
+        placedCol = col; //Keeps track of last placed col.
+        height[col]++;
+        moves[moveCount++] = col;
+        return true;
+    }
+
+    /**
+     * play() places a piece for whoever's turn it is, 'X' always moves first.
+     *
+     * @param col The column to place in (must be 0-6)
+     * @return true if the piece was placed, false if the column is full
+     */
+    public boolean play(int col) {
+        return dropPiece(col, currentPlayer());
+    }
+
+    /**
+     * undo() takes back the last move.
+     */
+    public void undo() {
+        int col = moves[--moveCount];
+        height[col]--;
+        long clear = ~(1L << (col * COLUMN_BITS + height[col]));
+        xBoard &= clear;
+        oBoard &= clear;
+        if (moveCount > 0) { //The last placed piece is the one before the undone move.
+            int previous = moves[moveCount - 1];
+            placedRow = ROWS - height[previous];
+            placedCol = previous;
+        } else {
+            placedRow = 0;
+            placedCol = 0;
+        }
+    }
+
+    /**
+     * winCheck() method is used check whether the player has won. A win occurs when there are
+     * 4 of the players pieces placed consecutively in a horizontal, vertical, or diagonal line.
+     *
+     * @param player The symbol of the player to check win for.
+     * @return Win status - Returns player symbol if they have won such as 'X' or 'O'. Else if no win just ' '
+     */
+    @Override
+    public char winCheck(char player) {
+        return hasFour(player == 'X' ? xBoard : oBoard) ? player : ' ';
+    }
+
+    /**
+     * hasFour() checks a bitboard for 4 pieces in a row. Shifting a board by 1 lines every piece up with
+     * the one below it, by 7 with the one beside it and by 6 or 8 with the diagonal neighbours. And-ing
+     * the board with itself shifted once leaves the pairs, doing it again with twice the shift leaves the
+     * fours.
+     *
+     * @param board The bitboard of one player.
+     * @return true if there are 4 in a row anywhere on the board
+     */
+    public static boolean hasFour(long board) {
+        long pairs = board & (board >>> COLUMN_BITS); //Horizontal
+        if ((pairs & (pairs >>> (2 * COLUMN_BITS))) != 0) {
+            return true;
+        }
+        pairs = board & (board >>> (COLUMN_BITS - 1)); //Diagonal going down to the right
+        if ((pairs & (pairs >>> (2 * (COLUMN_BITS - 1)))) != 0) {
+            return true;
+        }
+        pairs = board & (board >>> (COLUMN_BITS + 1)); //Diagonal going up to the right
+        if ((pairs & (pairs >>> (2 * (COLUMN_BITS + 1)))) != 0) {
+            return true;
+        }
+        pairs = board & (board >>> 1); //Vertical
+        return (pairs & (pairs >>> 2)) != 0;
+    }
+
+    /**
+     * isWinningMove() checks if the player whose turn it is would win by placing in the column.
+     *
+     * @param col The column (must be 0-6 and not full)
+     * @return true if the move makes 4 in a row
+     */
+    public boolean isWinningMove(int col) {
+        return hasFour(currentBoard() | (1L << (col * COLUMN_BITS + height[col])));
+    }
+
+    /**
+     * key() identifies the position, whoever's pieces they are and however they got there. It is the
+     * pieces of the player whose turn it is added to the bitboard of all pieces. A column that is h pieces
+     * high adds up to somewhere from 2^h - 1 to 2^(h+1) - 2 (it never carries into the next column), and
+     * every height and set of pieces gives a different number, so no two positions have the same key.
+     *
+     * @return The key of the position.
+     */
+    public long key() {
+        return currentBoard() + (xBoard | oBoard);
+    }
+
+    /**
+     * currentBoard() is the bitboard of the player whose turn it is.
+     */
+    public long currentBoard() {
+        return (moveCount & 1) == 0 ? xBoard : oBoard;
+    }
+
+    /**
+     * opponentBoard() is the bitboard of the player who just moved.
+     */
+    public long opponentBoard() {
+        return (moveCount & 1) == 0 ? oBoard : xBoard;
+    }
+
+    /**
+     * isFull() checks for a draw, the board is full and nobody can move anymore.
+     *
+     * @return true if every column is full
+     */
+    @Override
+    public boolean isFull() {
+        return moveCount == ROWS * COLS;
+    }
+
+    /**
+     * currentPlayer() returns whose turn it is, 'X' always moves first.
+     *
+     * @return 'X' or 'O'
+     */
+    @Override
+    public char currentPlayer() {
+        return (moveCount & 1) == 0 ? 'X' : 'O';
+    }
+
+    @Override
+    public int moveCount() {
+        return moveCount;
+    }
+
+    @Override
+    public int height(int col) {
+        return height[col];
+    }
+
+    public long xBoard() {
+        return xBoard;
+    }
+
+    public long oBoard() {
+        return oBoard;
+    }
+
+    @Override
+    public int placedRow() {
+        return placedRow;
+    }
+
+    @Override
+    public int placedCol() {
+        return placedCol;
+    }
+
+    /**
+     * render() builds the nicely formatted terminal-friendly version of the current gameBoard.
+     * The text is exactly what GameThread's printBoard() sends line by line, so clients can't tell
+     * the two apart.
+     *
+     * @return The rendered board, including the trailing line separator.
+     */
+    @Override
+    public String render() {
+        String newLine = System.lineSeparator(); //Same separator println() would have used.
+        StringBuilder sb = new StringBuilder(320);
+        sb.append("-----------------------------").append(newLine); //Start of game board output
+        for (int row = 0; row < ROWS; row++) {
+            sb.append("| ");
+            for (int col = 0; col < COLS; col++) {
+                sb.append(pieceAt(row, col)).append(" | ");
+            }
+            sb.append(newLine);
+            if (row < ROWS - 1) {
+                sb.append(newLine);
+            }
+        }
+        sb.append("-----------------------------").append(newLine); //End of game board output
+        sb.append(" [0] [1] [2] [3] [4] [5] [6]").append(newLine);
+        return sb.toString();
+    }
+
+    private static long fullBoardMask() {
+        long mask = 0;
+        for (int col = 0; col < COLS; col++) {
+            mask |= ((1L << ROWS) - 1) << (col * COLUMN_BITS);
+        }
+        return mask;
+    }
+}
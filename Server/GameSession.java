@@ -0,0 +1,336 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+/**
+ * This is the game session class used by the reactor server mode. It plays the exact same game as
+ * GameThread, but instead of a thread that blocks on readLine() it is a state machine that moves forward
+ * every time one of its players sends a move. All the messages (and their order) are the same as
+ * GameThread's so terminal clients and the GUI client can't tell the two server modes apart.
+ * A session plays one game, after that both players go back to the lobby.
+ * A session is only ever touched from the thread of the event loop it belongs to.
+ * Like GameThread it writes every move to the MoveJournal if the server keeps one, and can carry on with a
+ * game from the journal of the last server with resume().
+ * Every board it sends the players also goes to the game's Spectators. The board is encoded once per
+ * protocol for both players (see RenderedBoard), and everything a move causes reaches each client in one
+ * write once the event loop flushes the connections.
+ * A MoveClock times every move, the timing wheel hands the session back a player who ran out of time on
+ * its own event loop and the session forfeits the game for them.
+ *
+ */
+public class GameSession {
+    private enum State { WAITING_FOR_X, WAITING_FOR_O, BETWEEN_GAMES }
+
+    private final EventLoop loop;
+    private final Connection client1, client2;
+    private final MoveJournal journal; //Null if the server doesn't keep one.
+    private MoveJournal.Game game; //This game in the journal, null without a journal.
+    private final LiveGames live;
+    private Spectators spectators; //Null until the game started.
+    private Board board; //The game board of the variant the players asked for, see Board for the rules of the game.
+    private RenderedBoard rendered; //The board as both players are sent it.
+    private State state = State.BETWEEN_GAMES;
+    private int sequence = 0; //Goes up by one every time the board changes, so delta clients can tell if they missed something.
+    private boolean finished = false; //Set once the players went back to the lobby, the session is dead from then on.
+    private long promptedAt = 0; //When the player whose turn it is was first asked for their move.
+    private final MoveClock clock = new MoveClock();
+
+    public GameSession(EventLoop loop, Connection c1, Connection c2, MoveJournal journal, LiveGames live) {
+        this.loop = loop;
+        this.journal = journal;
+        this.live = live;
+        client1 = c1;
+        client2 = c2;
+        client1.join(this, 'X');
+        client2.join(this, 'O');
+        useBoard(client1.variant()); //The lobby only pairs clients that want the same variant.
+    }
+
+    /**
+     * useBoard() makes the board for the variant the game is played on.
+     */
+    private void useBoard(int variant) {
+        board = Board.create(variant);
+        rendered = new RenderedBoard(board);
+    }
+
+    /**
+     * start() starts the game between the two clients. This is the start of GameThread's playGame().
+     */
+    public void start() {
+        sequence++;
+        Metrics.gameStarted();
+        long routedId = client1.routedGameId(); //A game a Router paired keeps the router's id, so resuming and watching it are routed to us.
+        if (journal != null) {
+            game = journal.startGame(0, board.variant(), routedId);
+        }
+        spectators = live.started(board.variant(), routedId);
+
+        client1.variant(board.variant());
+        client2.variant(board.variant());
+        client1.assign('X');
+        client2.assign('O');
+        sendResumable();
+        startRound();
+    }
+
+    /**
+     * resume() carries on with a game the last server didn't finish, from where the journal left it.
+     * The players get the whole board and whoever's turn it was is asked for their move.
+     *
+     * @param resumed The game as the journal left it.
+     */
+    public void resume(MoveJournal.Game resumed) {
+        game = resumed;
+        useBoard(resumed.variant());
+        board.copyFrom(resumed.board());
+        sequence = resumed.sequence();
+        Metrics.gameStarted();
+        spectators = live.started(board.variant(), client1.isRouted() ? resumed.id() : 0);
+
+        client1.variant(board.variant());
+        client2.variant(board.variant());
+        client1.assign('X');
+        client2.assign('O');
+        sendResumable();
+        client1.snapshot(board, sequence);
+        client2.snapshot(board, sequence);
+        spectators.update(board, sequence, true);
+        if (board.currentPlayer() == 'X') {
+            client2.waiting();
+            startMove(client1, State.WAITING_FOR_X);
+        } else {
+            client1.waiting();
+            startMove(client2, State.WAITING_FOR_O);
+        }
+    }
+
+    /**
+     * sendResumable() tells both clients how to get back into the game if the server restarts, and the id
+     * spectators can watch it with.
+     */
+    private void sendResumable() {
+        if (game != null) {
+            client1.resumable(game.id(), game.token('X'));
+            client2.resumable(game.id(), game.token('O'));
+        }
+        client1.watchable(spectators.id());
+        client2.watchable(spectators.id());
+    }
+
+    /**
+     * startRound() is the top of the "turn" loop. It prints the up-to-date board, checks if 'O' just won
+     * or the game is a draw and otherwise lets 'X' make a move.
+     */
+    private void startRound() {
+        printBoard();
+        if (board.winCheck('O') == 'O') { //Checks to see if 'O' Player won the game....
+            client2.gameOver(BinaryProtocol.WIN);
+            client1.gameOver(BinaryProtocol.LOSE);
+            endGame(BinaryProtocol.WIN, 'O');
+            return;
+        }
+        if (board.isFull()) { //Nobody can move anymore, the game is a draw...
+            client1.gameOver(BinaryProtocol.DRAW);
+            client2.gameOver(BinaryProtocol.DRAW);
+            endGame(BinaryProtocol.DRAW, ' ');
+            return;
+        }
+        client2.waiting();
+        startMove(client1, State.WAITING_FOR_X); //Allow player 'X' to place a piece.
+    }
+
+    /**
+     * finishRound() is the second half of the "turn" loop. It prints the up-to-date board, checks if 'X'
+     * just won or the game is a draw and otherwise lets 'O' make a move.
+     */
+    private void finishRound() {
+        printBoard();
+        if (board.winCheck('X') == 'X') { //Checks to see if 'X' Player won the game...
+            client1.gameOver(BinaryProtocol.WIN);
+            client2.gameOver(BinaryProtocol.LOSE);
+            endGame(BinaryProtocol.WIN, 'X');
+            return;
+        }
+        if (board.isFull()) { //Nobody can move anymore, the game is a draw...
+            client1.gameOver(BinaryProtocol.DRAW);
+            client2.gameOver(BinaryProtocol.DRAW);
+            endGame(BinaryProtocol.DRAW, ' ');
+            return;
+        }
+        client1.waiting();
+        startMove(client2, State.WAITING_FOR_O); //Allow player 'O' to place a piece.
+    }
+
+    /**
+     * endGame() waits 5 seconds before the players go back to the lobby (So players know what happened)
+     * without holding on to a thread.
+     *
+     * @param result BinaryProtocol.WIN or BinaryProtocol.DRAW, for the metrics.
+     * @param winner The winners symbol, anything for a draw.
+     */
+    private void endGame(int result, char winner) {
+        state = State.BETWEEN_GAMES;
+        Metrics.gameFinished(result);
+        if (journal != null) {
+            journal.endGame(game, sequence, result, winner);
+        }
+        spectators.gameOver(result, winner);
+        live.finished(spectators);
+        backToLobbyLater();
+    }
+
+    /**
+     * backToLobbyLater() sends the players back to the lobby after the pause. One who left in the meantime
+     * is already closed, and the lobby skips them.
+     */
+    private void backToLobbyLater() {
+        loop.schedule(() -> {
+            if (!finished) { //One of the players may have left while we were waiting.
+                finished = true;
+                client1.returnToLobby(); //Player 1 waits first so they are player 1 again if nobody else is waiting.
+                client2.returnToLobby();
+            }
+        }, 5000);
+    }
+
+    /**
+     * startMove() is the start of GameThread's playerMove(). Anything the client typed when it wasn't
+     * their turn has already been ignored, so it just has to prompt them.
+     *
+     * @param client The client whose turn it is.
+     * @param next   The state to wait in for their move.
+     */
+    private void startMove(Connection client, State next) {
+        state = next;
+        client.discardInput(); //Throws away whatever else the client sent so far so it doesn't auto-place.
+        promptMove(client);
+        promptedAt = System.nanoTime();
+        int move = sequence;
+        clock.start(client.player(), () -> loop.execute(() -> onTimeout(client, move))); //Keeps running if it already is, after a full column.
+    }
+
+    /**
+     * onTimeout() forfeits the game for a client that ran out of time for their move: their opponent wins
+     * and the client is disconnected.
+     *
+     * @param client The client whose clock ran out.
+     * @param move   The sequence number of the board they had to move on, in case they moved just in time.
+     */
+    private void onTimeout(Connection client, int move) {
+        if (finished || state == State.BETWEEN_GAMES || move != sequence) {
+            return;
+        }
+        Connection winner = client == client1 ? client2 : client1;
+        Metrics.turnTimedOut();
+        winner.gameOver(BinaryProtocol.WIN);
+        client.gameOver(BinaryProtocol.LOSE);
+        endGame(BinaryProtocol.WIN, winner.player());
+        client.close(); //The lobby skips it once the pause is over.
+    }
+
+    private void promptMove(Connection client) {
+        client.yourTurn(client.player());
+    }
+
+    /**
+     * onMove() is called by the clients connection for every move the client sent.
+     * It validates the column number the same way playerMove() does and places the piece.
+     *
+     * @param client    The client that sent the move.
+     * @param columnNum The column number, or MoveInput.NOT_A_NUMBER if the client sent some nonsense.
+     * @return false if the move was ignored (it wasn't their turn) or refused, so the client wasted it.
+     */
+    boolean onMove(Connection client, int columnNum) {
+        boolean theirTurn = (state == State.WAITING_FOR_X && client == client1) || (state == State.WAITING_FOR_O && client == client2);
+        if (!theirTurn || finished) { //Ignore anything that was sent when it wasn't their turn.
+            return false;
+        }
+        long receivedAt = System.nanoTime();
+
+        if (columnNum == MoveInput.NOT_A_NUMBER) { //If they sent some nonsense other than a number...
+            Metrics.invalidMove(BinaryProtocol.INVALID_INPUT);
+            client.invalidMove(BinaryProtocol.INVALID_INPUT);
+            promptMove(client);
+            return false;
+        }
+        if (columnNum < 0 || columnNum >= board.cols()) { //If they input a column number that doesn't exist...
+            Metrics.invalidMove(BinaryProtocol.INVALID_COLUMN);
+            client.invalidMove(BinaryProtocol.INVALID_COLUMN);
+            promptMove(client);
+            return false;
+        }
+
+        if (board.canPlay(columnNum) && !clock.stop()) { //Too late, the session is about to forfeit the game for them.
+            return true;
+        }
+        if (!board.dropPiece(columnNum, client.player())) {
+            Metrics.invalidMove(BinaryProtocol.COLUMN_FULL);
+            client.invalidMove(BinaryProtocol.COLUMN_FULL);
+            startMove(client, state); //Allow the player another turn in case their column was full.
+            return false;
+        }
+
+        sequence++;
+        if (journal != null) {
+            journal.move(game, sequence, client.player(), columnNum);
+        }
+        Metrics.moveMade(receivedAt - promptedAt);
+        if (client == client1) {
+            finishRound();
+        } else {
+            startRound();
+        }
+        Metrics.moveProcessed(System.nanoTime() - receivedAt);
+        return true;
+    }
+
+    /**
+     * onResync() is called when a client lost track of the board and asked for a snapshot of it.
+     * Unlike a move this is answered straight away, whoever's turn it is.
+     *
+     * @param client The client that asked.
+     */
+    void onResync(Connection client) {
+        if (!finished) {
+            client.snapshot(board, sequence);
+        }
+    }
+
+    /**
+     * onDisconnect() is called when either client's connection fails. Only that client is disconnected. A game
+     * that wasn't over yet is abandoned and the other client is told they won, then, just like after any other
+     * game, goes back to the lobby once the pause is over (the lobby skips the closed one), the same as
+     * GameThread's players.
+     *
+     * @param client The client whose connection failed.
+     * @param reason Why it failed.
+     */
+    void onDisconnect(Connection client, String reason) {
+        if (finished) {
+            return;
+        }
+        if (state == State.BETWEEN_GAMES) { //Leaving during the pause after a game doesn't abandon it.
+            client.close();
+            return;
+        }
+        state = State.BETWEEN_GAMES; //Whoever's move it was, nobody makes it now.
+        clock.stop();
+        Metrics.gameAbandoned();
+        if (journal != null) {
+            journal.endGame(game, sequence, MoveJournal.ABANDONED, ' ');
+        }
+        live.finished(spectators);
+        System.out.println(reason);
+        client.close();
+        (client == client1 ? client2 : client1).gameOver(BinaryProtocol.WIN); //Their opponent left.
+        backToLobbyLater();
+    }
+
+    private void printBoard() {
+        rendered.changed(sequence);
+        client1.board(rendered);
+        client2.board(rendered);
+        spectators.update(board, sequence, false);
+    }
+}
@@ -1,285 +1,393 @@
 package Server;
 
-import java.net.*;
+import Protocol.BinaryProtocol;
+
 import java.io.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This is the game thread class. All the logic and functionality of the connect 4 game is found here.
- * The thread is created with two clients passed into it and utilizes PrintWriters and BufferedReaders to
- * communicate with the clients. The general flow of the game is found in the while loops of run().
+ * The thread is created with two clients the Lobby paired up and utilizes a PlayerConnection for each of
+ * them to communicate with the clients (in either the text or the binary protocol, whichever the client
+ * asked for). The general flow of the game is found in the while loop of playGame(). Once the game is
+ * over both players go back to the lobby for their next game. If one of them leaves in the middle of it, only
+ * they are disconnected: the other one wins and goes back to the lobby the same way.
+ * For a client that asked to play the computer, player 2 is a ComputerPlayer instead of a second client.
+ * If the server keeps a MoveJournal every move is written to it, and a game the last server didn't finish
+ * can be carried on from where the journal left it once its players are back (see ResumableGames).
+ * Every board it sends the players also goes to the game's Spectators, who are written to by threads of
+ * their own so a slow spectator never holds up the game.
+ * A MoveClock times every move of a client, a player who runs out of time forfeits the game. The pause
+ * before the players go back to the lobby is a TimingWheel timeout rather than the thread sleeping, so the
+ * thread is free as soon as the game is over.
  * The program splits win check logic and player movement into their own methods.
+ * Each step of the game (the board, then the result or whose turn it is) goes to a player as one write: the
+ * players only collect their messages until they are flushed, and the board is encoded once per protocol
+ * for both of them (see RenderedBoard).
+ *
+ * It is a Runnable rather than a Thread so the server can choose what runs it, either a platform thread
+ * or a virtual thread. The blocking reads and writes are left as they are (there are no synchronized
+ * blocks around socket I/O) so a virtual thread simply unmounts from its carrier while it waits.
  *
  */
-public class GameThread extends Thread {
-    private Socket client1, client2;
-
-    private char[][] gameBoard = new char[6][7]; // 6 x 7 game board is structured as a 2d char array that will consist of either "X","O", or " "
-
-    private int placedRow = 0; //The row index of the last piece that was placed.
-    private int placedCol = 0; //The column index of the last piece that was placed.
+public class GameThread implements Runnable {
+    private Player p1, p2;
+    private Lobby<PlayerConnection> lobby; //Where the players go back to once the game is over.
+    private MoveJournal journal; //Null if the server doesn't keep one.
+    private MoveJournal.Game game; //This game in the journal, null without a journal.
+    private LiveGames live;
+    private Spectators spectators; //Null until the game started.
+
+    private Board board; //The game board of the variant the players asked for, see Board for the rules of the game.
+    private RenderedBoard rendered; //The board as both players are sent it.
+    private int sequence = 0; //Goes up by one every time the board changes, so delta clients can tell if they missed something.
+    private boolean over = false; //True once the game was played to the end, so a player leaving afterwards doesn't count as abandoning it.
+    private long moveReceivedAt = 0; //System.nanoTime() the last valid move arrived, 0 once its processing time was recorded.
+    private boolean snapshotNext = false; //True if the next printBoard() has to send the whole board.
+    private final MoveClock clock = new MoveClock();
+    private volatile char timedOut = 0; //The player who ran out of time, set by the timing wheel.
+
+    public GameThread(Player c1, Player c2, Lobby<PlayerConnection> lobby, MoveJournal journal, LiveGames live) {
+        p1 = c1;
+        p2 = c2;
+        this.lobby = lobby;
+        this.journal = journal;
+        this.live = live;
+    }
 
-    public GameThread(Socket c1, Socket c2) {
-        client1 = c1;
-        client2 = c2;
+    /**
+     * This constructor carries on with a game from the journal of the last server.
+     *
+     * @param resumed The game as the journal left it.
+     */
+    public GameThread(Player c1, Player c2, Lobby<PlayerConnection> lobby, MoveJournal journal, LiveGames live, MoveJournal.Game resumed) {
+        this(c1, c2, lobby, journal, live);
+        game = resumed;
     }
 
     public void run() {
-        try (PrintWriter out1 = new PrintWriter(client1.getOutputStream(), true); PrintWriter out2 = new PrintWriter(client2.getOutputStream(), true); BufferedReader in1 = new BufferedReader(new InputStreamReader(client1.getInputStream())); BufferedReader in2 = new BufferedReader(new InputStreamReader(client2.getInputStream()));) {
-            while (true) { //This for loop is the "main" game loop. It contains the entire flow of a game. It re-runs whenever a game has ended between the clients.
-                /*
-                For loop initializes/resets the game board at the start of a game by setting all
-                positions in the 6 x 7 2D gameBoard array to ' ' which represents an empty/unclaimed position
-                on the board.
-                 */
-                for (int row = 0; row < 6; row++) {
-                    for (int col = 0; col < 7; col++) {
-                        gameBoard[row][col] = ' '; //Set position to empty.
-                    }
+        try {
+            try {
+                playGame();
+            } catch (IOException e) {
+                if (timedOut == 0) {
+                    throw e;
                 }
-
-                out1.println("You are player 1: 'X'");
-                out2.println("You are player 2: 'O'");
-
-                /*
-                This while loop is the "turn" loop. Every turn it will print out the up-to-date
-                game board to both clients, check if the last place piece created a win condition, if
-                not it continues to let the other player create a move.
-                 */
-                while (true) {
-                    printBoard(out1);
-                    printBoard(out2);
-                    if (winCheck('O') == 'O') { //Checks to see if 'O' Player won the game....
-                        out2.println("You Win! New game starting in 5 seconds...");
-                        out1.println("You Lose! New game starting in 5 seconds...");
-                        break; //Breaking out of loop if player won...
-                    }
-                    out2.println("Waiting for other player...");
-                    playerMove(in1, out1, 'X'); //Allow player 'X' to place a piece.
-                    printBoard(out1);
-                    printBoard(out2);
-                    if (winCheck('X') == 'X') { //Checks to see if 'X' Player won the game...
-                        out1.println("You Win! New game starting in 5 seconds...");
-                        out2.println("You Lose! New game starting in 5 seconds...");
-                        break; //Breaking out of loop if player won...
-                    }
-                    out1.println("Waiting for other player...");
-                    playerMove(in2, out2, 'O'); //Allow player 'O' to place a piece.
+                forfeit(); //The read failed because the clock ran out, not because the client left.
+            }
+        } catch (IOException e) {
+            if (!over) {
+                Metrics.gameAbandoned();
+                if (journal != null) {
+                    journal.endGame(game, sequence, MoveJournal.ABANDONED, ' ');
+                }
+                if (spectators != null) {
+                    live.finished(spectators);
                 }
-                Thread.sleep(5000); //After a game is ended, thread sleeps for 5 seconds before starting a new game... (So players know what happened)
             }
-        } catch (IOException | InterruptedException e) {
-            System.out.println("Ah nertz.");
             System.out.println(e.getMessage());
+            dropLeavers();
         }
+        //After a game is ended, the players wait 5 seconds before they go back to the lobby... (So players know what happened)
+        //The wheel's thread mustn't block, and the lobby checks the players are still connected, so a pool thread takes them back.
+        TimingWheel.SHARED.schedule(() -> ForkJoinPool.commonPool().execute(() -> {
+            backToLobby(p1); //Player 1 waits first so they are player 1 again if nobody else is waiting.
+            backToLobby(p2);
+        }), 5000);
     }
 
     /**
-     * printBoard() method is responsible for printing a nicely formatted terminal-friendly
-     * version of the current gameBoard based on the 6 x 7 2D char array to
-     * the player.
+     * forfeit() ends the game for a player who ran out of time: their opponent wins. The loser is
+     * disconnected, their reading side is already shut.
      *
-     * @param out The Printer Writer of the player to print too.
+     * @throws IOException If the winner disconnected.
      */
-    private void printBoard(PrintWriter out) {
-        out.println("-----------------------------"); //Start of game board output
-        /*
-        Nested for loop prints the gameBoard output in a 6 x 7 grid.
-         */
-        for (int row = 0; row < 6; row++) {
-            out.print("| ");
-            for (int col = 0; col < 7; col++) {
-                out.print(gameBoard[row][col]); //Print game board piece at current position.
-                out.print(" | ");
-            }
-            out.println();
-            if (row < 6 - 1) {
-                out.println();
-            }
+    private void forfeit() throws IOException {
+        Player loser = timedOut == 'X' ? p1 : p2;
+        Player winner = timedOut == 'X' ? p2 : p1;
+        Metrics.turnTimedOut();
+        try {
+            loser.gameOver(BinaryProtocol.LOSE);
+            loser.flush();
+        } catch (IOException e) {
+            //They may well be gone, which is likely why they ran out of time.
         }
-        out.println("-----------------------------"); //End of game board output
-        out.println(" [0] [1] [2] [3] [4] [5] [6]");
+        loser.close();
+        if (loser == p1) { //Only the winner goes back to the lobby.
+            p1 = null;
+        } else {
+            p2 = null;
+        }
+        gameFinished(BinaryProtocol.WIN, timedOut == 'X' ? 'O' : 'X');
+        winner.gameOver(BinaryProtocol.WIN);
+        winner.flush();
     }
 
     /**
-     * playerMove() is used to allow the player to place a piece on the board.
-     * It first clears any buffered input that the client may have input when it wasn't their turn.
-     * It then prompts the client to input a column number to place in and verifies/sanitizes their input.
-     * Lastly it finds the lowest empty spot in the column and adds the player's piece to it.
-     *
-     * @param in     BufferedReader of the client
-     * @param out    PrinterWriter of the client
-     * @param player The char symbol of the client (either 'X' or 'O')
-     * @throws IOException
+     * dropLeavers() is called when talking to a player failed. Whoever has gone is disconnected, and the other
+     * player, who did nothing wrong, wins a game that wasn't over yet and goes back to the lobby like after any
+     * other game. The game thread is the only one reading the connections now, so it can check them itself.
      */
-    private void playerMove(BufferedReader in, PrintWriter out, Character player) throws IOException {
-
-        while (in.ready()) { //Clears the clients buffered reader buffer in case they tried to place a piece when it wasn't their turn. (So it doesn't auto-place based on their previous input)
-            in.readLine();
+    private void dropLeavers() {
+        boolean p1Left = hasLeft(p1);
+        boolean p2Left = hasLeft(p2);
+        if (!p1Left && !p2Left) { //Couldn't tell who it was, so neither of them goes back.
+            p1Left = p2Left = true;
         }
+        if (p1Left) {
+            p1 = close(p1);
+        }
+        if (p2Left) {
+            p2 = close(p2);
+        }
+        Player survivor = p1 != null ? p1 : p2;
+        if (survivor == null || over) {
+            return;
+        }
+        try {
+            survivor.gameOver(BinaryProtocol.WIN); //Their opponent left.
+            survivor.flush();
+        } catch (IOException e) {
+            close(survivor);
+            p1 = p2 = null;
+        }
+    }
 
-        String playerInput; //The column to place given from the client
-
-        int columnNum = -1; //The column to place the piece in.
+    private static boolean hasLeft(Player player) {
+        return player instanceof PlayerConnection && !((PlayerConnection) player).isAlive();
+    }
 
-        /*
-        While loop is used for user input sanitization. It allows user to re-try endlessly if they
-        input an invalid column number or some nonsense.
-         */
-        while (columnNum < 0 || columnNum > 6) {
-            out.println("Please enter a column number (0-6) to place '" + player + "': ");
-            playerInput = in.readLine();
+    private static Player close(Player player) {
+        if (player != null) {
+            player.close();
+        }
+        return null;
+    }
 
-            /*
-            Try-catch is used in case a client sent some nonsense other than a number in
-            their input.
-             */
-            try {
-                columnNum = Integer.parseInt(playerInput);
+    private void backToLobby(Player player) {
+        if (player instanceof PlayerConnection) { //The computer doesn't need to wait for anything, and a player who forfeited (null) has gone.
+            lobby.returned((PlayerConnection) player);
+        }
+    }
 
-                if (columnNum < 0 || columnNum > 6) { //If they input a column number that doesn't exist...
-                    out.println("Invalid column number. Try again!");
-                    columnNum = -1; //Reset columnNum so the while loop runs again.
-                }
-            } catch (Exception e) {
-                out.println("Invalid Input. Try again!");
+    /**
+     * playGame() contains the entire flow of a game.
+     *
+     * @throws IOException If either client disconnected.
+     */
+    private void playGame() throws IOException {
+        boolean resumed = game != null;
+        //The lobby only pairs players that want the same variant, and the computer only plays the classic board.
+        int variant = resumed ? game.variant() : p1 instanceof PlayerConnection ? ((PlayerConnection) p1).variant() : BinaryProtocol.VARIANT_CLASSIC;
+        board = Board.create(variant);
+        rendered = new RenderedBoard(board);
+        //A game a Router paired keeps the router's id, in the journal and for spectators, so the router sends anyone resuming or watching it to us too.
+        PlayerConnection first = p1 instanceof PlayerConnection ? (PlayerConnection) p1 : null;
+        long routedId = first == null || !first.isRouted() ? 0 : resumed ? game.id() : first.routedGameId();
+        if (resumed) { //Carries on where the journal left it, the players get the whole board with the first printBoard().
+            board.copyFrom(game.board());
+            sequence = game.sequence();
+            snapshotNext = true;
+        } else {
+            sequence++;
+            if (journal != null) {
+                game = journal.startGame(p2 instanceof ComputerPlayer ? ((ComputerPlayer) p2).level() : 0, variant, routedId);
             }
         }
+        Metrics.gameStarted();
+        spectators = live.started(variant, routedId);
+
+        p1.variant(variant);
+        p2.variant(variant);
+        p1.assign('X');
+        p2.assign('O');
+        if (game != null) {
+            p1.resumable(game.id(), game.token('X'));
+            p2.resumable(game.id(), game.token('O'));
+        }
+        p1.watchable(spectators.id());
+        p2.watchable(spectators.id());
+
+        if (resumed && board.currentPlayer() == 'O') { //The last server stopped after a move by 'X', so this starts halfway through the turn loop.
+            printBoard(p1, p2);
+            p1.waiting();
+            p1.flush();
+            playerMove(p2, 'O');
+        }
 
         /*
-        This for loop is used for placing the players piece in the lowest empty spot
-        in the column that they selected.
+        This while loop is the "turn" loop. Every turn it will print out the up-to-date
+        game board to both clients, check if the last place piece created a win condition, if
+        not it continues to let the other player create a move.
          */
-        for (int row = 5; row >= 0; row--) {
-            if (gameBoard[row][columnNum] == ' ') { //Checks to see if spot is empty...
-                gameBoard[row][columnNum] = player; //Sets it to the player symbol
-                placedRow = row; //Keeps track of last placed row.
-                placedCol = columnNum; //Keeps track of last placed col.
-                return; // Piece placed successfully, exit the method
+        while (true) {
+            printBoard(p1, p2);
+            if (board.winCheck('O') == 'O') { //Checks to see if 'O' Player won the game....
+                p2.gameOver(BinaryProtocol.WIN);
+                p1.gameOver(BinaryProtocol.LOSE);
+                gameFinished(BinaryProtocol.WIN, 'O');
+                flush(p1, p2);
+                return; //Game over if player won...
+            }
+            if (board.isFull()) { //Nobody can move anymore, the game is a draw...
+                p1.gameOver(BinaryProtocol.DRAW);
+                p2.gameOver(BinaryProtocol.DRAW);
+                gameFinished(BinaryProtocol.DRAW, ' ');
+                flush(p1, p2);
+                return;
+            }
+            p2.waiting();
+            p2.flush(); //Player 1 gets theirs with the prompt, once playerMove() waits for their move.
+            moveProcessed();
+            playerMove(p1, 'X'); //Allow player 'X' to place a piece.
+            printBoard(p1, p2);
+            if (board.winCheck('X') == 'X') { //Checks to see if 'X' Player won the game...
+                p1.gameOver(BinaryProtocol.WIN);
+                p2.gameOver(BinaryProtocol.LOSE);
+                gameFinished(BinaryProtocol.WIN, 'X');
+                flush(p1, p2);
+                return; //Game over if player won...
             }
+            if (board.isFull()) { //Nobody can move anymore, the game is a draw...
+                p1.gameOver(BinaryProtocol.DRAW);
+                p2.gameOver(BinaryProtocol.DRAW);
+                gameFinished(BinaryProtocol.DRAW, ' ');
+                flush(p1, p2);
+                return;
+            }
+            p1.waiting();
+            p1.flush();
+            moveProcessed();
+            playerMove(p2, 'O'); //Allow player 'O' to place a piece.
         }
-        out.println("That column is full! Please select another one");
-        playerMove(in, out, player); //Recursively allow players another turn in case their column was full.
-
     }
 
     /**
-     * winCheck() method is used check whether the player has won. A win occurs when there are
-     * 4 of the players pieces placed consecutively in a horizontal, vertical, or diagonal line.
-     * It does this check based on the position of the last placed piece on the board.
+     * gameFinished() counts a game that was played to the end, as soon as its result is decided. A player who
+     * leaves while being sent the result doesn't undo it.
      *
-     * @param player The symbol of the player to check win for.
-     * @return Win status - Returns player symbol if they have won such as 'X' or 'O'. Else if no win just ' '
+     * @param result BinaryProtocol.WIN or BinaryProtocol.DRAW.
+     * @param winner The winners symbol, anything for a draw.
      */
-    private char winCheck(char player) {
-        int pieceCount = 0; //Amount of players pieces found consecutively in line.
-
-        /*
-        HORIZONTAL LINE WIN CHECK
-        The following for loop is used to check for horizontal line wins.
-         */
-        for (int col = 0; col < 7; col++) { //For every column...
-            if (gameBoard[placedRow][col] == player) { //If the piece at the current column and last placed row belongs to the player...
-                pieceCount++;
-                if (pieceCount == 4) { //If we have 4 consecutive player pieces return with a win
-                    return player;
-                }
-            } else {
-                pieceCount = 0; //Reset back to 0 if it is not player (insures they are consecutively the same player not just 4 in the same column spread out)
-            }
+    private void gameFinished(int result, char winner) {
+        moveProcessed();
+        over = true;
+        Metrics.gameFinished(result);
+        if (journal != null) {
+            journal.endGame(game, sequence, result, winner);
         }
+        spectators.gameOver(result, winner);
+        live.finished(spectators);
+    }
 
-        /*
-        VERTICAL LINE WIN CHECK
-        The following for loop is used to check for VERTICAL line wins.
-        */
-        pieceCount = 0;
+    private static void flush(Player p1, Player p2) throws IOException {
+        p1.flush();
+        p2.flush();
+    }
 
-        for (int row = placedRow; row < 6; row++) { //For every row...
-            if (gameBoard[row][placedCol] == player) { //If the piece at the current row and last placed column belongs to the player...
-                pieceCount++;
-                if (pieceCount == 4) { //If we have 4 consecutive player pieces from last placed piece return with a win...
-                    return player;
-                }
-            } else {
-                break;
-            }
+    /**
+     * moveProcessed() records how long the last move took to handle, now that both players have been told
+     * what happens next.
+     */
+    private void moveProcessed() {
+        if (moveReceivedAt != 0) {
+            Metrics.moveProcessed(System.nanoTime() - moveReceivedAt);
+            moveReceivedAt = 0;
         }
+    }
 
-
-        /*
-        DIAGONAL LINE WIN CHECK FROM TOP LEFT TO BOTTOM RIGHT
-
-        The following for loop is used to check for DIAGONAL line wins going in the left (top) to right (bottom) direction.
-         */
-
-        pieceCount = 1;  // Including the last placed piece itself for diagonal checks.
-
-        /*
-        The first for loop checks up-left of the last placed piece.
-         */
-        for (int i = 1; i < 4; i++) {
-            if (placedRow - i < 0 || placedCol - i < 0) { //If out of bounds...
-                break;
-            }
-            if (gameBoard[placedRow - i][placedCol - i] != player) { //If a piece is not the players, break out of counting.
-                break;
-            }
-            pieceCount++;
+    /**
+     * printBoard() method is responsible for sending the up-to-date gameBoard to both players,
+     * each in the protocol they asked for, and to the spectators. It is sent with whatever follows it
+     * in the same step, nothing is flushed yet.
+     *
+     * @param p1 Player 1
+     * @param p2 Player 2
+     * @throws IOException
+     */
+    private void printBoard(Player p1, Player p2) throws IOException {
+        if (snapshotNext) { //A resumed game, the players have no board yet.
+            snapshotNext = false;
+            p1.snapshot(board, sequence);
+            p2.snapshot(board, sequence);
+            spectators.update(board, sequence, true);
+            return;
         }
+        rendered.changed(sequence);
+        p1.board(rendered);
+        p2.board(rendered);
+        spectators.update(board, sequence, false);
+    }
 
-        /*
-        Now without resetting the pieceCount from our last loop, we got to check down-right of the last placed piece
-         */
-        for (int i = 1; i < 4; i++) {
-            if (placedRow + i >= 6 || placedCol + i >= 7) { //If out of bounds...
-                break;
-            }
-            if (gameBoard[placedRow + i][placedCol + i] != player) { //If a piece is not the players, break out of counting.
-                break;
-            }
-            pieceCount++;
+    /**
+     * playerMove() is used to allow the player to place a piece on the board.
+     * It first clears any buffered input that the client may have input when it wasn't their turn.
+     * It then prompts the client to input a column number to place in and verifies/sanitizes their input.
+     * Lastly it finds the lowest empty spot in the column and adds the player's piece to it, or asks again if the column is full.
+     *
+     * @param client The player, the connection of a client or the computer
+     * @param player The char symbol of the client (either 'X' or 'O')
+     * @throws IOException
+     */
+    private void playerMove(Player client, char player) throws IOException {
+
+        if (!(client instanceof ComputerPlayer)) { //Times the move, the clock keeps running through any invalid moves.
+            clock.start(player, () -> {
+                timedOut = player;
+                client.timedOut();
+            });
         }
 
-        if (pieceCount >= 4) { //If our combined piece count from checking up-left and down-right of the current piece is 4+...
-            return player;  //Return win!
+        if (client.drainInput()) { //Clears the clients buffer in case they tried to place a piece when it wasn't their turn.
+            client.snapshot(board, sequence); //They lost track of the board while waiting, send all of it.
         }
 
-        pieceCount = 1;  //Reset for other diagonal direction, starting at 1 to include the last placed piece itself
+        int columnNum = -1; //The column to place the piece in.
+        boolean prompt = true; //False when the client is still looking at the last prompt.
+        long promptedAt = 0; //When the client was first asked for this move.
+        long receivedAt = 0; //When the last thing the client sent arrived.
 
         /*
-        DIAGONAL LINE WIN CHECK FROM BOTTOM LEFT TO TOP RIGHT
-
-        The following for loop is used to check for DIAGONAL line wins going in the right (top) to left (bottom) direction.
+        While loop is used for user input sanitization. It allows user to re-try endlessly if they
+        input an invalid column number or some nonsense, or a column that is full.
          */
-        for (int i = 1; i < 4; i++) {
-            if (placedRow + i >= 6 || placedCol - i < 0) { //If out of bounds...
-                break;
+        while (columnNum < 0 || columnNum >= board.cols() || !board.dropPiece(columnNum, player)) {
+            if (columnNum >= 0 && columnNum < board.cols()) { //If the column they picked is full...
+                Metrics.invalidMove(BinaryProtocol.COLUMN_FULL);
+                client.invalidMove(BinaryProtocol.COLUMN_FULL);
             }
-            if (gameBoard[placedRow + i][placedCol - i] != player) { //If a piece is not the players, break out of counting
-                break;
-            }
-            pieceCount++;
-        }
-
-        /*
-        Now without resetting the pieceCount from our last loop, we got to check up-right of the last placed piece
-         */
-        for (int i = 1; i < 4; i++) {
-            if (placedRow - i < 0 || placedCol + i >= 7) { //If out of bounds...
-                break;
+            if (prompt) {
+                client.yourTurn(player);
+                if (promptedAt == 0) {
+                    promptedAt = System.nanoTime();
+                }
             }
-            if (gameBoard[placedRow - i][placedCol + i] != player) { //If a piece is not the players, break out of counting
-                break;
+            prompt = true;
+            columnNum = client.readMove();
+            receivedAt = System.nanoTime();
+
+            if (columnNum == MoveInput.RESYNC) { //If they lost track of the board...
+                client.snapshot(board, sequence);
+                prompt = false;
+            } else if (columnNum == MoveInput.NOT_A_NUMBER) { //If they sent some nonsense other than a number...
+                Metrics.invalidMove(BinaryProtocol.INVALID_INPUT);
+                client.invalidMove(BinaryProtocol.INVALID_INPUT);
+            } else if (columnNum < 0 || columnNum >= board.cols()) { //If they input a column number that doesn't exist...
+                Metrics.invalidMove(BinaryProtocol.INVALID_COLUMN);
+                client.invalidMove(BinaryProtocol.INVALID_COLUMN);
             }
-            pieceCount++;
         }
 
-        if (pieceCount >= 4) { //If our combined piece count from checking up-left and down-right of the current piece is 4+...
-            return player;  //Return player for the win.
+        //The loop placed the players piece in the lowest empty spot in the column that they selected.
+        if (!clock.stop()) { //The move came in just as the clock ran out, the input is already shut.
+            throw new EOFException("Out of time.");
         }
-
-
-        return ' '; //No win
+        sequence++;
+        if (journal != null) {
+            journal.move(game, sequence, player, columnNum);
+        }
+        moveReceivedAt = receivedAt;
+        Metrics.moveMade(receivedAt - promptedAt);
     }
 
 }
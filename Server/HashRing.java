@@ -0,0 +1,118 @@
+package Server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This is the hash ring class, the consistent hashing the Router assigns games to game servers with. Every
+ * node is put on a ring of 64 bit hashes at POINTS_PER_NODE places (worked out from its name, so every
+ * router puts it in the same places), and a key belongs to the node of the first place at or after the
+ * key's own hash, going round.
+ *
+ * A node that is down keeps its places, they are just skipped. So only the keys of a dead node move, each
+ * to whichever node comes after it on the ring, which spreads them over all the others. Every other key
+ * stays where it was, and once the node is back up its keys go back to it.
+ * Only ever used by the router's thread, like everything else in it.
+ *
+ * @param <N> The kind of node, its toString() is its name on the ring.
+ */
+public class HashRing<N> {
+    public static final int POINTS_PER_NODE = 64; //Places on the ring per node, more places spread the keys more evenly.
+
+    private final List<N> nodes;
+    private final boolean[] up; //Per node, false while it is down.
+    private final long[] points; //The places on the ring, in order.
+    private final int[] owners; //The index of the node at each place.
+
+    /**
+     * @param nodes The nodes, all of them up to begin with.
+     */
+    public HashRing(List<N> nodes) {
+        this.nodes = new ArrayList<>(nodes);
+        up = new boolean[nodes.size()];
+        Arrays.fill(up, true);
+        long[][] places = new long[nodes.size() * POINTS_PER_NODE][]; //Hash and node, to sort them together.
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int i = 0; i < POINTS_PER_NODE; i++) {
+                places[node * POINTS_PER_NODE + i] = new long[]{mix(hash(nodes.get(node) + "#" + i)), node};
+            }
+        }
+        Arrays.sort(places, (a, b) -> Long.compare(a[0], b[0]));
+        points = new long[places.length];
+        owners = new int[places.length];
+        for (int i = 0; i < places.length; i++) {
+            points[i] = places[i][0];
+            owners[i] = (int) places[i][1];
+        }
+    }
+
+    /**
+     * node() is the node a key belongs to.
+     *
+     * @param key The key, a game id.
+     * @return The first node that is up from the key's place on the ring, null if they are all down.
+     */
+    public N node(long key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int start = Arrays.binarySearch(points, mix(key));
+        if (start < 0) { //Between two places, the one after it is the key's.
+            start = -start - 1;
+        }
+        for (int i = 0; i < points.length; i++) {
+            int owner = owners[(start + i) % points.length];
+            if (up[owner]) {
+                return nodes.get(owner);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * setUp() marks a node up or down.
+     *
+     * @return true if that changed anything.
+     */
+    public boolean setUp(N node, boolean isUp) {
+        int index = nodes.indexOf(node);
+        if (index < 0 || up[index] == isUp) {
+            return false;
+        }
+        up[index] = isUp;
+        return true;
+    }
+
+    public boolean isUp(N node) {
+        int index = nodes.indexOf(node);
+        return index >= 0 && up[index];
+    }
+
+    public List<N> nodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * hash() is the 64 bit FNV-1a hash of a node's name.
+     */
+    private static long hash(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * mix() spreads a number over the whole ring (the finalizer of SplitMix64). Game ids mostly differ in their
+     * last few bits, without it they would all sit in one corner of the ring.
+     */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+}
@@ -0,0 +1,125 @@
+package Server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is the histogram class used by Metrics. It counts how many values fell in each of a fixed set of
+ * buckets: every power of two is split into SUB_BUCKETS buckets, so a percentile is never more than about
+ * 6% off however long the times get, and the memory used never grows.
+ *
+ * Recording a time is an atomic increment on one of several stripes of buckets, picked by the recording
+ * thread, so game threads and event loops recording at the same time hardly ever touch the same cache
+ * line. The stripes are only added up when somebody reads the histogram.
+ *
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; //Buckets per power of two.
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+    private final LongAdder sum = new LongAdder(); //Sum of every value recorded.
+
+    public Histogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    /**
+     * record() counts one value.
+     *
+     * @param value The value, a time in nanoseconds or an amount of bytes. Negative values count as 0.
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        stripes[stripe].incrementAndGet(bucket(value));
+        sum.add(value);
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    /**
+     * counts() adds up the stripes.
+     *
+     * @return How many values fell in every bucket.
+     */
+    public long[] counts() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * percentile() finds the value that the given fraction of all recorded values were at or below.
+     *
+     * @param fraction From 0 to 1, 0.99 for the 99th percentile.
+     * @return The value (the top of its bucket), 0 if nothing was recorded.
+     */
+    public long percentile(double fraction) {
+        long[] counts = counts();
+        long total = 0;
+        for (long n : counts) {
+            total += n;
+        }
+        long wanted = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= wanted && seen > 0) {
+                return upperBound(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * countAtOrBelow() counts the values that were at most 2 ^ power - 1, which is always the top of a
+     * bucket. Used for the Prometheus buckets.
+     *
+     * @param counts The result of counts().
+     * @param power  From SUB_BUCKET_BITS to 63.
+     */
+    static long countAtOrBelow(long[] counts, int power) {
+        int last = bucket((1L << power) - 1);
+        long count = 0;
+        for (int i = 0; i <= last; i++) {
+            count += counts[i];
+        }
+        return count;
+    }
+
+    /**
+     * bucket() finds the bucket of a value. Values below SUB_BUCKETS get a bucket each, above that the
+     * highest bit picks the power of two and the SUB_BUCKET_BITS bits below it pick the bucket within it.
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int highest = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highest - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * upperBound() is the largest value that goes in a bucket.
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,123 @@
+package Server;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the journal replay tool. It reads a MoveJournal directory (the archives of old segments and the
+ * segments themselves) and prints every game in it: its moves as a string of columns (separated by commas on
+ * the bigger boards of the other variants, whose columns can take two digits), who played it and how it ended. Given a game id it replays that one game move by move, printing the board after each of them.
+ * It only reads the files, so it should be pointed at the journal of a server that isn't running (or a copy).
+ *
+ * Usage: java Server.JournalReplay --journal=<directory> [--game=<id>]
+ *
+ */
+public class JournalReplay {
+
+    public static void main(String[] args) throws IOException {
+        String directory = null;
+        long only = 0; //The game to replay move by move, 0 to list them all.
+        for (String arg : args) {
+            if (arg.startsWith("--journal=")) {
+                directory = arg.substring("--journal=".length());
+            } else if (arg.startsWith("--game=")) {
+                only = Long.parseLong(arg.substring("--game=".length()));
+            } else {
+                System.out.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        if (directory == null) {
+            System.out.println("Usage: java Server.JournalReplay --journal=<directory> [--game=<id>]");
+            return;
+        }
+
+        Map<Long, Replay> games = new LinkedHashMap<>(); //In the order they started.
+        MoveJournal.readAll(Paths.get(directory), (gameId, sequence, type, player, column) -> {
+            Replay game = games.computeIfAbsent(gameId, Replay::new);
+            if (type == MoveJournal.SEAT && player == 'O') {
+                game.computerLevel = column;
+            } else if (type == MoveJournal.SEAT && Protocol.BinaryProtocol.isVariant(column)) {
+                game.variant = column;
+            } else if (type == MoveJournal.MOVE) {
+                game.moves.add(new int[]{sequence, player, column});
+            } else if (type == MoveJournal.END) {
+                game.result = column;
+                game.winner = player;
+                game.ended = true;
+            }
+        });
+
+        if (only != 0) {
+            Replay game = games.get(only);
+            if (game == null) {
+                System.out.println("No game " + only + " in the journal.");
+                return;
+            }
+            game.replay(true);
+            return;
+        }
+        for (Replay game : games.values()) {
+            game.replay(false);
+        }
+    }
+
+    /**
+     * One game put back together from its records.
+     */
+    private static final class Replay {
+        final long id;
+        final List<int[]> moves = new ArrayList<>(); //{sequence, player, column}
+        int computerLevel = 0;
+        int variant = Protocol.BinaryProtocol.VARIANT_CLASSIC;
+        boolean ended = false;
+        int result;
+        char winner;
+
+        Replay(long id) {
+            this.id = id;
+        }
+
+        /**
+         * replay() plays the moves on a board and prints the game.
+         *
+         * @param showBoards true to print the board after every move.
+         */
+        void replay(boolean showBoards) {
+            moves.sort((a, b) -> Integer.compare(a[0], b[0]));
+            Board board = Board.create(variant);
+            StringBuilder columns = new StringBuilder();
+            for (int[] move : moves) {
+                board.dropPiece(move[2], (char) move[1]);
+                if (columns.length() > 0 && variant != Protocol.BinaryProtocol.VARIANT_CLASSIC) {
+                    columns.append(',');
+                }
+                columns.append(move[2]);
+                if (showBoards) {
+                    System.out.println("'" + (char) move[1] + "' plays column " + move[2] + ":");
+                    System.out.print(board.render());
+                }
+            }
+            String opponent = computerLevel > 0 ? "computer level " + computerLevel : "player";
+            if (variant != Protocol.BinaryProtocol.VARIANT_CLASSIC) {
+                opponent += String.format(" on %d x %d, connect %d", board.rows(), board.cols(), board.connect());
+            }
+            System.out.println(String.format("Game %d (player vs %s): %s %s", id, opponent,
+                    columns.length() == 0 ? "no moves" : columns, outcome()));
+        }
+
+        private String outcome() {
+            if (!ended) {
+                return "unfinished";
+            }
+            if (result == MoveJournal.WIN) {
+                return "'" + winner + "' won";
+            }
+            return result == MoveJournal.DRAW ? "draw" : "abandoned";
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is the live games class. Every game being played is in here under the id spectators can watch it
+ * with, and it puts every new Spectator on the game it asked for. Someone who asked for WATCH_ANY gets the
+ * newest game, or waits here until one starts, and is moved on to the next game whenever theirs is over.
+ * Anyone else is let go once the game they watched is over. A spectator is only ever put on a game whose
+ * board it knows (see Spectators.canBeWatchedBy()).
+ *
+ */
+public class LiveGames {
+    private final ConcurrentHashMap<Long, Spectators> games = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final List<Spectator> waiting = new ArrayList<>(); //WATCH_ANY spectators while nothing is being played, guarded by this.
+    private Spectators newest = null; //The game that started last, if it is still going. Guarded by this.
+
+    /**
+     * started() adds a game that just started, and hands it anyone waiting for a game to watch.
+     *
+     * @param variant The board the game is played on.
+     * @param id      The id a Router gave the game, 0 to give it one of our own.
+     * @return The game's spectators, to send its updates to.
+     */
+    public Spectators started(int variant, long id) {
+        Spectators game = new Spectators(id != 0 ? id : nextId.getAndIncrement(), variant);
+        games.put(game.id(), game);
+        List<Spectator> ready;
+        synchronized (this) {
+            newest = game;
+            ready = new ArrayList<>(waiting);
+            waiting.clear();
+        }
+        for (Spectator spectator : ready) {
+            watch(spectator);
+        }
+        return game;
+    }
+
+    /**
+     * finished() takes a game that is over (or was abandoned) out, after its spectators were told how it ended.
+     */
+    public void finished(Spectators game) {
+        games.remove(game.id());
+        synchronized (this) {
+            if (newest == game) {
+                newest = null;
+            }
+        }
+        for (Spectator spectator : game.end()) {
+            if (spectator.watching() == BinaryProtocol.WATCH_ANY) {
+                watch(spectator);
+            } else {
+                spectator.end();
+            }
+        }
+    }
+
+    /**
+     * watch() starts sending a spectator the game it asked for.
+     *
+     * @return false if it asked for a game that isn't being played.
+     */
+    public boolean watch(Spectator spectator) {
+        if (spectator.watching() != BinaryProtocol.WATCH_ANY) {
+            Spectators game = games.get(spectator.watching());
+            return game != null && game.canBeWatchedBy(spectator) && game.add(spectator);
+        }
+        while (!spectator.isClosed()) {
+            Spectators game;
+            synchronized (this) {
+                game = newest != null && newest.canBeWatchedBy(spectator) ? newest : null;
+                if (game == null) {
+                    for (Spectators other : games.values()) { //The newest one is over (or on a board it doesn't know), any other will do.
+                        if (other.canBeWatchedBy(spectator)) {
+                            game = other;
+                            break;
+                        }
+                    }
+                }
+                if (game == null) { //Nothing it can watch is being played, waits for the next game.
+                    waiting.add(spectator);
+                    return true;
+                }
+            }
+            if (game.add(spectator)) {
+                return true;
+            }
+            //It ended in the meantime, it has already been taken out so the next try finds another.
+        }
+        return true;
+    }
+}
@@ -0,0 +1,254 @@
+package Server;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is the lobby class. Players that are ready for a game are put in the lobby and get paired with
+ * the next player that wants the same kind of game (the same board variant and rating band).
+ *
+ * Every kind of game has a single waiting slot. A player arriving at an empty slot takes it and waits,
+ * a player arriving at a taken slot empties it and is paired with whoever was waiting. Both steps are a
+ * compareAndSet on the slot, so there are no locks and the thread accepting connections never waits
+ * for a match. Before pairing, the waiting player is checked to still be connected, so nobody gets
+ * paired with a player that left while waiting.
+ *
+ * A player that asked to play the computer doesn't wait at all, their game is started straight away
+ * (if the server mode has computer players, otherwise they wait for a person like everybody else).
+ *
+ * Behind a Router the pairing has already been done. A routed player waits in a slot of its own for the one
+ * other player the router sent for the same game id, and the slot goes once they are paired. Routed players
+ * never stay for another game, returned() hands them back to the router, which pairs them again itself.
+ *
+ * @param <P> The kind of player the server mode uses.
+ */
+public class Lobby<P extends Lobby.Entrant> {
+    public static final int RATING_BAND_WIDTH = 200; //Players whose ratings are in the same band of this width play each other.
+
+    /**
+     * Something that can wait in the lobby.
+     */
+    public interface Entrant {
+        int variant(); //The board variant the player asked for.
+
+        int rating(); //The rating the player claimed, 0 if they didn't.
+
+        int computerLevel(); //The difficulty of the computer the player wants to play, 0 to play a person.
+
+        boolean isRouted(); //Handed to us by a Router rather than connected straight to us.
+
+        long routedGameId(); //The game the router paired the player for, 0 if it didn't (or it only came to resume or watch a game).
+
+        boolean isRoutedSecond(); //The router paired the player second, so it is player 2 whichever of the two got here first.
+
+        boolean isAlive(); //Still connected, checked before pairing.
+
+        void close(); //Called when the lobby finds out the player left.
+    }
+
+    /**
+     * Starts a game between two players the lobby paired up.
+     */
+    public interface MatchHandler<P extends Entrant> {
+        /**
+         * @param lobby   The lobby, so the players can be put back once the game is over.
+         * @param player1 The player who waited first.
+         * @param player2 The player who completed the pair.
+         */
+        void startGame(Lobby<P> lobby, P player1, P player2);
+    }
+
+    /**
+     * Starts a game between a player and the computer.
+     */
+    public interface ComputerMatchHandler<P extends Entrant> {
+        /**
+         * @param lobby  The lobby, so the player can be put back once the game is over.
+         * @param player The player, their computerLevel() is the difficulty they asked for.
+         */
+        void startComputerGame(Lobby<P> lobby, P player);
+    }
+
+    private final ConcurrentHashMap<Long, AtomicReference<Waiting<P>>> slots = new ConcurrentHashMap<>();
+    private final MatchHandler<P> onMatch;
+    private final ComputerMatchHandler<P> onComputerMatch; //Null if the server mode has no computer players.
+
+    private final AtomicInteger waiting = new AtomicInteger(); //Players waiting right now (the queue depth).
+    private final LongAdder matches = new LongAdder(); //Games started.
+    private final LongAdder matchWaitNanos = new LongAdder(); //Total time the first player of every game waited.
+    private final LongAdder abandoned = new LongAdder(); //Players that left while waiting.
+    private final LongAdder computerGames = new LongAdder(); //Games started against the computer.
+    private final LongAdder handedBack = new LongAdder(); //Routed players handed back to the router.
+
+    public Lobby(MatchHandler<P> onMatch) {
+        this(onMatch, null);
+    }
+
+    public Lobby(MatchHandler<P> onMatch, ComputerMatchHandler<P> onComputerMatch) {
+        this.onMatch = onMatch;
+        this.onComputerMatch = onComputerMatch;
+    }
+
+    /**
+     * enqueue() puts the player in the lobby. If somebody is already waiting for the same kind of game the
+     * two are paired straight away on the calling thread, otherwise the player waits for the next one.
+     *
+     * @param player The player, must already know which protocol it speaks.
+     */
+    public void enqueue(P player) {
+        if (!player.isAlive()) {
+            player.close();
+            return;
+        }
+        if (player.isRouted() && player.routedGameId() == 0) { //Came to get back into a game that is gone, the router pairs it.
+            handBack(player);
+            return;
+        }
+        if (player.computerLevel() > 0 && onComputerMatch != null) { //Nobody to wait for.
+            computerGames.increment();
+            onComputerMatch.startComputerGame(this, player);
+            return;
+        }
+        long key = queueKey(player);
+        AtomicReference<Waiting<P>> slot = slots.computeIfAbsent(key, k -> new AtomicReference<>());
+        Waiting<P> me = new Waiting<>(player, System.nanoTime());
+        while (true) {
+            Waiting<P> other = slot.get();
+            if (other == null) {
+                if (slot.compareAndSet(null, me)) { //Nobody waiting, so we wait.
+                    waiting.incrementAndGet();
+                    return;
+                }
+            } else if (slot.compareAndSet(other, null)) { //Took the waiting player out of the slot.
+                waiting.decrementAndGet();
+                if (!other.player.isAlive()) { //They left while waiting, try again.
+                    abandoned.increment();
+                    other.player.close();
+                    if (key < 0) { //Nobody else is coming for a routed game, the router pairs this one again.
+                        slots.remove(key, slot);
+                        handBack(player);
+                        return;
+                    }
+                    continue;
+                }
+                if (key < 0) { //Nobody else comes for a routed game.
+                    slots.remove(key, slot);
+                }
+                matches.increment();
+                matchWaitNanos.add(System.nanoTime() - other.sinceNanos);
+                if (key < 0 && other.player.isRoutedSecond()) { //Got here first, but the router has the other one as player 1.
+                    onMatch.startGame(this, player, other.player);
+                } else {
+                    onMatch.startGame(this, other.player, player);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * returned() puts a player whose game is over back in the lobby, or hands it back to the router it came from.
+     *
+     * @param player The player.
+     */
+    public void returned(P player) {
+        if (player.isRouted()) {
+            handBack(player);
+        } else {
+            enqueue(player);
+        }
+    }
+
+    /**
+     * handBack() hangs up on a routed player. The router sees its connection to us close and puts the client
+     * in its own lobby, the client itself stays connected to the router.
+     */
+    private void handBack(P player) {
+        handedBack.increment();
+        player.close();
+    }
+
+    /**
+     * queueKey() works out which waiting slot a player goes to. Routed games have negative keys, the rest are
+     * the variant and rating band.
+     */
+    private static long queueKey(Entrant player) {
+        if (player.routedGameId() != 0 && player.computerLevel() == 0) { //A computer player the server mode doesn't have waits for a person here after all.
+            return Long.MIN_VALUE | player.routedGameId();
+        }
+        return (player.variant() << 16) | Math.min(player.rating() / RATING_BAND_WIDTH, 0xFFFF);
+    }
+
+    public int queueDepth() {
+        return waiting.get();
+    }
+
+    public long matches() {
+        return matches.sum();
+    }
+
+    public long abandoned() {
+        return abandoned.sum();
+    }
+
+    public long computerGames() {
+        return computerGames.sum();
+    }
+
+    public long handedBack() {
+        return handedBack.sum();
+    }
+
+    /**
+     * averageTimeToMatchMillis() is how long the first player of a game waited for the second, on average.
+     */
+    public double averageTimeToMatchMillis() {
+        long count = matches.sum();
+        return count == 0 ? 0 : matchWaitNanos.sum() / 1_000_000.0 / count;
+    }
+
+    /**
+     * report() is a one line summary of the lobby for the server log.
+     */
+    public String report() {
+        String report = String.format("Lobby: %d waiting, %d games started, %d against the computer, %d left while waiting, %.1f ms average time to match",
+                queueDepth(), matches(), computerGames(), abandoned(), averageTimeToMatchMillis());
+        return handedBack() == 0 ? report : report + ", " + handedBack() + " handed back to the router";
+    }
+
+    /**
+     * startReports() prints the report to the server log every period, as long as something happened in
+     * the lobby since the last one.
+     *
+     * @param periodMs Time between reports in milliseconds.
+     */
+    public void startReports(long periodMs) {
+        Timer timer = new Timer("lobby-report", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            private long lastMatches = -1;
+            private int lastWaiting = -1;
+
+            public void run() {
+                if (matches() + computerGames() != lastMatches || queueDepth() != lastWaiting) {
+                    lastMatches = matches() + computerGames();
+                    lastWaiting = queueDepth();
+                    System.out.println(report());
+                }
+            }
+        }, periodMs, periodMs);
+    }
+
+    private static final class Waiting<P> {
+        final P player;
+        final long sinceNanos; //When the player started waiting.
+
+        Waiting(P player, long sinceNanos) {
+            this.player = player;
+            this.sinceNanos = sinceNanos;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * This is the message encoder interface. It is every message the server sends to a player during a game,
+ * the encoder a connection uses decides what the message looks like on the wire. TextEncoder writes the
+ * terminal-friendly text the server has always sent, BinaryEncoder writes the compact frames from
+ * Protocol.BinaryProtocol, DeltaEncoder writes only the last move instead of the whole board,
+ * ResumableEncoder also tells the player how to get back into a game after a restart, WatchableEncoder
+ * tells them the id spectators can watch the game with and VariantEncoder which board the game is played on.
+ *
+ * The sequence number passed with the board goes up by one every time the board changes (a new game
+ * or a move), encoders that don't need it ignore it.
+ *
+ */
+public interface MessageEncoder {
+    MessageEncoder TEXT = new TextEncoder();
+    MessageEncoder BINARY = new BinaryEncoder();
+    MessageEncoder DELTA = new DeltaEncoder();
+    MessageEncoder RESUMABLE = new ResumableEncoder();
+    MessageEncoder WATCHABLE = new WatchableEncoder();
+    MessageEncoder VARIANT = new VariantEncoder();
+
+    /**
+     * forVersion() picks the encoder for a version of the binary protocol.
+     *
+     * @param version The version the server and the client agreed on.
+     * @return The encoder.
+     */
+    static MessageEncoder forVersion(int version) {
+        if (version >= BinaryProtocol.VERSION_VARIANTS) {
+            return VARIANT;
+        }
+        if (version >= BinaryProtocol.VERSION_SPECTATE) {
+            return WATCHABLE;
+        }
+        if (version >= BinaryProtocol.VERSION_RESUME) {
+            return RESUMABLE;
+        }
+        return version >= BinaryProtocol.VERSION_DELTAS ? DELTA : BINARY;
+    }
+
+    /**
+     * variant() tells the player which board the game is played on, before anything else about the game.
+     * Only VariantEncoder sends anything, every other protocol only plays the classic board.
+     *
+     * @param variant One of BinaryProtocol's VARIANT_ constants.
+     */
+    void variant(DataOutputStream out, int variant) throws IOException;
+
+    /**
+     * assign() tells the player which symbol they play as at the start of a game.
+     */
+    void assign(DataOutputStream out, char player) throws IOException;
+
+    /**
+     * resumable() tells the player how to get back into the game if the server restarts. Only
+     * ResumableEncoder sends anything, the other protocols have no way to come back.
+     *
+     * @param gameId The game's id in the MoveJournal.
+     * @param token  The token of the player's seat.
+     */
+    void resumable(DataOutputStream out, long gameId, int token) throws IOException;
+
+    /**
+     * watchable() tells the player the id spectators can watch the game with. Only WatchableEncoder sends
+     * anything.
+     *
+     * @param gameId The game's id in LiveGames.
+     */
+    void watchable(DataOutputStream out, long gameId) throws IOException;
+
+    /**
+     * board() sends the up-to-date game board, straight after a new game started or a move was made.
+     */
+    void board(DataOutputStream out, Board board, int sequence) throws IOException;
+
+    /**
+     * snapshot() sends the whole game board, when a client asked for it because it lost track.
+     */
+    void snapshot(DataOutputStream out, Board board, int sequence) throws IOException;
+
+    /**
+     * yourTurn() asks the player for a column to place in.
+     */
+    void yourTurn(DataOutputStream out, char player) throws IOException;
+
+    /**
+     * waiting() tells the player it is the other players turn.
+     */
+    void waiting(DataOutputStream out) throws IOException;
+
+    /**
+     * invalidMove() tells the player their move wasn't accepted.
+     *
+     * @param reason One of BinaryProtocol.INVALID_INPUT, INVALID_COLUMN or COLUMN_FULL.
+     */
+    void invalidMove(DataOutputStream out, int reason) throws IOException;
+
+    /**
+     * gameOver() tells the player how the game ended.
+     *
+     * @param result One of BinaryProtocol.WIN, LOSE or DRAW.
+     */
+    void gameOver(DataOutputStream out, int result) throws IOException;
+}
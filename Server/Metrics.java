@@ -0,0 +1,471 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is the metrics class. Game threads, game sessions, connections and event loops tell it what happened
+ * and it adds it all up for the whole server, so we can see what the server is doing while it runs instead
+ * of only hearing about it when a game dies. start() shows the numbers over JMX and, if given a port, as a
+ * Prometheus text page at http://localhost:<port>/metrics.
+ *
+ * Everything on the move path is a LongAdder or a Histogram, which are striped so threads recording at the
+ * same time don't fight over a lock or a cache line. All the adding up happens when somebody reads them.
+ *
+ */
+public final class Metrics {
+    private static final long SAMPLE_PERIOD_MS = 1000; //How often the per second rates and the event loop utilization are worked out.
+
+    private static final LongAdder activeGames = new LongAdder();
+    private static final LongAdder gamesStarted = new LongAdder();
+    private static final LongAdder wins = new LongAdder();
+    private static final LongAdder draws = new LongAdder();
+    private static final LongAdder abandoned = new LongAdder(); //Games that ended because a player left.
+    private static final LongAdder moves = new LongAdder();
+    private static final LongAdder[] invalidMoves = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()}; //Indexed by BinaryProtocol's INVALID_MOVE reason.
+    private static final LongAdder bytesReceived = new LongAdder();
+    private static final LongAdder bytesSent = new LongAdder();
+    private static final LongAdder socketWrites = new LongAdder(); //Writes to client sockets, one system call each.
+    private static final LongAdder connectionsOpened = new LongAdder();
+    private static final LongAdder connectionsClosed = new LongAdder();
+    private static final LongAdder turnTimeouts = new LongAdder(); //Games forfeited by a player who ran out of time.
+    private static final LongAdder idleReaped = new LongAdder(); //Connections closed for not answering heartbeats.
+    private static final LongAdder inputThrottled = new LongAdder(); //Times a client's TokenBucket ran out and it was read no more for a while.
+    private static final LongAdder spectators = new LongAdder(); //Spectators watching (or waiting for a game to watch) right now.
+    private static final LongAdder spectatorSnapshots = new LongAdder(); //Times a spectator fell behind and got a snapshot instead.
+
+    private static final Histogram moveProcessing = new Histogram(); //Nanoseconds from a move arriving until both players were told what it did.
+    private static final Histogram thinkTime = new Histogram(); //Nanoseconds from asking a player for a move until it arrived.
+    private static final Histogram connectionBytesReceived = new Histogram(); //Bytes every closed connection received.
+    private static final Histogram connectionBytesSent = new Histogram(); //Bytes every closed connection sent.
+
+    private static final List<Lobby<?>> lobbies = new CopyOnWriteArrayList<>();
+    private static final List<EventLoop> loops = new CopyOnWriteArrayList<>();
+
+    //Worked out by the sampler every SAMPLE_PERIOD_MS.
+    private static volatile double gamesStartedPerSecond = 0;
+    private static volatile double gamesFinishedPerSecond = 0;
+    private static volatile double[] loopUtilization = new double[0];
+
+    private Metrics() {
+    }
+
+    /**
+     * start() registers the JMX bean, starts the sampler and, if a port was given, the /metrics page.
+     * The page only listens on the loopback address, so it can't be reached from outside the machine.
+     *
+     * @param httpPort Port for the /metrics page, 0 for no page.
+     */
+    public static void start(int httpPort) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName("connect4:type=Server"));
+        } catch (JMException e) {
+            System.out.println("Couldn't register the metrics with JMX.");
+            System.out.println(e.getMessage());
+        }
+
+        Timer timer = new Timer("metrics-sampler", true);
+        timer.scheduleAtFixedRate(new Sampler(), SAMPLE_PERIOD_MS, SAMPLE_PERIOD_MS);
+
+        if (httpPort > 0) {
+            try {
+                HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort), 0);
+                http.createContext("/metrics", exchange -> {
+                    byte[] page = prometheus().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, page.length);
+                    try (OutputStream body = exchange.getResponseBody()) {
+                        body.write(page);
+                    }
+                });
+                http.start(); //Its dispatcher thread is not a daemon, but neither is the thread accepting clients.
+            } catch (IOException e) {
+                System.out.println("Couldn't serve the metrics on port " + httpPort);
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * watch() adds a lobby's waiting players to the waiting players metric.
+     */
+    public static void watch(Lobby<?> lobby) {
+        lobbies.add(lobby);
+    }
+
+    /**
+     * watch() adds an event loop to the event loop utilization metric.
+     */
+    public static void watch(EventLoop loop) {
+        loops.add(loop);
+    }
+
+    public static void gameStarted() {
+        gamesStarted.increment();
+        activeGames.increment();
+    }
+
+    /**
+     * gameFinished() counts a game that was played to the end.
+     *
+     * @param result BinaryProtocol.WIN or BinaryProtocol.DRAW.
+     */
+    public static void gameFinished(int result) {
+        (result == BinaryProtocol.DRAW ? draws : wins).increment();
+        activeGames.decrement();
+    }
+
+    /**
+     * gameAbandoned() counts a game that ended because a player left.
+     */
+    public static void gameAbandoned() {
+        abandoned.increment();
+        activeGames.decrement();
+    }
+
+    /**
+     * moveMade() counts a valid move.
+     *
+     * @param thinkNanos How long the player took, from being asked until the move arrived.
+     */
+    public static void moveMade(long thinkNanos) {
+        moves.increment();
+        thinkTime.record(thinkNanos);
+    }
+
+    /**
+     * moveProcessed() records how long the server took to handle a move, from the move arriving until both
+     * players had been sent the board and what happens next.
+     */
+    public static void moveProcessed(long nanos) {
+        moveProcessing.record(nanos);
+    }
+
+    /**
+     * invalidMove() counts a move that was refused.
+     *
+     * @param reason One of BinaryProtocol's INVALID_MOVE reasons.
+     */
+    public static void invalidMove(int reason) {
+        invalidMoves[reason].increment();
+    }
+
+    public static void bytesReceived(long count) {
+        bytesReceived.add(count);
+    }
+
+    /**
+     * bytesSent() counts one write to a client socket and how many bytes it took.
+     */
+    public static void bytesSent(long count) {
+        bytesSent.add(count);
+        socketWrites.increment();
+    }
+
+    public static void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    /**
+     * probeAnswered() takes a Router's probe back off the opened connections. It was counted before anyone knew
+     * what it was, and it is never counted as closed.
+     */
+    public static void probeAnswered() {
+        connectionsOpened.decrement();
+    }
+
+    /**
+     * connectionClosed() counts a closed connection and how much it sent and received over its life.
+     */
+    public static void connectionClosed(long received, long sent) {
+        connectionsClosed.increment();
+        connectionBytesReceived.record(received);
+        connectionBytesSent.record(sent);
+    }
+
+    /**
+     * turnTimedOut() counts a game forfeited by a player who ran out of time for their move.
+     */
+    public static void turnTimedOut() {
+        turnTimeouts.increment();
+    }
+
+    /**
+     * idleReaped() counts a connection closed because it stopped answering heartbeats.
+     */
+    public static void idleReaped() {
+        idleReaped.increment();
+    }
+
+    /**
+     * inputThrottled() counts a connection that stopped reading from its client because its TokenBucket ran out.
+     */
+    public static void inputThrottled() {
+        inputThrottled.increment();
+    }
+
+    public static void spectatorJoined() {
+        spectators.increment();
+    }
+
+    public static void spectatorLeft() {
+        spectators.decrement();
+    }
+
+    /**
+     * spectatorFellBehind() counts a spectator whose queue was full, so it got a snapshot instead of the moves it missed.
+     */
+    public static void spectatorFellBehind() {
+        spectatorSnapshots.increment();
+    }
+
+    private static long waitingPlayers() {
+        long waiting = 0;
+        for (Lobby<?> lobby : lobbies) {
+            waiting += lobby.queueDepth();
+        }
+        return waiting;
+    }
+
+    private static long gamesFinished() {
+        return wins.sum() + draws.sum();
+    }
+
+    /**
+     * prometheus() writes every metric in the Prometheus text format.
+     */
+    static String prometheus() {
+        StringBuilder page = new StringBuilder(8192);
+        gauge(page, "connect4_active_games", "Games being played right now.", activeGames.sum());
+        gauge(page, "connect4_waiting_players", "Players waiting in the lobby for a game.", waitingPlayers());
+        gauge(page, "connect4_open_connections", "Client connections open right now.", connectionsOpened.sum() - connectionsClosed.sum());
+        counter(page, "connect4_games_started_total", "Games started.", gamesStarted.sum());
+        page.append("# HELP connect4_games_finished_total Games played to the end.\n# TYPE connect4_games_finished_total counter\n");
+        page.append("connect4_games_finished_total{result=\"win\"} ").append(wins.sum()).append('\n');
+        page.append("connect4_games_finished_total{result=\"draw\"} ").append(draws.sum()).append('\n');
+        counter(page, "connect4_games_abandoned_total", "Games that ended because a player left.", abandoned.sum());
+        counter(page, "connect4_moves_total", "Valid moves made.", moves.sum());
+        page.append("# HELP connect4_invalid_moves_total Moves that were refused.\n# TYPE connect4_invalid_moves_total counter\n");
+        page.append("connect4_invalid_moves_total{reason=\"input\"} ").append(invalidMoves[BinaryProtocol.INVALID_INPUT].sum()).append('\n');
+        page.append("connect4_invalid_moves_total{reason=\"column\"} ").append(invalidMoves[BinaryProtocol.INVALID_COLUMN].sum()).append('\n');
+        page.append("connect4_invalid_moves_total{reason=\"full\"} ").append(invalidMoves[BinaryProtocol.COLUMN_FULL].sum()).append('\n');
+        counter(page, "connect4_turn_timeouts_total", "Games forfeited by a player who ran out of time.", turnTimeouts.sum());
+        counter(page, "connect4_idle_reaped_total", "Connections closed for not answering heartbeats.", idleReaped.sum());
+        counter(page, "connect4_input_throttled_total", "Times a client sent so much unwanted input that it was read no more for a while.", inputThrottled.sum());
+        gauge(page, "connect4_spectators", "Clients watching games right now.", spectators.sum());
+        counter(page, "connect4_spectator_snapshots_total", "Times a spectator fell behind and was sent a snapshot instead of the moves it missed.", spectatorSnapshots.sum());
+        counter(page, "connect4_received_bytes_total", "Bytes received from clients.", bytesReceived.sum());
+        counter(page, "connect4_sent_bytes_total", "Bytes sent to clients.", bytesSent.sum());
+        counter(page, "connect4_socket_writes_total", "Writes to client sockets.", socketWrites.sum());
+        histogram(page, "connect4_move_processing_seconds", "Time from a move arriving until both players were told what it did.", moveProcessing, 10, 34, -9);
+        histogram(page, "connect4_think_time_seconds", "Time from asking a player for a move until it arrived.", thinkTime, 20, 38, -9);
+        histogram(page, "connect4_connection_received_bytes", "Bytes every closed connection received.", connectionBytesReceived, 4, 30, 0);
+        histogram(page, "connect4_connection_sent_bytes", "Bytes every closed connection sent.", connectionBytesSent, 4, 30, 0);
+        page.append("# HELP connect4_event_loop_utilization Fraction of the last second the event loop was busy.\n# TYPE connect4_event_loop_utilization gauge\n");
+        double[] utilization = loopUtilization;
+        for (int i = 0; i < utilization.length; i++) {
+            page.append("connect4_event_loop_utilization{loop=\"").append(i).append("\"} ").append(utilization[i]).append('\n');
+        }
+        gauge(page, "connect4_threads", "Live threads in the server.", ManagementFactory.getThreadMXBean().getThreadCount());
+        return page.toString();
+    }
+
+    private static void gauge(StringBuilder page, String name, String help, long value) {
+        page.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        page.append("# TYPE ").append(name).append(" gauge\n");
+        page.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder page, String name, String help, long value) {
+        page.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        page.append("# TYPE ").append(name).append(" counter\n");
+        page.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * histogram() writes a histogram with a Prometheus bucket at every power of two from 2 ^ firstPower to
+     * 2 ^ lastPower, which are always the tops of Histogram buckets.
+     *
+     * @param exponent The power of ten the recorded values are in, -9 to turn nanoseconds into seconds.
+     */
+    private static void histogram(StringBuilder page, String name, String help, Histogram histogram, int firstPower, int lastPower, int exponent) {
+        String unit = exponent == 0 ? "" : "e" + exponent; //Written after the bucket bounds, so they stay exact.
+        page.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        page.append("# TYPE ").append(name).append(" histogram\n");
+        long[] counts = histogram.counts();
+        long total = 0;
+        for (long n : counts) {
+            total += n;
+        }
+        for (int power = firstPower; power <= lastPower; power++) {
+            page.append(name).append("_bucket{le=\"").append((1L << power) - 1).append(unit).append("\"} ")
+                    .append(Histogram.countAtOrBelow(counts, power)).append('\n');
+        }
+        page.append(name).append("_bucket{le=\"+Inf\"} ").append(total).append('\n');
+        page.append(name).append("_sum ").append(histogram.sum() * Math.pow(10, exponent)).append('\n');
+        page.append(name).append("_count ").append(total).append('\n');
+    }
+
+    /**
+     * Works out the per second rates and the event loop utilization from how much the totals moved since
+     * the last sample.
+     */
+    private static final class Sampler extends TimerTask {
+        private long lastAt = System.nanoTime();
+        private long lastStarted = 0;
+        private long lastFinished = 0;
+        private long[] lastBusy = new long[0];
+
+        public void run() {
+            long now = System.nanoTime();
+            double seconds = (now - lastAt) / 1e9;
+            long started = gamesStarted.sum();
+            long finished = gamesFinished();
+            gamesStartedPerSecond = (started - lastStarted) / seconds;
+            gamesFinishedPerSecond = (finished - lastFinished) / seconds;
+
+            int count = loops.size();
+            double[] utilization = new double[count];
+            long[] busy = new long[count];
+            for (int i = 0; i < count; i++) {
+                busy[i] = loops.get(i).busyNanos();
+                long before = i < lastBusy.length ? lastBusy[i] : busy[i];
+                utilization[i] = Math.min(1, (busy[i] - before) / (double) (now - lastAt));
+            }
+            loopUtilization = utilization;
+
+            lastAt = now;
+            lastStarted = started;
+            lastFinished = finished;
+            lastBusy = busy;
+        }
+    }
+
+    private static final class Bean implements MetricsMXBean {
+        public long getActiveGames() {
+            return activeGames.sum();
+        }
+
+        public long getWaitingPlayers() {
+            return waitingPlayers();
+        }
+
+        public long getOpenConnections() {
+            return connectionsOpened.sum() - connectionsClosed.sum();
+        }
+
+        public long getGamesStarted() {
+            return gamesStarted.sum();
+        }
+
+        public long getGamesFinished() {
+            return gamesFinished();
+        }
+
+        public double getGamesStartedPerSecond() {
+            return gamesStartedPerSecond;
+        }
+
+        public double getGamesFinishedPerSecond() {
+            return gamesFinishedPerSecond;
+        }
+
+        public long getWins() {
+            return wins.sum();
+        }
+
+        public long getDraws() {
+            return draws.sum();
+        }
+
+        public long getAbandonedGames() {
+            return abandoned.sum();
+        }
+
+        public long getMoves() {
+            return moves.sum();
+        }
+
+        public long getInvalidInputs() {
+            return invalidMoves[BinaryProtocol.INVALID_INPUT].sum();
+        }
+
+        public long getInvalidColumns() {
+            return invalidMoves[BinaryProtocol.INVALID_COLUMN].sum();
+        }
+
+        public long getFullColumns() {
+            return invalidMoves[BinaryProtocol.COLUMN_FULL].sum();
+        }
+
+        public long getTurnTimeouts() {
+            return turnTimeouts.sum();
+        }
+
+        public long getIdleReaped() {
+            return idleReaped.sum();
+        }
+
+        public long getInputThrottled() {
+            return inputThrottled.sum();
+        }
+
+        public long getSpectators() {
+            return spectators.sum();
+        }
+
+        public long getSpectatorSnapshots() {
+            return spectatorSnapshots.sum();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.sum();
+        }
+
+        public long getBytesSent() {
+            return bytesSent.sum();
+        }
+
+        public long getSocketWrites() {
+            return socketWrites.sum();
+        }
+
+        public double getMoveProcessingP50Micros() {
+            return moveProcessing.percentile(0.5) / 1e3;
+        }
+
+        public double getMoveProcessingP99Micros() {
+            return moveProcessing.percentile(0.99) / 1e3;
+        }
+
+        public double getThinkTimeP50Millis() {
+            return thinkTime.percentile(0.5) / 1e6;
+        }
+
+        public double getThinkTimeP99Millis() {
+            return thinkTime.percentile(0.99) / 1e6;
+        }
+
+        public double[] getEventLoopUtilization() {
+            return loopUtilization.clone();
+        }
+
+        public int getThreads() {
+            return ManagementFactory.getThreadMXBean().getThreadCount();
+        }
+    }
+}
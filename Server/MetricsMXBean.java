@@ -0,0 +1,64 @@
+package Server;
+
+/**
+ * This is what the server shows over JMX (as connect4:type=Server, in jconsole or VisualVM). It is the same
+ * numbers as the /metrics page, see Metrics for what each one means.
+ *
+ */
+public interface MetricsMXBean {
+    long getActiveGames();
+
+    long getWaitingPlayers();
+
+    long getOpenConnections();
+
+    long getGamesStarted();
+
+    long getGamesFinished(); //Won or drawn, not abandoned.
+
+    double getGamesStartedPerSecond(); //Over the last second.
+
+    double getGamesFinishedPerSecond(); //Over the last second.
+
+    long getWins();
+
+    long getDraws();
+
+    long getAbandonedGames(); //Games that ended because a player left.
+
+    long getMoves();
+
+    long getInvalidInputs(); //Moves that weren't a number.
+
+    long getInvalidColumns(); //Moves to a column that doesn't exist.
+
+    long getFullColumns(); //Moves to a column that is full.
+
+    long getTurnTimeouts(); //Games forfeited by a player who ran out of time.
+
+    long getIdleReaped(); //Connections closed for not answering heartbeats.
+
+    long getInputThrottled(); //Times a client's TokenBucket ran out and it was read no more for a while.
+
+    long getSpectators();
+
+    long getSpectatorSnapshots(); //Times a spectator fell behind and got a snapshot instead of the moves it missed.
+
+    long getBytesReceived();
+
+    long getBytesSent();
+
+    long getSocketWrites(); //Writes to client sockets, one system call each.
+
+    double getMoveProcessingP50Micros();
+
+    double getMoveProcessingP99Micros();
+
+    double getThinkTimeP50Millis();
+
+    double getThinkTimeP99Millis();
+
+    double[] getEventLoopUtilization(); //Fraction of the last second each event loop was busy, empty in thread mode.
+
+    int getThreads();
+}
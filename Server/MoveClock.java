@@ -0,0 +1,92 @@
+package Server;
+
+/**
+ * This is the move clock class. Every game has one, it times how long the player whose turn it is takes to
+ * move and forfeits the game for them when they run out of time, so a player who walked away (or whose
+ * connection died without closing) can't hold their opponent and the game's resources forever.
+ *
+ * There are two limits, either or both can be switched on with configure(): a time per move, and a bank
+ * for the whole game like a chess clock, which every move's time is taken off. A turn may last as long as
+ * the smaller of the two allows. The clock is a single timeout on the TimingWheel, there is no thread or
+ * socket timeout per player. The computer player is never timed.
+ * The wheel may run the timeout up to a tick late, so stop() checks the time taken itself: a move that came
+ * in after the deadline is too late even if the timeout hadn't run yet. A player whose bank is used up has
+ * no time at all left, their next turn times out straight away.
+ *
+ */
+public class MoveClock {
+    private static volatile long moveMs = 0; //Time per move, 0 for no limit.
+    private static volatile long bankMs = 0; //Time per player per game, 0 for no limit.
+
+    private final long moveLimit = moveMs; //The limits as they were when the game started, 0 for none.
+    private final long bankLimit = bankMs;
+    private final long[] bank = {bankLimit, bankLimit}; //What is left of 'X's and 'O's bank.
+    private TimingWheel.Timeout running = null; //The timeout of the turn being timed, null if none is.
+    private Runnable expired; //What the running timeout runs.
+    private char runningFor; //The player whose turn is being timed.
+    private long startedAt; //System.nanoTime() the turn being timed started.
+    private long limit; //Milliseconds the turn being timed may take.
+
+    /**
+     * configure() sets the limits for every game started from then on.
+     *
+     * @param moveMillis Time per move in milliseconds, 0 for no limit.
+     * @param bankMillis Time per player per game in milliseconds, 0 for no limit.
+     */
+    public static void configure(long moveMillis, long bankMillis) {
+        moveMs = moveMillis;
+        bankMs = bankMillis;
+    }
+
+    /**
+     * start() starts timing a player's turn. Starting it again for the same turn (after an invalid move) keeps
+     * the clock running as it was.
+     *
+     * @param player    'X' or 'O'.
+     * @param onExpired Run on the timing wheel's thread if the player runs out of time, it must not block.
+     */
+    public void start(char player, Runnable onExpired) {
+        if (running != null && runningFor == player) {
+            return;
+        }
+        if (moveLimit <= 0 && bankLimit <= 0) { //No limits.
+            return;
+        }
+        long limit = moveLimit > 0 ? moveLimit : Long.MAX_VALUE;
+        if (bankLimit > 0) {
+            limit = Math.min(limit, Math.max(0, bank[index(player)])); //An empty bank times out right away.
+        }
+        runningFor = player;
+        startedAt = System.nanoTime();
+        this.limit = limit;
+        expired = onExpired;
+        running = TimingWheel.SHARED.schedule(onExpired, limit);
+    }
+
+    /**
+     * stop() stops timing the turn once the player moved, and takes the time they took off their bank.
+     *
+     * @return false if it was too late, the player ran out of time and the onExpired task has been (or is being) run.
+     */
+    public boolean stop() {
+        if (running == null) {
+            return true;
+        }
+        long taken = (System.nanoTime() - startedAt) / 1_000_000L;
+        boolean cancelled = running.cancel();
+        running = null;
+        if (!cancelled) { //The wheel already ran it.
+            return false;
+        }
+        if (taken >= limit) { //Past the deadline, the wheel just hadn't got round to it yet.
+            expired.run();
+            return false;
+        }
+        bank[index(runningFor)] -= taken;
+        return true;
+    }
+
+    private static int index(char player) {
+        return player == 'X' ? 0 : 1;
+    }
+}
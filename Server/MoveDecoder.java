@@ -0,0 +1,76 @@
+package Server;
+
+/**
+ * This is the move decoder class. Every text client's connection has one, it is fed what the client sends
+ * one byte at a time and turns each line into a column number as it goes. Lines are split the same way
+ * BufferedReader.readLine() does ("\n", "\r" or "\r\n"), and the number is worked out digit by digit while
+ * the line comes in, so no line is kept and no String (or NumberFormatException, for nonsense) is made.
+ * It accepts what Integer.parseInt() accepts: an optional sign and then digits, nothing else.
+ *
+ * A line can't be longer than MAX_LINE_LENGTH. Once one is, it is nonsense, and the rest of it is skipped
+ * a MAX_LINE_LENGTH at a time (so a client sending one endless line still counts against its TokenBucket).
+ *
+ */
+public class MoveDecoder {
+    public static final int MAX_LINE_LENGTH = 64; //Longer lines aren't a column number, whatever they say.
+    public static final int INCOMPLETE = Integer.MIN_VALUE + 2; //Returned while the line isn't over yet.
+    public static final int SKIPPED = Integer.MIN_VALUE + 3; //Returned for every MAX_LINE_LENGTH of a line that was already too long.
+
+    private int length = 0; //Chars of the current line so far.
+    private long value = 0; //The digits of the current line so far.
+    private boolean negative = false;
+    private boolean digits = false; //True once the line had a digit.
+    private boolean nonsense = false; //True once the line can't be a number anymore.
+    private boolean skipLineFeed = false; //True if the last char was '\r', so a following '\n' is part of the same line break.
+
+    /**
+     * decode() takes the next char the client sent.
+     *
+     * @param c The char, a byte from the socket (0 to 255) or a char of a String.
+     * @return INCOMPLETE while the line goes on, SKIPPED for more of a line that was too long, or, at the end of a line,
+     * the column number (not checked to be on the board, -1 for any negative one) or MoveInput.NOT_A_NUMBER if it was nonsense.
+     */
+    public int decode(int c) {
+        if (c == '\n' && skipLineFeed) { //Second half of a "\r\n" line break.
+            skipLineFeed = false;
+            return INCOMPLETE;
+        }
+        skipLineFeed = c == '\r';
+        if (c == '\n' || c == '\r') {
+            int column = length > MAX_LINE_LENGTH ? SKIPPED : nonsense || !digits ? MoveInput.NOT_A_NUMBER : negative && value > 0 ? -1 : (int) value;
+            reset();
+            return column;
+        }
+        length++;
+        if (length > MAX_LINE_LENGTH) {
+            if (length == MAX_LINE_LENGTH + 1) { //Just got too long, that is the client's answer.
+                return MoveInput.NOT_A_NUMBER;
+            }
+            return (length - 1) % MAX_LINE_LENGTH == 0 ? SKIPPED : INCOMPLETE;
+        }
+        if (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            digits = true;
+            if (value > (negative ? Integer.MAX_VALUE + 1L : Integer.MAX_VALUE)) { //Integer.parseInt() wouldn't take it either.
+                nonsense = true;
+                value = 0;
+            }
+        } else if ((c == '-' || c == '+') && length == 1) {
+            negative = c == '-';
+        } else {
+            nonsense = true;
+        }
+        return INCOMPLETE;
+    }
+
+    /**
+     * reset() forgets the line that is being received, whatever comes next starts a new one.
+     */
+    public void reset() {
+        length = 0;
+        value = 0;
+        negative = false;
+        digits = false;
+        nonsense = false;
+    }
+}
@@ -0,0 +1,34 @@
+package Server;
+
+/**
+ * This is the move input class. It turns what a player typed into a column number the same way
+ * playerMove() always has, so every server mode and protocol validates moves identically.
+ * The connections decode their clients' input with a MoveDecoder of their own, parseColumn() is the same
+ * for a line that is already a String.
+ *
+ */
+public final class MoveInput {
+    public static final int NOT_A_NUMBER = Integer.MIN_VALUE; //Returned when the input wasn't a number at all.
+    public static final int RESYNC = Integer.MIN_VALUE + 1; //Returned when a binary client asked for a snapshot of the board instead of moving.
+
+    private MoveInput() {
+    }
+
+    /**
+     * parseColumn() parses a line of text input.
+     *
+     * @param line The line the player sent.
+     * @return The column number (not checked to be on the board), or NOT_A_NUMBER if the player sent some nonsense.
+     */
+    public static int parseColumn(String line) {
+        MoveDecoder decoder = new MoveDecoder();
+        int column = MoveDecoder.INCOMPLETE;
+        for (int i = 0; i < line.length() && column == MoveDecoder.INCOMPLETE; i++) {
+            column = decoder.decode(line.charAt(i));
+        }
+        if (column == MoveDecoder.INCOMPLETE) {
+            column = decoder.decode('\n'); //The end of the line.
+        }
+        return column == MoveDecoder.SKIPPED || column == MoveDecoder.INCOMPLETE ? NOT_A_NUMBER : column;
+    }
+}
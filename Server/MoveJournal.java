@@ -0,0 +1,522 @@
+package Server;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This is the move journal class. Every game the server plays is written to it as it happens, one fixed size
+ * record per event, so that a server that died in the middle of games can put them back together when it
+ * starts again (see ResumableGames) and so finished games can be replayed later (see JournalReplay).
+ *
+ * A record is RECORD_SIZE bytes: game id (8 bytes), sequence (4 bytes), type (1 byte), player (1 byte),
+ * column (1 byte) and a check byte. A game is two SEAT records (the sequence holds the seats resume token,
+ * the column the board variant for 'X's seat and the computer level of a computer seat), a MOVE record for every move (with the sequence
+ * number the board had after it) and an END record (the column holds the result, the player the winner).
+ *
+ * The journal is a directory of segment files of SEGMENT_RECORDS records each, written through memory
+ * mappings. Appending a record takes a slot with a single getAndIncrement and writes 16 bytes into the
+ * mapping, so the game threads and event loops never wait for the disk or for each other. A flusher thread
+ * forces whatever was written to disk every FLUSH_INTERVAL_MS, so one fsync covers every move made by every
+ * game in that time (a crash loses at most the last few milliseconds of moves). Every COMPACT_INTERVAL_MS
+ * full segments that only hold finished games are gzipped into an archive file and deleted.
+ *
+ */
+public class MoveJournal implements Closeable {
+    public static final int WIN = Protocol.BinaryProtocol.WIN; //Results in END records.
+    public static final int DRAW = Protocol.BinaryProtocol.DRAW;
+    public static final int ABANDONED = 0;
+
+    static final int RECORD_SIZE = 16;
+    static final int SEAT = 1; //Record types.
+    static final int MOVE = 2;
+    static final int END = 3;
+
+    private static final int SEGMENT_RECORDS = 1 << 16; //1 MB segments.
+    private static final long FLUSH_INTERVAL_MS = 10;
+    private static final long COMPACT_INTERVAL_MS = 10_000;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String ARCHIVE_SUFFIX = ".gz";
+
+    private final Path directory;
+    private final long firstSegment; //The first segment this server writes, every one before it is from an earlier run.
+    private final AtomicLong nextRecord = new AtomicLong(); //Records handed out since firstSegment.
+    private final ConcurrentHashMap<Long, Segment> segments = new ConcurrentHashMap<>(); //Segments that can still be written to.
+    private final ConcurrentSkipListSet<Long> sealed = new ConcurrentSkipListSet<>(); //Full segments that haven't been archived yet.
+    private final ConcurrentHashMap<Long, Long> liveGames = new ConcurrentHashMap<>(); //Unfinished game ids and the oldest segment they may have records in.
+    private final AtomicLong nextGameId;
+    private final SecureRandom random = new SecureRandom(); //Resume tokens must not be guessable.
+    private final List<Game> recovered = new ArrayList<>();
+    private final Thread flusher;
+    private volatile boolean closed = false;
+    private volatile boolean failed = false; //Set once writing failed, the server carries on without a journal.
+
+    /**
+     * A game in the journal. For a game recovered from an earlier run, board() and sequence() are where it
+     * got to, otherwise they are not used.
+     */
+    public static final class Game {
+        private final long id;
+        private final int tokenX, tokenO; //Resume tokens of the two seats.
+        private final int computerLevel; //Level of the computer playing 'O', 0 if it is a person.
+        private final Board board;
+        private int sequence = 1; //The sequence number of a game starts at 1, see GameThread.
+
+        Game(long id, int tokenX, int tokenO, int computerLevel, int variant) {
+            this.id = id;
+            this.tokenX = tokenX;
+            this.tokenO = tokenO;
+            this.computerLevel = computerLevel;
+            board = Board.create(variant);
+        }
+
+        public long id() {
+            return id;
+        }
+
+        public int token(char player) {
+            return player == 'X' ? tokenX : tokenO;
+        }
+
+        public int computerLevel() {
+            return computerLevel;
+        }
+
+        public int variant() {
+            return board.variant();
+        }
+
+        public Board board() {
+            return board;
+        }
+
+        public int sequence() {
+            return sequence;
+        }
+    }
+
+    private MoveJournal(Path directory, long firstSegment, long firstGameId) {
+        this.directory = directory;
+        this.firstSegment = firstSegment;
+        nextGameId = new AtomicLong(firstGameId);
+        flusher = new Thread(this::flushLoop, "journal-flush");
+        flusher.setDaemon(true);
+    }
+
+    /**
+     * open() opens the journal in the directory (creating it if need be), reads back every game that wasn't
+     * finished when the last server stopped and starts the flusher.
+     *
+     * @param directory Where the segments and archives are kept.
+     * @return The journal, recovered() holds the unfinished games.
+     * @throws IOException
+     */
+    public static MoveJournal open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        TreeSet<Long> segmentNumbers = new TreeSet<>();
+        long lastNumber = -1;
+        for (Path file : list(directory)) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(ARCHIVE_SUFFIX)) {
+                lastNumber = Math.max(lastNumber, segmentNumber(name, ARCHIVE_SUFFIX));
+            } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                long number = segmentNumber(name, SEGMENT_SUFFIX);
+                lastNumber = Math.max(lastNumber, number);
+                if (Files.exists(directory.resolve(archiveName(number)))) {
+                    Files.delete(file); //Archived just before the last server stopped, it didn't get to delete it.
+                } else {
+                    segmentNumbers.add(number);
+                }
+            }
+        }
+
+        //Put every game back together from the records that made it to disk.
+        Map<Long, List<long[]>> records = new HashMap<>(); //Game id to its records, as {sequence, type, player, column, segment}.
+        long maxGameId = 0;
+        for (long number : segmentNumbers) {
+            ByteBuffer segment = ByteBuffer.wrap(Files.readAllBytes(directory.resolve(segmentName(number))));
+            for (int offset = 0; offset + RECORD_SIZE <= segment.limit(); offset += RECORD_SIZE) {
+                if (!isValid(segment, offset)) { //Never written, or torn by the crash.
+                    continue;
+                }
+                long gameId = segment.getLong(offset);
+                maxGameId = Math.max(maxGameId, gameId);
+                records.computeIfAbsent(gameId, id -> new ArrayList<>()).add(new long[]{
+                        segment.getInt(offset + 8), segment.get(offset + 12), segment.get(offset + 13), segment.get(offset + 14), number});
+            }
+        }
+
+        MoveJournal journal = new MoveJournal(directory, lastNumber + 1, Math.max(maxGameId + 1, System.currentTimeMillis() * 1000));
+        journal.sealed.addAll(segmentNumbers);
+        for (Map.Entry<Long, List<long[]>> game : records.entrySet()) {
+            journal.recover(game.getKey(), game.getValue());
+        }
+        journal.flusher.start();
+        return journal;
+    }
+
+    /**
+     * recover() rebuilds one game from its records. A game that ended, or was already over after its last move,
+     * isn't recovered (the missing END is written now).
+     */
+    private void recover(long gameId, List<long[]> records) {
+        int[] tokens = new int[2];
+        int computerLevel = 0;
+        int variant = Protocol.BinaryProtocol.VARIANT_CLASSIC; //Journals from before there were variants have 0 here too.
+        List<long[]> moves = new ArrayList<>();
+        long oldestSegment = Long.MAX_VALUE;
+        for (long[] record : records) {
+            oldestSegment = Math.min(oldestSegment, record[4]);
+            if (record[1] == END) {
+                return;
+            } else if (record[1] == SEAT) {
+                tokens[record[2] == 'X' ? 0 : 1] = (int) record[0];
+                if (record[2] == 'O') {
+                    computerLevel = (int) record[3];
+                } else if (Protocol.BinaryProtocol.isVariant((int) record[3])) {
+                    variant = (int) record[3];
+                }
+            } else if (record[1] == MOVE) {
+                moves.add(record);
+            }
+        }
+        moves.sort((a, b) -> Long.compare(a[0], b[0]));
+
+        Game game = new Game(gameId, tokens[0], tokens[1], computerLevel, variant);
+        liveGames.put(gameId, oldestSegment);
+        for (long[] move : moves) {
+            if (!game.board.dropPiece((int) move[3], (char) move[2])) { //Can't happen unless the records are broken.
+                endGame(game, game.sequence, ABANDONED, ' ');
+                return;
+            }
+            game.sequence = (int) move[0];
+        }
+        if (game.board.moveCount() > 0) {
+            char last = game.board.pieceAt(game.board.placedRow(), game.board.placedCol());
+            if (game.board.winCheck(last) == last) {
+                endGame(game, game.sequence, WIN, last);
+                return;
+            }
+            if (game.board.isFull()) {
+                endGame(game, game.sequence, DRAW, ' ');
+                return;
+            }
+        }
+        recovered.add(game);
+    }
+
+    /**
+     * recovered() is every game that was still being played when the last server stopped.
+     */
+    public List<Game> recovered() {
+        return Collections.unmodifiableList(recovered);
+    }
+
+    /**
+     * startGame() gives a new game its id and resume tokens and writes its seats.
+     *
+     * @param computerLevel The level of the computer playing 'O', 0 if it is a person.
+     * @param variant       The board the game is played on.
+     * @param gameId        The id a Router gave the game, 0 to give it one of the journal's own.
+     * @return The game, its id and tokens are what the players need to get back into it.
+     */
+    public Game startGame(int computerLevel, int variant, long gameId) {
+        Game game = new Game(gameId != 0 ? gameId : nextGameId.getAndIncrement(), random.nextInt(), random.nextInt(), computerLevel, variant);
+        liveGames.put(game.id, currentSegment()); //Before writing, so the segment can't be archived in between.
+        append(game.id, game.tokenX, SEAT, 'X', variant);
+        append(game.id, game.tokenO, SEAT, 'O', computerLevel);
+        return game;
+    }
+
+    /**
+     * move() writes a move.
+     *
+     * @param sequence The sequence number of the board after the move.
+     */
+    public void move(Game game, int sequence, char player, int column) {
+        append(game.id, sequence, MOVE, player, column);
+    }
+
+    /**
+     * endGame() writes how a game ended. From then on the game can't be resumed and its segments can be archived.
+     *
+     * @param result WIN, DRAW or ABANDONED.
+     * @param winner The winners symbol, anything for a draw or an abandoned game.
+     */
+    public void endGame(Game game, int sequence, int result, char winner) {
+        append(game.id, sequence, END, result == WIN ? winner : 0, result);
+        liveGames.remove(game.id);
+    }
+
+    private long currentSegment() {
+        return firstSegment + nextRecord.get() / SEGMENT_RECORDS;
+    }
+
+    /**
+     * append() writes one record into the next free slot.
+     */
+    private void append(long gameId, int sequence, int type, int player, int column) {
+        if (failed || closed) {
+            return;
+        }
+        long index = nextRecord.getAndIncrement();
+        try {
+            Segment segment = segment(firstSegment + index / SEGMENT_RECORDS);
+            segment.write((int) (index % SEGMENT_RECORDS) * RECORD_SIZE, gameId, sequence, type, player, column);
+        } catch (UncheckedIOException e) {
+            failed = true;
+            System.out.println("Couldn't write to the move journal, games are no longer being recorded.");
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private Segment segment(long number) {
+        return segments.computeIfAbsent(number, n -> {
+            try {
+                return new Segment(directory.resolve(segmentName(n)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * flushLoop() is the flusher thread. It forces the segments to disk every FLUSH_INTERVAL_MS, keeps the
+     * next segment ready so nobody has to wait for it to be created, and archives old segments.
+     */
+    private void flushLoop() {
+        long lastCompaction = System.nanoTime();
+        while (!closed) {
+            try {
+                Thread.sleep(FLUSH_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                flush();
+                if (!failed) {
+                    segment(currentSegment() + 1);
+                }
+                if (System.nanoTime() - lastCompaction > COMPACT_INTERVAL_MS * 1_000_000L) {
+                    lastCompaction = System.nanoTime();
+                    compact();
+                }
+            } catch (IOException | UncheckedIOException e) {
+                System.out.println("Move journal flush failed.");
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * flush() forces everything written since the last flush to disk. A segment whose every record has been
+     * written and forced is closed.
+     */
+    private void flush() throws IOException {
+        for (Map.Entry<Long, Segment> entry : segments.entrySet()) {
+            Segment segment = entry.getValue();
+            int written = segment.written.get();
+            if (written != segment.flushed) {
+                segment.buffer.force();
+                segment.flushed = written;
+            }
+            if (written == SEGMENT_RECORDS) {
+                segments.remove(entry.getKey());
+                segment.channel.close(); //The mapping stays valid until it is garbage collected.
+                sealed.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * compact() archives every full segment that only holds games that have finished. Those games' END
+     * records were written before they left liveGames, and have been forced by the flush before this.
+     */
+    private void compact() throws IOException {
+        long keep = Long.MAX_VALUE; //Segments from this one on are still needed.
+        for (long oldest : liveGames.values()) {
+            keep = Math.min(keep, oldest);
+        }
+        while (!sealed.isEmpty() && sealed.first() < keep) {
+            long number = sealed.first();
+            archive(number);
+            sealed.remove(number);
+        }
+    }
+
+    /**
+     * archive() gzips the records of a segment into its archive file and deletes the segment. The archive is
+     * written to a temporary file and moved into place, so it is either all there or not there at all.
+     */
+    private void archive(long number) throws IOException {
+        Path segmentFile = directory.resolve(segmentName(number));
+        ByteBuffer segment = ByteBuffer.wrap(Files.readAllBytes(segmentFile));
+        Path temp = directory.resolve(archiveName(number) + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+            GZIPOutputStream out = new GZIPOutputStream(new BufferedOutputStream(file));
+            for (int offset = 0; offset + RECORD_SIZE <= segment.limit(); offset += RECORD_SIZE) {
+                if (isValid(segment, offset)) { //Leaves out the slots that were never written.
+                    out.write(segment.array(), offset, RECORD_SIZE);
+                }
+            }
+            out.finish(); //Finishes the gzip stream without closing the file yet, close() would close it too.
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, directory.resolve(archiveName(number)), StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(segmentFile);
+    }
+
+    /**
+     * close() stops the flusher and forces what was written. Games still being played are left unfinished,
+     * so they can be resumed by the next server.
+     */
+    public void close() throws IOException {
+        closed = true;
+        flusher.interrupt();
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+    }
+
+    /**
+     * Visits the records in a journal directory, see readAll().
+     */
+    interface RecordVisitor {
+        void record(long gameId, int sequence, int type, char player, int column);
+    }
+
+    /**
+     * readAll() reads every record in a journal directory, the archives first and then the segments, each in
+     * the order they were written. Used for replaying the games; it must not be used on the journal of a
+     * server that is running.
+     */
+    static void readAll(Path directory, RecordVisitor visitor) throws IOException {
+        TreeSet<Long> archives = new TreeSet<>();
+        TreeSet<Long> segmentNumbers = new TreeSet<>();
+        for (Path file : list(directory)) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(ARCHIVE_SUFFIX)) {
+                archives.add(segmentNumber(name, ARCHIVE_SUFFIX));
+            } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                segmentNumbers.add(segmentNumber(name, SEGMENT_SUFFIX));
+            }
+        }
+        segmentNumbers.removeAll(archives);
+        for (long number : archives) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(directory.resolve(archiveName(number))))) {
+                visit(ByteBuffer.wrap(in.readAllBytes()), visitor);
+            }
+        }
+        for (long number : segmentNumbers) {
+            visit(ByteBuffer.wrap(Files.readAllBytes(directory.resolve(segmentName(number)))), visitor);
+        }
+    }
+
+    private static void visit(ByteBuffer records, RecordVisitor visitor) {
+        for (int offset = 0; offset + RECORD_SIZE <= records.limit(); offset += RECORD_SIZE) {
+            if (isValid(records, offset)) {
+                visitor.record(records.getLong(offset), records.getInt(offset + 8), records.get(offset + 12),
+                        (char) records.get(offset + 13), records.get(offset + 14));
+            }
+        }
+    }
+
+    /**
+     * isValid() checks a record was written completely: it has a known type and its check byte matches.
+     */
+    private static boolean isValid(ByteBuffer records, int offset) {
+        int type = records.get(offset + 12);
+        return type >= SEAT && type <= END && records.get(offset + 15) == check(records, offset);
+    }
+
+    /**
+     * check() folds the first 15 bytes of a record into one, so a record torn by a crash is noticed.
+     */
+    private static byte check(ByteBuffer records, int offset) {
+        int check = 0x5A;
+        for (int i = 0; i < RECORD_SIZE - 1; i++) {
+            check = (check * 31) ^ records.get(offset + i);
+        }
+        return (byte) check;
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*")) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+
+    private static String segmentName(long number) {
+        return String.format("segment-%08d%s", number, SEGMENT_SUFFIX);
+    }
+
+    private static String archiveName(long number) {
+        return String.format("segment-%08d%s", number, ARCHIVE_SUFFIX);
+    }
+
+    private static long segmentNumber(String name, String suffix) {
+        return Long.parseLong(name.substring("segment-".length(), name.length() - suffix.length()));
+    }
+
+    /**
+     * One segment file, mapped for writing.
+     */
+    private static final class Segment {
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final AtomicInteger written = new AtomicInteger(); //Records written so far.
+        int flushed = 0; //Records written when it was last forced, only used by the flusher.
+
+        Segment(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) SEGMENT_RECORDS * RECORD_SIZE); //Grows the file, it reads as zeros.
+        }
+
+        /**
+         * write() fills in one record. Only absolute puts are used, which don't touch the buffers position, so
+         * any amount of threads can write their own slots at once.
+         */
+        void write(int offset, long gameId, int sequence, int type, int player, int column) {
+            buffer.putLong(offset, gameId);
+            buffer.putInt(offset + 8, sequence);
+            buffer.put(offset + 12, (byte) type);
+            buffer.put(offset + 13, (byte) player);
+            buffer.put(offset + 14, (byte) column);
+            buffer.put(offset + 15, check(buffer, offset));
+            written.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package Server;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This is the opening book class. Searching the first moves of a game is the slowest part of finding a
+ * computer move because so much of the board is still empty, so OpeningBookBuilder works them out ahead of
+ * time and writes them to a book file. The computer player looks the position up in the book before
+ * searching it. Only the entries the builder solved are played from the book, the ones it ran out of time
+ * on are just a good guess, so for those the computer searches as if the position wasn't in the book.
+ *
+ * The file is mapped into memory read-only instead of being read in, so opening it costs next to nothing
+ * and every server process on the machine shares the same pages. A lookup is a binary search straight on
+ * the mapped file and doesn't allocate anything.
+ *
+ * The file starts with a HEADER_LENGTH byte header: the MAGIC number (4 bytes), the FORMAT_VERSION of the
+ * file (2 bytes), the amount of rows and columns of the board (1 byte each) and the amount of entries
+ * (4 bytes). Then come the entries, ENTRY_LENGTH bytes each and sorted by key: the position key (8 bytes,
+ * see GameBoard.key()), the score of the best move for the player to move (2 bytes, see
+ * AlphaBetaSearch.score()), the best column (1 byte) and a flags byte, EXACT if the score is exact
+ * (see AlphaBetaSearch.isSolved()). A book from before there were flags has none of its entries exact.
+ * A position and its mirror image have the same entry, stored under the smaller of the two keys.
+ *
+ */
+public class OpeningBook {
+    public static final int MAGIC = 0x43344F42; //"C4OB"
+    public static final int FORMAT_VERSION = 1; //Changes every time the layout of the file changes.
+    public static final int HEADER_LENGTH = 12;
+    public static final int ENTRY_LENGTH = 12;
+    public static final int NO_MOVE = -1; //Returned by bestMove() for positions that aren't in the book.
+    public static final int EXACT = 1; //Entry flag, the best move was worked out to the end of the game.
+
+    private final MappedByteBuffer entries;
+    private final int count; //Amount of entries.
+
+    private OpeningBook(MappedByteBuffer entries, int count) {
+        this.entries = entries;
+        this.count = count;
+    }
+
+    /**
+     * open() maps a book file into memory.
+     *
+     * @param file The book file.
+     * @return The book.
+     * @throws IOException If the file can't be read or isn't a book for this version and board.
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); //Stays mapped after the channel is closed.
+            if (map.capacity() < HEADER_LENGTH || map.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not an opening book.");
+            }
+            int version = map.getShort(4) & 0xFFFF;
+            if (version != FORMAT_VERSION) {
+                throw new IOException(file + " is an opening book of version " + version + ", expected " + FORMAT_VERSION + ".");
+            }
+            if (map.get(6) != GameBoard.ROWS || map.get(7) != GameBoard.COLS) {
+                throw new IOException(file + " is an opening book for a " + map.get(6) + " x " + map.get(7) + " board.");
+            }
+            int count = map.getInt(8);
+            if (count < 0 || map.capacity() != HEADER_LENGTH + (long) count * ENTRY_LENGTH) {
+                throw new IOException(file + " is cut off or has junk at the end.");
+            }
+            return new OpeningBook(map, count);
+        }
+    }
+
+    /**
+     * bestMove() looks up the best move for the player whose turn it is.
+     *
+     * @param board The board.
+     * @return The column, or NO_MOVE if the position isn't in the book (or its entry isn't exact).
+     */
+    public int bestMove(GameBoard board) {
+        long key = board.key();
+        long mirrored = mirror(key);
+        int entry = find(Math.min(key, mirrored));
+        if (entry < 0 || (entries.get(entry + 11) & EXACT) == 0) { //Not in the book, or only a guess that the search can do better on.
+            return NO_MOVE;
+        }
+        int col = entries.get(entry + 10);
+        return mirrored < key ? GameBoard.COLS - 1 - col : col; //The entry is for the mirror image.
+    }
+
+    /**
+     * find() binary searches the entries for a key.
+     *
+     * @return The offset of the entry in the file, or -1 if it isn't there.
+     */
+    private int find(long key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int offset = HEADER_LENGTH + middle * ENTRY_LENGTH;
+            long middleKey = entries.getLong(offset);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * mirror() flips a bitboard (or a position key) left to right. Nothing carries from one column into the
+     * next in a key, so it can be flipped a column at a time just like a bitboard.
+     */
+    public static long mirror(long board) {
+        long mirrored = 0;
+        long column = (1L << GameBoard.COLUMN_BITS) - 1;
+        for (int col = 0; col < GameBoard.COLS; col++) {
+            long bits = (board >>> (col * GameBoard.COLUMN_BITS)) & column;
+            mirrored |= bits << ((GameBoard.COLS - 1 - col) * GameBoard.COLUMN_BITS);
+        }
+        return mirrored;
+    }
+}
@@ -0,0 +1,158 @@
+package Server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This is the opening book builder. It is a tool that is run once (not by the server) to work out the best
+ * move of every position in the first few moves of a game and write them to a book file for OpeningBook.
+ *
+ * Usage: java Server.OpeningBookBuilder book-file [--plies=4] [--depth=42] [--ms=2000]
+ * Every position with fewer than "plies" pieces on the board goes in the book, each one searched "depth"
+ * moves ahead for at most "ms" milliseconds. A deep search of every position takes a while, it prints how
+ * far along it is as it goes. Only the positions it solved (see AlphaBetaSearch.isSolved()) are marked
+ * EXACT, the server searches the others itself, so the more time (and the full depth) it gets the more of
+ * the book is used.
+ *
+ */
+public class OpeningBookBuilder {
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java Server.OpeningBookBuilder book-file [--plies=4] [--depth=42] [--ms=2000]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        int plies = 4;
+        int depth = GameBoard.ROWS * GameBoard.COLS;
+        long budgetMs = 2000;
+        for (int i = 1; i < args.length; i++) { //Reads the options.
+            String arg = args[i];
+            if (arg.startsWith("--plies=")) {
+                plies = Integer.parseInt(arg.substring("--plies=".length()));
+            } else if (arg.startsWith("--depth=")) {
+                depth = Integer.parseInt(arg.substring("--depth=".length()));
+            } else if (arg.startsWith("--ms=")) {
+                budgetMs = Long.parseLong(arg.substring("--ms=".length()));
+            } else {
+                System.out.println("Unknown option: " + arg);
+                return;
+            }
+        }
+
+        Set<Long> positions = new HashSet<>();
+        collect(new GameBoard(), plies, positions);
+        long[] keys = new long[positions.size()];
+        int n = 0;
+        for (long key : positions) {
+            keys[n++] = key;
+        }
+        Arrays.sort(keys); //The book is binary searched by key.
+        System.out.println(keys.length + " positions to search.");
+
+        AlphaBetaSearch search = new AlphaBetaSearch(new TranspositionTable(22));
+        GameBoard board = new GameBoard();
+        int[] columns = new int[keys.length];
+        int[] scores = new int[keys.length];
+        boolean[] exact = new boolean[keys.length];
+        int solved = 0;
+        for (int i = 0; i < keys.length; i++) {
+            setUp(board, keys[i]);
+            long result = search.search(board, depth, budgetMs);
+            columns[i] = AlphaBetaSearch.move(result);
+            scores[i] = AlphaBetaSearch.score(result);
+            exact[i] = AlphaBetaSearch.isSolved(result);
+            if (exact[i]) {
+                solved++;
+            }
+            if ((i + 1) % 100 == 0) {
+                System.out.println((i + 1) + " of " + keys.length + " searched.");
+            }
+        }
+
+        try {
+            write(file, keys, columns, scores, exact);
+            System.out.println("Wrote " + keys.length + " positions to " + file + ", " + solved + " of them solved.");
+        } catch (IOException e) {
+            System.out.println("Couldn't write the book.");
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * collect() finds the key of every position with fewer than plies pieces that can come up in a game
+     * (the game isn't already won). Of a position and its mirror image only the smaller key is kept.
+     */
+    private static void collect(GameBoard board, int plies, Set<Long> positions) {
+        if (board.moveCount() >= plies || !positions.add(canonicalKey(board))) {
+            return;
+        }
+        for (int col = 0; col < GameBoard.COLS; col++) {
+            if (board.canPlay(col) && !board.isWinningMove(col)) {
+                board.play(col);
+                collect(board, plies, positions);
+                board.undo();
+            }
+        }
+    }
+
+    private static long canonicalKey(GameBoard board) {
+        long key = board.key();
+        return Math.min(key, OpeningBook.mirror(key));
+    }
+
+    /**
+     * setUp() puts the position with the given key on the board. A column that is h pieces high adds up to
+     * 2^h - 1 plus the pieces of the player whose turn it is, see GameBoard.key().
+     */
+    private static void setUp(GameBoard board, long key) {
+        board.reset();
+        int pieces = 0;
+        int[] heights = new int[GameBoard.COLS];
+        long[] current = new long[GameBoard.COLS]; //Pieces of the player whose turn it is, per column.
+        for (int col = 0; col < GameBoard.COLS; col++) {
+            long column = key >>> (col * GameBoard.COLUMN_BITS) & ((1L << GameBoard.COLUMN_BITS) - 1);
+            heights[col] = 63 - Long.numberOfLeadingZeros(column + 1);
+            current[col] = column - ((1L << heights[col]) - 1);
+            pieces += heights[col];
+        }
+        char toMove = (pieces & 1) == 0 ? 'X' : 'O';
+        char other = toMove == 'X' ? 'O' : 'X';
+        for (int col = 0; col < GameBoard.COLS; col++) { //Order doesn't matter, only which piece is where.
+            for (int h = 0; h < heights[col]; h++) {
+                board.dropPiece(col, ((current[col] >>> h) & 1) != 0 ? toMove : other);
+            }
+        }
+    }
+
+    /**
+     * write() writes the book file. It is written next to the real file first and then moved over it, so
+     * a server never maps half a book.
+     */
+    private static void write(Path file, long[] keys, int[] columns, int[] scores, boolean[] exact) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeShort(OpeningBook.FORMAT_VERSION);
+            out.writeByte(GameBoard.ROWS);
+            out.writeByte(GameBoard.COLS);
+            out.writeInt(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                out.writeLong(keys[i]);
+                out.writeShort(scores[i]);
+                out.writeByte(columns[i]);
+                out.writeByte(exact[i] ? OpeningBook.EXACT : 0);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
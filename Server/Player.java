@@ -0,0 +1,60 @@
+package Server;
+
+import java.io.IOException;
+
+/**
+ * This is the player interface. It is one side of a GameThread: everything the game tells a player and
+ * the one thing it asks of them, their next move. A PlayerConnection passes it all on to a client over its
+ * socket, a ComputerPlayer works out its moves itself.
+ * The messages are only collected until flush() (or readMove(), which flushes before it waits), so
+ * everything a player is told in one step of the game goes out together.
+ *
+ */
+public interface Player {
+    void variant(int variant) throws IOException; //The board the game is played on, one of BinaryProtocol's VARIANT_ constants.
+
+    void assign(char player) throws IOException; //Tells the player which symbol they play.
+
+    void resumable(long gameId, int token) throws IOException; //What the player needs to get back into the game if the server restarts.
+
+    void watchable(long gameId) throws IOException; //The id spectators can watch the game with.
+
+    void board(RenderedBoard board) throws IOException; //The board changed.
+
+    void snapshot(Board board, int sequence) throws IOException; //The whole board, for a player that lost track of it.
+
+    void yourTurn(char player) throws IOException;
+
+    void waiting() throws IOException; //It is the other players turn.
+
+    void invalidMove(int reason) throws IOException;
+
+    void gameOver(int result) throws IOException;
+
+    void flush() throws IOException; //Sends everything the player was told since the last flush.
+
+    /**
+     * drainInput() clears anything the player sent when it wasn't their turn.
+     *
+     * @return true if the player asked for a snapshot in the meantime.
+     * @throws IOException
+     */
+    boolean drainInput() throws IOException;
+
+    /**
+     * readMove() sends the player everything they were told so far and waits for their next move.
+     *
+     * @return The column number (not checked to be on the board), MoveInput.NOT_A_NUMBER if the player sent some nonsense
+     * or MoveInput.RESYNC if the player asked for a snapshot of the board.
+     * @throws IOException If the player disconnected.
+     */
+    int readMove() throws IOException;
+
+    /**
+     * timedOut() is called from the TimingWheel when the player ran out of time for their move. It must not
+     * block, it only has to make the readMove() the game is waiting in give up.
+     */
+    void timedOut();
+
+    void close();
+}
@@ -0,0 +1,564 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+/**
+ * This is the player connection class used by GameThread. It wraps the socket of one client with the
+ * streams needed to talk to it, and hides which protocol the client is using: every message goes through
+ * the connections MessageEncoder and moves are read either as text lines or as binary MOVE frames.
+ * Messages collect in the output buffer until the game flushes them at the end of a step, or readMove()
+ * does before it waits, so each step of the game is one write to the socket instead of one per message.
+ * It is the Player that stands for a client on the other end of a socket.
+ * Between games the connection waits in the Lobby. A client that asked to watch games instead of playing
+ * never goes to the lobby, spectate() sends it the games on the thread that accepted it.
+ * A client that came through a Router starts with the router's handoff, which negotiate() takes off first.
+ * Text lines are decoded straight from the input stream by a MoveDecoder. Input the game has no use for takes
+ * a token from the connection's TokenBucket, and once that is empty readMove() waits for a token before it
+ * reads anything more. Nothing is read while it isn't the client's turn, so whatever a client floods us with
+ * waits in the socket until then.
+ *
+ */
+public class PlayerConnection implements Player, Closeable, ResumableGames.Returning {
+    public static final long NEGOTIATION_TIMEOUT_MS = 200; //How long a client has to ask for the binary protocol after connecting.
+    private static final long SPECTATOR_CHECK_MS = 5000; //How often a spectator with nothing to watch is checked for still being there.
+
+    private final Socket socket;
+    private final BufferedInputStream in;
+    private final DataOutputStream out;
+    private MessageEncoder encoder = MessageEncoder.TEXT;
+    private MoveDecoder lines; //Used to read moves with the text protocol.
+    private DataInputStream frames; //Used to read moves with the binary protocol.
+    private int version = 0; //The binary protocol version we agreed on, 0 for the text protocol.
+    private int variant = BinaryProtocol.VARIANT_CLASSIC; //The board variant the client wants to play.
+    private int rating = 0; //The rating the client claimed, 0 if it didn't.
+    private int computerLevel = BinaryProtocol.OPPONENT_HUMAN; //The difficulty of the computer the client wants to play, if any.
+    private long resumeGameId = 0; //The game the client wants to get back into after a restart, 0 for a new game.
+    private int resumeToken = 0;
+    private long watchGameId = BinaryProtocol.WATCH_NONE; //The game the client wants to watch, WATCH_NONE to play.
+    private boolean routed = false; //True if a Router handed the client to us.
+    private long routedGameId = 0; //The game the router paired the client for, 0 if none.
+    private boolean routedSecond = false; //True if the router paired the client as player 2.
+    private boolean probe = false; //True if a Router only came to see we are up.
+    private final TokenBucket wasted = new TokenBucket(); //Limits the input the game has no use for.
+    private boolean throttled = false; //True once the bucket ran out, until readMove() has waited for a token.
+    private final CountingInputStream received; //Count the bytes underneath the buffers, so every count is a whole socket read or write.
+    private final CountingOutputStream sent;
+    private boolean closed = false;
+
+    public PlayerConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        received = new CountingInputStream(socket.getInputStream());
+        sent = new CountingOutputStream(socket.getOutputStream());
+        in = new BufferedInputStream(received);
+        out = new DataOutputStream(new BufferedOutputStream(sent));
+        Metrics.connectionOpened();
+    }
+
+    /**
+     * negotiate() works out which protocol the client wants. A binary client sends its hello straight
+     * after connecting, anyone who hasn't sent one by the deadline (or sent something else) gets the text
+     * protocol. Whatever a text client sent is left in the stream.
+     * A routed text client doesn't have to wait, the router already waited for its hello.
+     *
+     * @param deadline System.nanoTime() by which the hello must have arrived.
+     * @throws IOException
+     */
+    public void negotiate(long deadline) throws IOException {
+        int flags = readHandoff(deadline);
+        if (probe) {
+            return;
+        }
+        if ((flags & BinaryProtocol.ROUTED_TEXT) != 0) {
+            lines = new MoveDecoder();
+            return;
+        }
+        byte[] hello = new byte[BinaryProtocol.HELLO_LENGTH + BinaryProtocol.MAX_PREFERENCES_LENGTH];
+        int needed = BinaryProtocol.HELLO_LENGTH; //Grows once we know the version carries preferences.
+        int read = 0;
+        in.mark(hello.length);
+        try {
+            while (read < needed) {
+                long remainingMs = (deadline - System.nanoTime()) / 1_000_000L;
+                socket.setSoTimeout((int) Math.max(1, remainingMs));
+                int count = in.read(hello, read, needed - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+                if (!startsWith(BinaryProtocol.HELLO_MAGIC, hello, read)) { //Not a hello, no point waiting for the rest.
+                    break;
+                }
+                if (read == BinaryProtocol.HELLO_LENGTH && hello[read - 1] > 0) {
+                    needed += BinaryProtocol.preferencesLength(hello[read - 1]);
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            //No hello in time, must be a text client.
+        } finally {
+            socket.setSoTimeout(0);
+        }
+
+        int clientVersion = hello[BinaryProtocol.HELLO_LENGTH - 1];
+        if (read == needed && startsWith(BinaryProtocol.HELLO_MAGIC, hello, read) && clientVersion >= 1) {
+            int version = Math.min(clientVersion, BinaryProtocol.VERSION); //The highest version we both understand.
+            this.version = version;
+            if (version >= BinaryProtocol.VERSION_PREFERENCES) {
+                rating = ((hello[5] & 0xFF) << 8) | (hello[6] & 0xFF);
+            }
+            if (version >= BinaryProtocol.VERSION_OPPONENT) {
+                computerLevel = Math.min(hello[7] & 0xFF, BinaryProtocol.COMPUTER_LEVELS);
+            }
+            if (version >= BinaryProtocol.VERSION_RESUME) {
+                ByteBuffer resume = ByteBuffer.wrap(hello, 8, 12);
+                resumeGameId = resume.getLong();
+                resumeToken = resume.getInt();
+            }
+            if (version >= BinaryProtocol.VERSION_SPECTATE) {
+                watchGameId = ByteBuffer.wrap(hello, 20, 8).getLong();
+            }
+            if (version >= BinaryProtocol.VERSION_VARIANTS && computerLevel == BinaryProtocol.OPPONENT_HUMAN && BinaryProtocol.isVariant(hello[4])) {
+                variant = hello[4]; //Anyone else plays the classic board, the only one the computer knows.
+            }
+            encoder = MessageEncoder.forVersion(version);
+            frames = new DataInputStream(in);
+            BinaryEncoder.hello(out, version);
+            out.flush();
+        } else {
+            in.reset(); //Give back whatever the client sent, it is text input.
+            lines = new MoveDecoder();
+        }
+    }
+
+    /**
+     * readHandoff() takes a Router's handoff off the front of the stream, if the client came through one.
+     * Anything else is left in the stream for the hello. A router's probe is answered and hung up on.
+     *
+     * @param deadline System.nanoTime() by which the hello must have arrived.
+     * @return The handoff's flags, 0 for a client that came straight to us.
+     * @throws IOException If the handoff didn't come from one of our routers.
+     */
+    private int readHandoff(long deadline) throws IOException {
+        byte[] handoff = new byte[BinaryProtocol.ROUTED_LENGTH];
+        int read = 0;
+        in.mark(handoff.length);
+        try {
+            while (read < handoff.length) {
+                long remainingMs = (deadline - System.nanoTime()) / 1_000_000L;
+                socket.setSoTimeout((int) Math.max(1, remainingMs));
+                int count = in.read(handoff, read, handoff.length - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+                if (!startsWith(BinaryProtocol.ROUTED_MAGIC, handoff, read)) { //A client of our own, this is its hello (or text).
+                    break;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            //Nothing in time, the hello won't come either.
+        } finally {
+            socket.setSoTimeout(0);
+        }
+        if (read >= BinaryProtocol.PROBE_MAGIC.length && startsWith(BinaryProtocol.PROBE_MAGIC, handoff, read)) {
+            answerProbe();
+            return 0;
+        }
+        if (read < handoff.length || !startsWith(BinaryProtocol.ROUTED_MAGIC, handoff, read)) {
+            in.reset();
+            return 0;
+        }
+        if (!Router.isTrusted(socket.getInetAddress())) {
+            throw new IOException("Refused a handoff from " + socket.getInetAddress() + ", it isn't one of our routers.");
+        }
+        routed = true;
+        routedGameId = ByteBuffer.wrap(handoff, BinaryProtocol.ROUTED_MAGIC.length, 8).getLong();
+        int flags = handoff[BinaryProtocol.ROUTED_LENGTH - 1] & 0xFF;
+        routedSecond = (flags & BinaryProtocol.ROUTED_SECOND) != 0;
+        return flags;
+    }
+
+    /**
+     * answerProbe() answers a Router's probe and hangs up. It was never a client, so it isn't counted as one.
+     */
+    private void answerProbe() throws IOException {
+        probe = true;
+        synchronized (this) {
+            closed = true;
+        }
+        Metrics.probeAnswered();
+        try {
+            socket.getOutputStream().write(BinaryProtocol.PROBE_MAGIC); //Past the counting stream, it isn't a client's traffic.
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * isProbe() tells whether the connection was only a Router's probe, which negotiate() already answered.
+     */
+    public boolean isProbe() {
+        return probe;
+    }
+
+    private static boolean startsWith(byte[] magic, byte[] received, int length) {
+        for (int i = 0; i < Math.min(length, magic.length); i++) {
+            if (received[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void variant(int variant) throws IOException {
+        encoder.variant(out, variant);
+    }
+
+    public void assign(char player) throws IOException {
+        encoder.assign(out, player);
+    }
+
+    public void resumable(long gameId, int token) throws IOException {
+        encoder.resumable(out, gameId, token);
+    }
+
+    public void watchable(long gameId) throws IOException {
+        encoder.watchable(out, gameId);
+    }
+
+    public void board(RenderedBoard board) throws IOException {
+        out.write(board.encoded(encoder));
+    }
+
+    public void snapshot(Board board, int sequence) throws IOException {
+        encoder.snapshot(out, board, sequence);
+    }
+
+    public void yourTurn(char player) throws IOException {
+        encoder.yourTurn(out, player);
+    }
+
+    public void waiting() throws IOException {
+        encoder.waiting(out);
+    }
+
+    public void invalidMove(int reason) throws IOException {
+        encoder.invalidMove(out, reason);
+        wasted();
+    }
+
+    public void gameOver(int result) throws IOException {
+        encoder.gameOver(out, result);
+    }
+
+    /**
+     * flush() writes everything the client was told since the last flush, in one write to the socket as
+     * long as it fits the output buffer (a whole text board does, several times over).
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * drainInput() clears anything the client sent when it wasn't their turn. (So it doesn't auto-place based on their previous input)
+     * Every line or frame of it was wasted, so it takes a token, half a line goes too.
+     *
+     * @return true if one of the skipped frames was a RESYNC, so the client is waiting for a snapshot.
+     * @throws IOException
+     */
+    public boolean drainInput() throws IOException {
+        boolean resync = false;
+        if (lines != null) {
+            for (int available = in.available(); available > 0; available--) {
+                if (lines.decode(in.read()) != MoveDecoder.INCOMPLETE) {
+                    wasted();
+                }
+            }
+            lines.reset();
+        } else {
+            while (frames.available() > 0) { //Whole frames are skipped so we don't lose track of where the next one starts.
+                int length = frames.readUnsignedShort();
+                wasted();
+                if (length == 0) {
+                    continue;
+                }
+                resync |= frames.readUnsignedByte() == BinaryProtocol.RESYNC;
+                frames.skipBytes(length - 1);
+            }
+        }
+        return resync;
+    }
+
+    /**
+     * readMove() sends the client everything it was told so far (its prompt, usually) and waits for it to
+     * send a column number. If the client has wasted too much input it first waits for a token.
+     *
+     * @return The column number (not checked to be on the board), MoveInput.NOT_A_NUMBER if the client sent some nonsense
+     * or MoveInput.RESYNC if the client asked for a snapshot of the board.
+     * @throws IOException If the client disconnected.
+     */
+    public int readMove() throws IOException {
+        out.flush();
+        throttle();
+        if (lines != null) {
+            while (true) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new EOFException("Client disconnected.");
+                }
+                int column = lines.decode(b);
+                if (column == MoveDecoder.SKIPPED) { //More of a line that was too long, it already got its answer.
+                    wasted();
+                    throttle();
+                } else if (column != MoveDecoder.INCOMPLETE) {
+                    return column;
+                }
+            }
+        }
+        int length = frames.readUnsignedShort();
+        if (length == 0) {
+            return MoveInput.NOT_A_NUMBER;
+        }
+        int type = frames.readUnsignedByte();
+        while (type == BinaryProtocol.PONG && length == 1) { //Only an answer to a ping, the move is still to come.
+            wasted();
+            throttle();
+            length = frames.readUnsignedShort();
+            if (length == 0) {
+                return MoveInput.NOT_A_NUMBER;
+            }
+            type = frames.readUnsignedByte();
+        }
+        if (type == BinaryProtocol.RESYNC && length == 1) {
+            wasted();
+            return MoveInput.RESYNC;
+        }
+        if (type != BinaryProtocol.MOVE || length != 2) {
+            frames.skipBytes(length - 1);
+            return MoveInput.NOT_A_NUMBER;
+        }
+        return frames.readUnsignedByte();
+    }
+
+    /**
+     * wasted() takes a token for input the game had no use for.
+     */
+    private void wasted() {
+        if (!wasted.take() && !throttled) {
+            throttled = true;
+            Metrics.inputThrottled();
+        }
+    }
+
+    /**
+     * throttle() waits until the bucket has a token again, if it ran out. The move clock keeps running.
+     */
+    private void throttle() throws IOException {
+        if (!throttled) {
+            return;
+        }
+        throttled = false;
+        long nanos = wasted.nanosUntilToken();
+        try {
+            Thread.sleep(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttled.");
+        }
+    }
+
+    /**
+     * timedOut() makes the readMove() the game thread is blocked in see the end of the stream, the game
+     * thread then forfeits the game for the client. Only the reading side is shut, so the client can still
+     * be told it lost.
+     */
+    public void timedOut() {
+        try {
+            socket.shutdownInput();
+        } catch (IOException e) {
+            //Already gone, the read fails anyway.
+        }
+    }
+
+    public int variant() {
+        return variant;
+    }
+
+    public int rating() {
+        return rating;
+    }
+
+    public int computerLevel() {
+        return computerLevel;
+    }
+
+    public long resumeGameId() {
+        return resumeGameId;
+    }
+
+    public int resumeToken() {
+        return resumeToken;
+    }
+
+    public long watchGameId() {
+        return watchGameId;
+    }
+
+    public boolean isRouted() {
+        return routed;
+    }
+
+    public long routedGameId() {
+        return routedGameId;
+    }
+
+    public boolean isRoutedSecond() {
+        return routedSecond;
+    }
+
+    /**
+     * spectate() sends a client that asked to watch rather than play the games it watches, on the calling
+     * thread, until it disconnects or the game it asked for is over. The game puts the frames in the
+     * Spectator's queue and this thread writes them out, flushing once the queue is empty so a burst of
+     * frames goes out in one write.
+     *
+     * @param live The games being played.
+     */
+    public void spectate(LiveGames live) {
+        Spectator spectator = new Spectator(watchGameId, version >= BinaryProtocol.VERSION_VARIANTS, null);
+        byte[] frame = new byte[BinaryProtocol.MAX_FRAME_LENGTH + 2];
+        try {
+            if (!live.watch(spectator)) { //No such game, or it is already over.
+                return;
+            }
+            while (true) {
+                ByteBuffer next = spectator.take(SPECTATOR_CHECK_MS);
+                if (next == null) {
+                    if (spectator.isEnded() || !isAlive()) {
+                        out.flush();
+                        return;
+                    }
+                    continue;
+                }
+                int length = next.remaining();
+                next.get(frame, 0, length); //The stream needs an array, the shared buffer stays as it was.
+                out.write(frame, 0, length);
+                if (spectator.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            //The spectator left.
+        } finally {
+            spectator.close();
+            close();
+        }
+    }
+
+    /**
+     * isAlive() checks the client is still connected. It is only called while nobody else is reading
+     * from the connection (when it is waiting in the lobby). A closed connection reads end of stream
+     * straight away, a live one has either sent something or times out after a millisecond.
+     *
+     * @return true if the client is still connected
+     */
+    public boolean isAlive() {
+        if (socket.isClosed()) {
+            return false;
+        }
+        try {
+            if (in.available() > 0) { //Sent us something, so it is still there.
+                return true;
+            }
+            socket.setSoTimeout(1);
+            in.mark(1);
+            int next = in.read();
+            in.reset();
+            return next >= 0;
+        } catch (SocketTimeoutException e) {
+            return true; //Nothing to read but the connection is open.
+        } catch (IOException e) {
+            return false;
+        } finally {
+            try {
+                socket.setSoTimeout(0);
+            } catch (IOException e) {
+                //The socket is closed, the next read will find out.
+            }
+        }
+    }
+
+    public void close() {
+        synchronized (this) { //The lobby and the game thread may both close a player that left.
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        Metrics.connectionClosed(received.count, sent.count);
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //Already gone.
+        }
+    }
+
+    /**
+     * Counts the bytes read from the socket, for the metrics.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count = 0; //Only the thread using the connection changes it.
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                counted(1);
+            }
+            return b;
+        }
+
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                counted(count);
+            }
+            return count;
+        }
+
+        private void counted(int bytes) {
+            count += bytes;
+            Metrics.bytesReceived(bytes);
+        }
+    }
+
+    /**
+     * Counts the bytes written to the socket, for the metrics.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count = 0; //Only the thread using the connection changes it.
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+            Metrics.bytesSent(1);
+        }
+
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length); //FilterOutputStream would write them one byte at a time.
+            count += length;
+            Metrics.bytesSent(length);
+        }
+    }
+}
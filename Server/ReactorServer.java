@@ -0,0 +1,124 @@
+package Server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+/**
+ * This is the reactor server class. Instead of giving every game its own thread that sits blocked in
+ * readLine(), every client is handed to one of a small pool of event loops (one per core) as soon as it
+ * connects. Once the client negotiated its protocol it goes into the Lobby, and every pair the lobby
+ * makes is played as a GameSession state machine on the event loop of the player who waited first.
+ * A session only runs when one of its clients sent something, so thousands of idle games cost a couple
+ * of sockets and a few objects each rather than a thread.
+ * With a MoveJournal, clients coming back to a game the last server didn't finish are put back together
+ * the same way and carry on with GameSession.resume().
+ * Clients that asked to watch games are handed to LiveGames instead of the lobby.
+ *
+ */
+public class ReactorServer {
+    private final int portNumber;
+    private final EventLoop[] loops;
+    private final MoveJournal journal; //Null if the server keeps no journal.
+    private final Lobby<Connection> lobby = new Lobby<>(this::startGame);
+    private final ResumableGames<Connection> resumes; //Null if the server keeps no journal.
+    private final LiveGames live = new LiveGames();
+    private int nextLoop = 0; //Round robin index of the event loop the next client goes to.
+
+    /**
+     * @param journal The move journal, null to keep none.
+     */
+    public ReactorServer(int portNumber, int loopCount, MoveJournal journal) throws IOException {
+        this.portNumber = portNumber;
+        this.journal = journal;
+        resumes = journal == null ? null : new ResumableGames<>(journal, lobby, this::resumeGame,
+                client -> client.loop().execute(client::returnToLobby), false); //No computer players in this mode.
+        loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop();
+            Thread thread = new Thread(loops[i], "event-loop-" + i);
+            thread.start();
+        }
+        lobby.startReports(60_000);
+        Metrics.watch(lobby);
+    }
+
+    /**
+     * serve() continuously accepts new connections and hands them to the event loops.
+     *
+     * @throws IOException If the server channel can't listen on the port.
+     */
+    public void serve() throws IOException {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(portNumber)); //Initializes Server Socket @ specified portNumber
+            while (true) {
+                SocketChannel client = serverChannel.accept();
+                EventLoop loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+                loop.execute(() -> accept(loop, client));
+            }
+        }
+    }
+
+    /**
+     * accept() registers a new client with its event loop and gives it its chance to ask for the binary
+     * protocol. Runs on the event loop thread.
+     */
+    private void accept(EventLoop loop, SocketChannel client) {
+        Connection connection = new Connection(client, loop, lobby, resumes, live);
+        try {
+            loop.register(client, connection);
+        } catch (IOException e) {
+            connection.close();
+            return;
+        }
+        loop.schedule(connection::negotiationTimedOut, PlayerConnection.NEGOTIATION_TIMEOUT_MS);
+    }
+
+    /**
+     * startGame() is called by the lobby on the event loop of the player who completed the pair.
+     */
+    private void startGame(Lobby<Connection> lobby, Connection client1, Connection client2) {
+        together(client1, client2, loop -> new GameSession(loop, client1, client2, journal, live).start(), () -> { });
+    }
+
+    /**
+     * resumeGame() is called by the resumable games on the event loop of whichever player came back last.
+     */
+    private void resumeGame(Lobby<Connection> lobby, MoveJournal.Game game, Connection x, Connection o) {
+        together(x, o, loop -> new GameSession(loop, x, o, journal, live).resume(game),
+                () -> journal.endGame(game, game.sequence(), MoveJournal.ABANDONED, ' '));
+    }
+
+    /**
+     * together() starts a game once both players are on one event loop. It is called on the event loop of one
+     * of the two players. If client1 lives on another event loop than client2, client2 is moved over to it so
+     * the whole game runs on one thread.
+     *
+     * @param start  Starts the game, on the event loop of client1.
+     * @param failed Called if client2 couldn't be moved, client1 goes back to the lobby.
+     */
+    private static void together(Connection client1, Connection client2, Consumer<EventLoop> start, Runnable failed) {
+        EventLoop loop = client1.loop();
+        if (client2.loop() == loop) {
+            start.accept(loop);
+            return;
+        }
+        client2.loop().execute(() -> { //Wait until client2's loop finished handling its current input.
+            client2.detach(loop);
+            loop.execute(() -> {
+                try {
+                    client2.moveTo();
+                } catch (IOException e) {
+                    client2.close();
+                    failed.run();
+                    client1.returnToLobby(); //Not their fault, they wait for somebody else.
+                    return;
+                }
+                start.accept(loop);
+            });
+        });
+    }
+}
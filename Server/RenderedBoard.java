@@ -0,0 +1,77 @@
+package Server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * This is the rendered board class. A game keeps one for its board and hands it to both players every time
+ * the board changes, instead of each player encoding the board for itself. The board is encoded at most
+ * once per protocol per change, so two text players share one render() of the board rather than building
+ * the same string twice.
+ * Only ever used by the game's own thread (or event loop), like the board itself.
+ *
+ */
+public class RenderedBoard {
+    private final Board board;
+    private int sequence = 0;
+    private final MessageEncoder[] encoders = new MessageEncoder[2]; //The protocols it has been encoded in so far, one per player at most.
+    private final byte[][] encoded = new byte[2][];
+    private int count = 0;
+
+    /**
+     * @param board The game board, which the game keeps changing.
+     */
+    public RenderedBoard(Board board) {
+        this.board = board;
+    }
+
+    /**
+     * changed() forgets the old encodings once the board changed.
+     *
+     * @param sequence The sequence number that goes with the board now.
+     */
+    public void changed(int sequence) {
+        this.sequence = sequence;
+        for (int i = 0; i < count; i++) {
+            encoders[i] = null;
+            encoded[i] = null;
+        }
+        count = 0;
+    }
+
+    public Board board() {
+        return board;
+    }
+
+    public int sequence() {
+        return sequence;
+    }
+
+    /**
+     * encoded() is the board message in a players protocol, encoded the first time a player needs it.
+     * The array is shared, it must not be changed.
+     *
+     * @param encoder The players encoder.
+     * @return The bytes of the message.
+     */
+    public byte[] encoded(MessageEncoder encoder) {
+        for (int i = 0; i < count; i++) {
+            if (encoders[i] == encoder) {
+                return encoded[i];
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(encoder == MessageEncoder.TEXT ? 512 : 32);
+        try {
+            encoder.board(new DataOutputStream(bytes), board, sequence);
+        } catch (IOException e) {
+            //Can't happen, the board is written to memory.
+        }
+        if (count == encoders.length) { //Can't happen with two players, but starts over rather than failing.
+            changed(sequence);
+        }
+        encoders[count] = encoder;
+        encoded[count] = bytes.toByteArray();
+        return encoded[count++];
+    }
+}
@@ -0,0 +1,21 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * This is the resumable encoder class used for version 5 of the binary protocol. It is the DeltaEncoder
+ * plus the RESUMABLE frame, which hands the player the game id and seat token it can reconnect with if the
+ * server restarts in the middle of the game (see ResumableGames).
+ *
+ */
+public class ResumableEncoder extends DeltaEncoder {
+
+    public void resumable(DataOutputStream out, long gameId, int token) throws IOException {
+        BinaryProtocol.writeHeader(out, BinaryProtocol.RESUMABLE, 12);
+        out.writeLong(gameId);
+        out.writeInt(token);
+    }
+}
@@ -0,0 +1,188 @@
+package Server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * This is the resumable games class. When the server starts with a MoveJournal, every game the last server
+ * didn't get to finish waits here for its players to come back. A client that reconnects with the game id
+ * and the token of its seat (version 5 of the binary protocol) takes its seat back instead of going to the
+ * lobby, and once every seat is taken (a computer seat takes itself) the game carries on where it stopped.
+ * A game that isn't back together within RESUME_TIMEOUT_MS is abandoned and whoever did come back goes to
+ * the lobby.
+ *
+ * @param <P> The kind of player the server mode uses.
+ */
+public class ResumableGames<P extends ResumableGames.Returning> {
+    public static final long RESUME_TIMEOUT_MS = 60_000; //How long the players of an unfinished game have to come back.
+
+    /**
+     * Something that may be coming back to a game.
+     */
+    public interface Returning extends Lobby.Entrant {
+        long resumeGameId(); //The game the player wants to get back into, 0 for a new game.
+
+        int resumeToken(); //The token of their seat in it.
+    }
+
+    /**
+     * Carries on with a game once its players are back.
+     */
+    public interface ResumeHandler<P extends Returning> {
+        /**
+         * @param lobby The lobby, so the players can be put back once the game is over.
+         * @param game  The game as the journal left it.
+         * @param x     Player 'X'.
+         * @param o     Player 'O', null if it is the computer.
+         */
+        void resumeGame(Lobby<P> lobby, MoveJournal.Game game, P x, P o);
+    }
+
+    private final MoveJournal journal;
+    private final Lobby<P> lobby;
+    private final ResumeHandler<P> onResume;
+    private final Consumer<P> backToLobby; //Puts a player whose game was abandoned in the lobby, from whatever thread the server mode needs.
+    private final ConcurrentHashMap<Long, Seats<P>> games = new ConcurrentHashMap<>(); //Unfinished games by id.
+
+    /**
+     * @param journal       The journal the games were recovered from.
+     * @param lobby         The lobby, handed to onResume.
+     * @param onResume      Carries on with the games.
+     * @param backToLobby   Puts a player whose game was abandoned in the lobby. Called from a pool thread.
+     * @param computerGames False if the server mode has no computer players, their games are abandoned straight away.
+     */
+    public ResumableGames(MoveJournal journal, Lobby<P> lobby, ResumeHandler<P> onResume, Consumer<P> backToLobby, boolean computerGames) {
+        this.journal = journal;
+        this.lobby = lobby;
+        this.onResume = onResume;
+        this.backToLobby = backToLobby;
+        for (MoveJournal.Game game : journal.recovered()) {
+            if (game.computerLevel() > 0 && !computerGames) {
+                journal.endGame(game, game.sequence(), MoveJournal.ABANDONED, ' ');
+            } else {
+                games.put(game.id(), new Seats<>(game));
+            }
+        }
+        if (!games.isEmpty()) {
+            System.out.println(games.size() + " unfinished games are waiting for their players to come back.");
+            //expire() writes to the journal and checks players are still there, too slow for the wheel's own thread.
+            TimingWheel.SHARED.schedule(() -> ForkJoinPool.commonPool().execute(this::expire), RESUME_TIMEOUT_MS);
+        }
+    }
+
+    /**
+     * claim() puts a returning player back into their game. If that was the last seat the game carries on.
+     *
+     * @param player A player that just connected.
+     * @return false if the player isn't coming back to a game (or it no longer exists), they go to the lobby.
+     */
+    public boolean claim(P player) {
+        Seats<P> seats = games.get(player.resumeGameId());
+        if (seats == null) {
+            return false;
+        }
+        P x, o;
+        synchronized (seats) {
+            if (!awaitProbe(seats) || seats.done) { //Too late, it was abandoned.
+                return false;
+            }
+            x = seats.x;
+            o = seats.o;
+            seats.probing = true; //Nobody takes or gives up a seat until we are done, so x and o stay put and aren't playing.
+        }
+        //isAlive() reads from the socket, so whoever sits there is checked without holding the seats.
+        boolean xLeft = false, oLeft = false;
+        try {
+            xLeft = x != null && !x.isAlive();
+            oLeft = o != null && !o.isAlive();
+        } finally {
+            synchronized (seats) {
+                seats.probing = false;
+                seats.notifyAll();
+            }
+        }
+        if (xLeft) {
+            x.close();
+        }
+        if (oLeft) {
+            o.close();
+        }
+        synchronized (seats) {
+            if (!awaitProbe(seats) || seats.done) {
+                return false;
+            }
+            if (xLeft && seats.x == x) { //Came back and left again, their seat is free.
+                seats.x = null;
+            }
+            if (oLeft && seats.o == o) {
+                seats.o = null;
+            }
+            if (player.resumeToken() == seats.game.token('X') && seats.x == null) {
+                seats.x = player;
+            } else if (player.resumeToken() == seats.game.token('O') && seats.o == null && seats.game.computerLevel() == 0) {
+                seats.o = player;
+            } else {
+                return false; //Wrong token, or somebody already took that seat.
+            }
+            if (seats.x == null || (seats.o == null && seats.game.computerLevel() == 0)) {
+                return true; //Waits for the other player.
+            }
+            seats.done = true;
+        }
+        games.remove(seats.game.id());
+        onResume.resumeGame(lobby, seats.game, seats.x, seats.o);
+        return true;
+    }
+
+    /**
+     * expire() abandons every game that isn't back together yet. Players who did come back go to the lobby.
+     */
+    private void expire() {
+        for (Seats<P> seats : games.values()) {
+            synchronized (seats) {
+                if (!awaitProbe(seats) || seats.done) {
+                    continue;
+                }
+                seats.done = true;
+            }
+            games.remove(seats.game.id());
+            journal.endGame(seats.game, seats.game.sequence(), MoveJournal.ABANDONED, ' ');
+            if (seats.x != null) {
+                backToLobby.accept(seats.x);
+            }
+            if (seats.o != null) {
+                backToLobby.accept(seats.o);
+            }
+        }
+    }
+
+    /**
+     * awaitProbe() waits until no other claim() is checking whether the players in the seats are still there.
+     * Must be called holding the seats.
+     *
+     * @return false if the thread was interrupted while waiting.
+     */
+    private static boolean awaitProbe(Seats<?> seats) {
+        while (seats.probing) {
+            try {
+                seats.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Seats<P> {
+        final MoveJournal.Game game;
+        P x, o; //The players that came back so far.
+        boolean done = false; //Set once the game carried on or was abandoned.
+        boolean probing = false; //True while a claim() checks the players in the seats, who mustn't be handed on meanwhile.
+
+        Seats(MoveJournal.Game game) {
+            this.game = game;
+        }
+    }
+}
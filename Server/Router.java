@@ -0,0 +1,825 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This is the router class. It lets several game servers (each an ordinary Server, in either mode) share
+ * one port: clients connect to the router, and every game is played on one of the game servers behind it.
+ *
+ * The router reads each client's hello the same way a server does and pairs the clients in a Lobby of its
+ * own. Every pair gets a game id, and the game goes to the game server the id belongs to on a HashRing. The
+ * router opens a connection to that server for each of the two clients and sends it a handoff (see
+ * BinaryProtocol.routed()) followed by the client's hello, so the server knows which two clients to put
+ * together and doesn't pair them itself. From then on the router only passes bytes back and forth. A game
+ * keeps the router's id on the game server, in its journal and for spectators, so a client coming back to a
+ * game (or wanting to watch one) is sent to the server the id belongs to without being paired at all.
+ *
+ * Once a game is over the game server hangs up on both clients' connections rather than putting them in its
+ * own lobby, and the router puts the clients back in its lobby for their next game, which may well be on
+ * another server. The clients stay connected to the router the whole time and never know. If a game server
+ * dies in the middle of a game, its clients are put back in the lobby the same way.
+ *
+ * A game server that can't be connected to is taken off the ring and the game goes to the next server on it,
+ * so new games go to the servers that are left. Every game server is also sent a probe every
+ * PROBE_INTERVAL_MS (see BinaryProtocol.PROBE_MAGIC), which is how a server that is back gets its games back
+ * and how a server that still takes connections but doesn't answer them any more loses its games. Only a
+ * server going down or coming back up is logged, not every probe.
+ * A game server takes handoffs only from the routers given to it with "--routers=" (see trust()), so a
+ * client can't pretend to be the router and pick its own game.
+ *
+ * Only game servers in thread mode have computer players, so a client that wants to play the computer is
+ * only ever sent to one of those. Its game gets the next id that belongs to one of them on the ring (so a
+ * resume or a spectator finds the game by its id like any other), and if its server goes down it is given
+ * another. Without any such servers the router has no computer to offer, and the client plays a person.
+ *
+ * Everything runs on one thread with a Selector. Bytes are passed on through a direct buffer per direction
+ * per client, so they go from one socket to the other without ever being copied onto the heap. A buffer
+ * that the other side can't take yet stops the reading until it can.
+ *
+ * Run it with "--backends=<host:port>,<host:port>,..." for the game servers and "--port=<port>" to listen
+ * on another port than 1024. "--computer=<host:port>,..." says which of the game servers are in thread mode
+ * (any not in --backends are added to them).
+ *
+ */
+public class Router implements Runnable {
+    public static final long PROBE_INTERVAL_MS = 1000; //How often every game server is checked.
+    private static final int RELAY_BUFFER_SIZE = 4096; //Bytes on their way per direction per client, a whole text board fits a few times over.
+    private static volatile Set<InetAddress> trusted = Set.of(); //On a game server, the routers it takes handoffs from.
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final HashRing<InetSocketAddress> ring;
+    private final List<InetSocketAddress> computerBackends; //The game servers in thread mode, the only ones with computer players.
+    private final Lobby<Client> lobby;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>(); //Work handed over from other threads.
+    private final Map<InetSocketAddress, SocketChannel> probing = new HashMap<>(); //Probes that haven't been answered yet, per game server.
+    private long nextGameId = System.currentTimeMillis() * 1000; //The same kind of ids as the journal's, so they don't repeat after a restart.
+    private boolean noneUp = false; //True once we said no game server is up, until one is again.
+
+    /**
+     * @param portNumber The port clients connect to.
+     * @param backends         The game servers.
+     * @param computerBackends The ones of them in thread mode, which have computer players. May be empty.
+     * @throws IOException If the port can't be listened on.
+     */
+    public Router(int portNumber, List<InetSocketAddress> backends, List<InetSocketAddress> computerBackends) throws IOException {
+        ring = new HashRing<>(backends);
+        this.computerBackends = new ArrayList<>(computerBackends);
+        lobby = new Lobby<>(this::startGame, computerBackends.isEmpty() ? null : this::startComputerGame);
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(portNumber));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT); //No handler, see run().
+        lobby.startReports(60_000);
+    }
+
+    public static void main(String[] args) {
+        int portNumber = 1024;
+        List<InetSocketAddress> backends = new ArrayList<>();
+        List<InetSocketAddress> computerBackends = new ArrayList<>();
+
+        for (String arg : args) { //Reads the startup flags.
+            if (arg.startsWith("--port=")) {
+                portNumber = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--backends=")) {
+                backends.addAll(addresses(arg.substring("--backends=".length())));
+            } else if (arg.startsWith("--computer=")) {
+                computerBackends.addAll(addresses(arg.substring("--computer=".length())));
+            } else {
+                System.out.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        if (backends.isEmpty()) {
+            System.out.println("Give the game servers to route to with --backends=<host:port>,<host:port>,...");
+            return;
+        }
+        for (InetSocketAddress backend : computerBackends) {
+            if (!backends.contains(backend)) {
+                backends.add(backend);
+            }
+        }
+
+        try {
+            new Router(portNumber, backends, computerBackends).run();
+        } catch (IOException e) {
+            System.out.println("Exception caught when trying to listen on port " + portNumber);
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * addresses() reads a list of game servers, "<host:port>,<host:port>,...".
+     */
+    private static List<InetSocketAddress> addresses(String list) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String address : list.split(",")) {
+            int colon = address.lastIndexOf(':');
+            addresses.add(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    /**
+     * trust() is called by a game server for the routers it takes handoffs from, anyone else sending one is
+     * hung up on.
+     *
+     * @param routers The addresses of the routers, empty to take no handoffs at all.
+     */
+    public static void trust(Collection<InetAddress> routers) {
+        trusted = Set.copyOf(routers);
+    }
+
+    /**
+     * isTrusted() tells a game server whether a connection came from one of its routers.
+     *
+     * @param address The address the connection came from.
+     */
+    public static boolean isTrusted(InetAddress address) {
+        return trusted.contains(address);
+    }
+
+    /**
+     * execute() runs the task on the router thread as soon as possible. Safe to call from any thread.
+     */
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    public void run() {
+        TimingWheel.SHARED.schedule(() -> execute(this::probe), PROBE_INTERVAL_MS);
+        while (true) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                System.out.println("The router failed to select.");
+                System.out.println(e.getMessage());
+                return;
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) { //Handles every channel that is ready...
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.attachment() == null) { //The server channel.
+                    accept();
+                } else {
+                    ((Handler) key.attachment()).onReady(key);
+                }
+            }
+            Runnable task;
+            while ((task = tasks.poll()) != null) { //Runs the work the timing wheel handed to us.
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * accept() takes every client that is waiting to connect and gives it its chance to send a hello.
+     */
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+                if (channel == null) {
+                    return;
+                }
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true); //Every message is passed on as it comes, nothing to wait for.
+            } catch (IOException e) {
+                System.out.println("Couldn't accept a client.");
+                System.out.println(e.getMessage());
+                return;
+            }
+            try {
+                Client client = new Client(channel);
+                TimingWheel.SHARED.schedule(() -> execute(client::negotiationTimedOut), PlayerConnection.NEGOTIATION_TIMEOUT_MS);
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    /**
+     * startGame() is called by the lobby for every pair, it gives their game an id and sends it to its server.
+     */
+    private void startGame(Lobby<Client> lobby, Client client1, Client client2) {
+        long id = nextGameId++;
+        route(new Game(id, id, client1, client2));
+    }
+
+    /**
+     * startComputerGame() sends a client that wants to play the computer to the server its game id belongs to,
+     * the computer player is on the game server. The id is the next one that belongs to a server in thread mode.
+     */
+    private void startComputerGame(Lobby<Client> lobby, Client client) {
+        if (computerBackends.stream().noneMatch(ring::isUp)) {
+            System.out.println("No game server with computer players is up, hanging up on a client.");
+            client.close();
+            return;
+        }
+        long id;
+        do {
+            id = nextGameId++;
+        } while (!computerBackends.contains(ring.node(id))); //Ids are spread over the ring, so this doesn't take long.
+        route(new Game(id, id, client));
+    }
+
+    /**
+     * route() connects the clients of a game to the game server the game belongs to. If none is up there is
+     * nowhere to play, and the clients are hung up on.
+     */
+    private void route(Game game) {
+        for (Client client : game.clients) {
+            if (client.closed) { //Left while its partner was being routed.
+                callOff(game);
+                return;
+            }
+        }
+        InetSocketAddress backend = ring.node(game.key);
+        if (backend == null) {
+            if (!noneUp) {
+                System.out.println("No game server is up, hanging up on clients until one is.");
+                noneUp = true;
+            }
+            for (Client client : game.clients) {
+                client.close();
+            }
+            return;
+        }
+        if (game.id != 0 && game.clients.length == 1 && !computerBackends.contains(backend)) { //A computer game whose server went down, it needs the id of another.
+            callOff(game);
+            return;
+        }
+        game.backend = backend;
+        game.handedOff = 0;
+        int attempt = game.attempt;
+        for (Client client : game.clients) {
+            client.connect(game);
+            if (game.attempt != attempt) { //The connection failed straight away, the game was routed again.
+                return;
+            }
+        }
+    }
+
+    /**
+     * failed() is called when a game server couldn't be connected to. The server is taken off the ring and
+     * the whole game goes to the next server on it.
+     */
+    private void failed(Game game) {
+        setUp(game.backend, false);
+        game.attempt++;
+        for (Client client : game.clients) {
+            client.leaveGame();
+        }
+        route(game);
+    }
+
+    /**
+     * callOff() gives up on a game one of whose clients left before the game server had them both, so the
+     * other one isn't left waiting there for nobody. It goes back to the lobby instead.
+     */
+    private void callOff(Game game) {
+        game.attempt++;
+        for (Client client : game.clients) {
+            client.leaveGame();
+        }
+        for (Client client : game.clients) {
+            if (!client.closed) {
+                client.backToLobby();
+            }
+        }
+    }
+
+    /**
+     * probe() sends every game server a probe, to see which are up. A probe still waiting from last time
+     * means the server didn't answer in a whole interval, which counts as down.
+     */
+    private void probe() {
+        for (InetSocketAddress backend : ring.nodes()) {
+            SocketChannel stuck = probing.remove(backend);
+            if (stuck != null) {
+                closeQuietly(stuck);
+                setUp(backend, false);
+            }
+            try {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                probing.put(backend, channel);
+                Probe probe = new Probe(backend, channel);
+                if (channel.connect(backend)) {
+                    probe.connected(channel.register(selector, 0, probe));
+                } else {
+                    channel.register(selector, SelectionKey.OP_CONNECT, probe);
+                }
+            } catch (IOException e) {
+                probed(backend, probing.get(backend), false);
+            }
+        }
+        TimingWheel.SHARED.schedule(() -> execute(this::probe), PROBE_INTERVAL_MS);
+    }
+
+    /**
+     * probed() hangs up on a probe once the server answered it (or didn't).
+     */
+    private void probed(InetSocketAddress backend, SocketChannel channel, boolean up) {
+        probing.remove(backend);
+        closeQuietly(channel);
+        setUp(backend, up);
+    }
+
+    /**
+     * setUp() marks a game server up or down, and says so if it wasn't already.
+     */
+    private void setUp(InetSocketAddress backend, boolean up) {
+        if (ring.setUp(backend, up)) {
+            noneUp &= !up;
+            System.out.println(up ? "Game server " + backend + " is up, its games go to it again."
+                    : "Game server " + backend + " is down, its games go to the others.");
+        }
+    }
+
+    private static void interest(SelectionKey key, int op, boolean on) {
+        if (key.isValid()) {
+            key.interestOps(on ? key.interestOps() | op : key.interestOps() & ~op);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close(); //Also cancels its selection key.
+        } catch (IOException e) {
+            //Nothing left to do with a channel that won't close.
+        }
+    }
+
+    /**
+     * Something registered with the selector.
+     */
+    private interface Handler {
+        void onReady(SelectionKey key);
+    }
+
+    /**
+     * A probe of one game server. Once connected it sends BinaryProtocol.PROBE_MAGIC, and the server is up
+     * once it has answered with the same. The server can tell it from a client, so it doesn't go anywhere near
+     * the lobby or the metrics.
+     */
+    private final class Probe implements Handler {
+        private final InetSocketAddress backend;
+        private final SocketChannel channel;
+        private final ByteBuffer answer = ByteBuffer.allocate(BinaryProtocol.PROBE_MAGIC.length);
+
+        Probe(InetSocketAddress backend, SocketChannel channel) {
+            this.backend = backend;
+            this.channel = channel;
+        }
+
+        public void onReady(SelectionKey key) {
+            try {
+                if (key.isConnectable()) {
+                    channel.finishConnect();
+                    connected(key);
+                    return;
+                }
+                if (channel.read(answer) < 0) { //Hung up without answering.
+                    probed(backend, channel, false);
+                } else if (!answer.hasRemaining()) {
+                    probed(backend, channel, Arrays.equals(answer.array(), BinaryProtocol.PROBE_MAGIC));
+                }
+            } catch (IOException e) {
+                probed(backend, channel, false);
+            }
+        }
+
+        /**
+         * connected() sends the probe and waits for the answer.
+         */
+        void connected(SelectionKey key) throws IOException {
+            ByteBuffer request = ByteBuffer.wrap(BinaryProtocol.PROBE_MAGIC);
+            channel.write(request);
+            if (request.hasRemaining()) { //A new socket always takes a few bytes.
+                throw new IOException("The probe didn't fit in the socket.");
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * A game on its way to a game server: its clients, the id the server gets and the key it is routed by.
+     */
+    private static final class Game {
+        final long id; //The game id for the handoff, 0 for a client coming back to a game or watching one.
+        final long key; //The key on the ring, the game id or the id of the game being resumed or watched.
+        final Client[] clients;
+        InetSocketAddress backend; //The game server it is on its way to.
+        int attempt = 0; //Goes up every time the game is routed again (or called off).
+        int handedOff = 0; //Clients whose handoff the game server has.
+
+        Game(long id, long key, Client... clients) {
+            this.id = id;
+            this.key = key;
+            this.clients = clients;
+        }
+    }
+
+    /**
+     * One client of the router. Until it has a game it is read here (its hello, then nothing but whether
+     * it is still there), while it has one its Upstream passes on whatever it sends.
+     */
+    private final class Client implements Lobby.Entrant, Handler {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer fromClient = ByteBuffer.allocateDirect(RELAY_BUFFER_SIZE); //On its way to the game server, ready to be written from.
+        private final byte[] hello = new byte[BinaryProtocol.HELLO_LENGTH + BinaryProtocol.MAX_PREFERENCES_LENGTH];
+        private int helloLength = 0; //Bytes of the hello received so far.
+        private int helloNeeded = BinaryProtocol.HELLO_LENGTH; //Grows once we know the version carries preferences.
+        private boolean negotiated = false;
+        private boolean text = false; //True for a text client, which has no hello to pass on.
+        private int variant = BinaryProtocol.VARIANT_CLASSIC;
+        private int rating = 0;
+        private int computerLevel = BinaryProtocol.OPPONENT_HUMAN;
+        private long resumeGameId = 0; //The game the client wants to get back into, 0 once it has been sent there.
+        private long watchGameId = BinaryProtocol.WATCH_NONE;
+        private Upstream upstream; //Its connection to the game server of its game, null while it has none.
+        private boolean closed = false;
+
+        Client(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+            fromClient.flip(); //Nothing to pass on yet.
+        }
+
+        public void onReady(SelectionKey key) {
+            if (key.isReadable()) {
+                onReadable();
+            }
+            if (key.isValid() && key.isWritable() && upstream != null) {
+                upstream.writeToClient();
+            }
+        }
+
+        /**
+         * onReadable() passes on what the client sent to its game. Before that it is the hello, and anything
+         * else is dropped (the game server would drop it too). The client is only read while fromClient is empty.
+         */
+        private void onReadable() {
+            fromClient.clear();
+            int read;
+            try {
+                read = channel.read(fromClient);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            fromClient.flip();
+            if (read < 0) { //Client hung up.
+                close();
+                return;
+            }
+            if (upstream != null && !upstream.ended) {
+                upstream.writeFromClient();
+                return;
+            }
+            boolean arrived = false;
+            while (fromClient.hasRemaining() && !negotiated) {
+                arrived = negotiate(fromClient.get());
+            }
+            fromClient.position(fromClient.limit());
+            if (arrived) {
+                arrived();
+            }
+        }
+
+        /**
+         * negotiate() reads the hello one byte at a time, the same way Connection does.
+         *
+         * @return true once the client's protocol and preferences are known.
+         */
+        private boolean negotiate(byte b) {
+            hello[helloLength++] = b;
+            if (helloLength <= BinaryProtocol.HELLO_MAGIC.length && b != BinaryProtocol.HELLO_MAGIC[helloLength - 1]) {
+                return useText(); //Not a hello, must be a text client.
+            }
+            int clientVersion = hello[BinaryProtocol.HELLO_LENGTH - 1];
+            if (helloLength == BinaryProtocol.HELLO_LENGTH) {
+                if (clientVersion < 1) { //No version we understand.
+                    return useText();
+                }
+                helloNeeded += BinaryProtocol.preferencesLength(clientVersion);
+            }
+            if (helloLength < helloNeeded) {
+                return false;
+            }
+            int version = Math.min(clientVersion, BinaryProtocol.VERSION); //The version the game server will pick.
+            if (version >= BinaryProtocol.VERSION_PREFERENCES) {
+                rating = ((hello[5] & 0xFF) << 8) | (hello[6] & 0xFF);
+            }
+            if (version >= BinaryProtocol.VERSION_OPPONENT) {
+                computerLevel = Math.min(hello[7] & 0xFF, BinaryProtocol.COMPUTER_LEVELS);
+                if (computerBackends.isEmpty()) { //No game server has computer players, so it plays a person (and the server is told so).
+                    computerLevel = BinaryProtocol.OPPONENT_HUMAN;
+                    hello[7] = (byte) BinaryProtocol.OPPONENT_HUMAN;
+                }
+            }
+            if (version >= BinaryProtocol.VERSION_RESUME) {
+                resumeGameId = ByteBuffer.wrap(hello, 8, 8).getLong();
+            }
+            if (version >= BinaryProtocol.VERSION_SPECTATE) {
+                watchGameId = ByteBuffer.wrap(hello, 20, 8).getLong();
+            }
+            if (version >= BinaryProtocol.VERSION_VARIANTS && computerLevel == BinaryProtocol.OPPONENT_HUMAN && BinaryProtocol.isVariant(hello[4])) {
+                variant = hello[4];
+            }
+            negotiated = true;
+            return true;
+        }
+
+        private boolean useText() {
+            text = true;
+            negotiated = true;
+            return true;
+        }
+
+        /**
+         * negotiationTimedOut() is called when the client had its chance to send a hello. Anyone who hasn't
+         * by now is a text client.
+         */
+        void negotiationTimedOut() {
+            if (!negotiated && !closed) {
+                useText();
+                arrived();
+            }
+        }
+
+        /**
+         * arrived() is called once the client's hello is known. A spectator, or a client coming back to a game,
+         * goes straight to the game server the game's id belongs to, everybody else waits in the lobby.
+         */
+        private void arrived() {
+            if (watchGameId != BinaryProtocol.WATCH_NONE) {
+                route(new Game(0, watchGameId == BinaryProtocol.WATCH_ANY ? nextGameId++ : watchGameId, this)); //WATCH_ANY goes to any server.
+            } else if (resumeGameId != 0) {
+                route(new Game(0, resumeGameId, this));
+                resumeGameId = 0; //Only the once, after that game it is paired like everybody else.
+                Arrays.fill(hello, BinaryProtocol.HELLO_LENGTH + 4, BinaryProtocol.HELLO_LENGTH + 16, (byte) 0);
+            } else {
+                lobby.enqueue(this);
+            }
+        }
+
+        /**
+         * connect() opens the client's connection to the game server of its game. The handoff and the hello
+         * go first, the client isn't read again until the server has them.
+         */
+        void connect(Game game) {
+            fromClient.clear();
+            int flags = (text ? BinaryProtocol.ROUTED_TEXT : 0) | (game.clients.length > 1 && game.clients[1] == this ? BinaryProtocol.ROUTED_SECOND : 0);
+            fromClient.put(BinaryProtocol.routed(game.id, flags));
+            if (!text) {
+                fromClient.put(hello, 0, helloNeeded);
+            }
+            fromClient.flip();
+            interest(key, SelectionKey.OP_READ, false);
+            try {
+                SocketChannel backend = SocketChannel.open();
+                backend.configureBlocking(false);
+                backend.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                upstream = new Upstream(this, game, backend);
+                if (backend.connect(game.backend)) {
+                    upstream.connected();
+                }
+            } catch (IOException e) {
+                failed(game);
+            }
+        }
+
+        /**
+         * leaveGame() hangs up on the game server of a game that is being routed again or called off.
+         */
+        void leaveGame() {
+            if (upstream != null) {
+                upstream.abandon();
+                upstream = null;
+            }
+        }
+
+        /**
+         * backToLobby() puts the client back in the lobby once its game server hung up on it, which it does
+         * after every game. A spectator has watched what it came for and is hung up on too.
+         */
+        void backToLobby() {
+            upstream = null;
+            fromClient.position(fromClient.limit()); //Anything it sent the old game is no use to the next one.
+            interest(key, SelectionKey.OP_WRITE, false);
+            interest(key, SelectionKey.OP_READ, true); //So we know if it leaves while it waits.
+            if (watchGameId != BinaryProtocol.WATCH_NONE) {
+                close();
+            } else {
+                lobby.enqueue(this);
+            }
+        }
+
+        public int variant() {
+            return variant;
+        }
+
+        public int rating() {
+            return rating;
+        }
+
+        public int computerLevel() {
+            return computerLevel;
+        }
+
+        public boolean isRouted() {
+            return false; //We are the router.
+        }
+
+        public long routedGameId() {
+            return 0;
+        }
+
+        public boolean isRoutedSecond() {
+            return false;
+        }
+
+        public boolean isAlive() {
+            return !closed && channel.isOpen();
+        }
+
+        /**
+         * close() hangs up on the client, and on its game server. A game the server doesn't have both clients
+         * of yet is called off.
+         */
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closeQuietly(channel);
+            if (upstream != null) {
+                Game game = upstream.game;
+                leaveGame();
+                if (game.handedOff < game.clients.length) {
+                    callOff(game);
+                }
+            }
+        }
+    }
+
+    /**
+     * One client's connection to the game server of its game.
+     */
+    private final class Upstream implements Handler {
+        private final Client client;
+        private final Game game;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer toClient = ByteBuffer.allocateDirect(RELAY_BUFFER_SIZE); //On its way to the client, ready to be written from.
+        private boolean connected = false;
+        private boolean handedOff = false; //True once the game server has the handoff and the hello.
+        private boolean ended = false; //True once the game server hung up (or we did).
+
+        Upstream(Client client, Game game, SocketChannel channel) throws IOException {
+            this.client = client;
+            this.game = game;
+            this.channel = channel;
+            key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            toClient.flip(); //Nothing to pass on yet.
+        }
+
+        public void onReady(SelectionKey key) {
+            if (key.isConnectable()) {
+                try {
+                    channel.finishConnect();
+                } catch (IOException e) {
+                    failed(game);
+                    return;
+                }
+                connected();
+                return;
+            }
+            if (key.isReadable()) {
+                readFromServer();
+            }
+            if (key.isValid() && key.isWritable()) {
+                writeFromClient();
+            }
+        }
+
+        void connected() {
+            connected = true;
+            key.interestOps(SelectionKey.OP_READ);
+            writeFromClient();
+        }
+
+        /**
+         * writeFromClient() passes on what the client sent. What the server can't take yet waits in the buffer,
+         * and the client isn't read until it has all gone.
+         */
+        void writeFromClient() {
+            try {
+                channel.write(client.fromClient);
+            } catch (IOException e) {
+                ended();
+                return;
+            }
+            boolean pending = client.fromClient.hasRemaining();
+            interest(key, SelectionKey.OP_WRITE, pending);
+            interest(client.key, SelectionKey.OP_READ, !pending);
+            if (!pending && !handedOff) {
+                handedOff = true;
+                game.handedOff++;
+            }
+        }
+
+        /**
+         * readFromServer() passes on what the game server sent. The server is only read while toClient is empty.
+         */
+        private void readFromServer() {
+            toClient.clear();
+            int read;
+            try {
+                read = channel.read(toClient);
+            } catch (IOException e) {
+                read = -1;
+            }
+            toClient.flip();
+            if (read < 0) { //The game is over, or the game server is gone.
+                ended();
+                return;
+            }
+            writeToClient();
+        }
+
+        /**
+         * writeToClient() writes what the server sent to the client. What the client can't take yet waits in the
+         * buffer, and the server isn't read until it has all gone.
+         */
+        void writeToClient() {
+            try {
+                client.channel.write(toClient);
+            } catch (IOException e) {
+                client.close();
+                return;
+            }
+            boolean pending = toClient.hasRemaining();
+            interest(client.key, SelectionKey.OP_WRITE, pending);
+            if (ended) {
+                if (!pending) { //The client got everything the game server sent before it hung up.
+                    client.backToLobby();
+                }
+                return;
+            }
+            interest(key, SelectionKey.OP_READ, !pending);
+        }
+
+        /**
+         * ended() is called when the game server hung up. The client goes back to the lobby once it has been sent
+         * whatever is still on its way.
+         */
+        private void ended() {
+            if (!connected) {
+                failed(game);
+                return;
+            }
+            abandon();
+            if (!toClient.hasRemaining()) {
+                client.backToLobby();
+            }
+        }
+
+        void abandon() {
+            ended = true;
+            closeQuietly(channel);
+        }
+    }
+}
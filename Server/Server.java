@@ -1,13 +1,48 @@
 package Server;
 
+import Protocol.BinaryProtocol;
+
 import java.net.*;
 import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This is the server class for the network socket based connect 4 game.
- * It simply accepts to client connections and splits them off into their
- * own game thread. Obviously the server needs to be run before trying to connect
- * a client.
+ * It simply accepts client connections and puts them in the Lobby, which pairs them
+ * up and splits every pair off into their own game thread. Obviously the server needs
+ * to be run before trying to connect a client.
+ *
+ * Running it with "--mode=reactor" starts the ReactorServer instead, which plays the games
+ * on a few event loop threads rather than one thread per game. With "--threads=virtual" the
+ * thread-per-game mode runs every game on a virtual thread (Java 21+) instead of a platform thread.
+ * "--port=<port>" listens on another port than 1024.
+ * A client that asks to play the computer gets a game thread of their own with a ComputerPlayer as player 2
+ * (only in the thread-per-game mode so far). "--book=<file>" gives the computer an opening book made by
+ * OpeningBookBuilder.
+ * The server's metrics are always shown over JMX, "--metrics-port=<port>" also serves them as a Prometheus
+ * page at http://localhost:<port>/metrics (see Metrics).
+ * "--journal=<directory>" writes every move to a MoveJournal there. After a restart with the same directory,
+ * the games the last server didn't finish wait for their players to reconnect and carry on (see ResumableGames).
+ * Binary clients (version 6) can also ask to watch a game instead of playing, they are sent it by the
+ * thread that accepted them (see LiveGames).
+ * "--move-time=<seconds>" gives a player that long for each move and "--bank=<seconds>" that long for all
+ * their moves in a game, like a chess clock. A player who runs out of time forfeits the game (see MoveClock).
+ * "--idle-timeout=<seconds>" disconnects a version 7 client that stops answering pings after that long, 60
+ * seconds by default and 0 for never (reactor mode only, see Connection).
+ * "--input-rate=<per second>" is how many inputs a second the game has no use for (moves out of turn, nonsense
+ * and so on) a client may send, in bursts of twice that, before it is read no more for a while. 20 by default
+ * and 0 for no limit (see TokenBucket).
+ * Version 8 clients can ask for a bigger board than the classic one, players are only paired with players
+ * who asked for the same one (see Board.create() and VariantBoard).
+ * Several servers can run behind a Router, which pairs the clients itself and hands every game to one of the
+ * servers. A client the router hands over goes back to the router once its game is over (see Lobby.returned()).
+ * "--routers=<host>,<host>,..." says which routers may hand clients over, without it nobody may (see Router.trust()).
  *
  * This is essentially entirely Earl Foxwells code provided on our class brightspace resource page.
  *
@@ -16,17 +51,200 @@ import java.io.*;
 public class Server {
     public static void main(String[] args) {
         int portNumber = 1024;
+        String mode = "thread"; //Either "thread" (one thread per game) or "reactor" (event loops).
+        String threads = "platform"; //Either "platform" or "virtual", the kind of thread each game runs on in "thread" mode.
+        String book = null; //Opening book file for the computer player, if any.
+        int metricsPort = 0; //Port of the /metrics page, 0 for none.
+        String journalDirectory = null; //Where the move journal is kept, if anywhere.
+        long moveSeconds = 0; //Time per move, 0 for no limit.
+        long bankSeconds = 0; //Time per player per game, 0 for no limit.
+        int inputRate = 20; //Wasted inputs a client may send per second, 0 for no limit.
+        String routers = null; //The routers that may hand clients over, if any.
+
+        for (String arg : args) { //Reads the startup flags.
+            if (arg.startsWith("--port=")) {
+                portNumber = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--mode=")) {
+                mode = arg.substring("--mode=".length());
+            } else if (arg.startsWith("--threads=")) {
+                threads = arg.substring("--threads=".length());
+            } else if (arg.startsWith("--book=")) {
+                book = arg.substring("--book=".length());
+            } else if (arg.startsWith("--metrics-port=")) {
+                metricsPort = Integer.parseInt(arg.substring("--metrics-port=".length()));
+            } else if (arg.startsWith("--journal=")) {
+                journalDirectory = arg.substring("--journal=".length());
+            } else if (arg.startsWith("--move-time=")) {
+                moveSeconds = Long.parseLong(arg.substring("--move-time=".length()));
+            } else if (arg.startsWith("--bank=")) {
+                bankSeconds = Long.parseLong(arg.substring("--bank=".length()));
+            } else if (arg.startsWith("--idle-timeout=")) {
+                Connection.useIdleTimeout(Long.parseLong(arg.substring("--idle-timeout=".length())) * 1000);
+            } else if (arg.startsWith("--input-rate=")) {
+                inputRate = Integer.parseInt(arg.substring("--input-rate=".length()));
+            } else if (arg.startsWith("--routers=")) {
+                routers = arg.substring("--routers=".length());
+            } else {
+                System.out.println("Unknown option: " + arg);
+                return;
+            }
+        }
+
+        Metrics.start(metricsPort);
+        MoveClock.configure(moveSeconds * 1000, bankSeconds * 1000);
+        TokenBucket.configure(inputRate, inputRate * 2);
+        if (routers != null) {
+            try {
+                Router.trust(routerAddresses(routers));
+            } catch (UnknownHostException e) {
+                System.out.println("Couldn't find the router " + e.getMessage());
+                return;
+            }
+        }
+
+        if (book != null) {
+            try {
+                ComputerPlayer.useOpeningBook(OpeningBook.open(Paths.get(book)));
+            } catch (IOException e) {
+                System.out.println("Couldn't open the opening book, the computer will search every move.");
+                System.out.println(e.getMessage());
+            }
+        }
+
+        MoveJournal journal = null;
+        if (journalDirectory != null) {
+            try {
+                journal = openJournal(Paths.get(journalDirectory));
+            } catch (IOException e) {
+                System.out.println("Couldn't open the move journal.");
+                System.out.println(e.getMessage());
+                return;
+            }
+        }
+
+        if (mode.equals("reactor")) {
+            try {
+                new ReactorServer(portNumber, Runtime.getRuntime().availableProcessors(), journal).serve();
+            } catch (IOException e) {
+                System.out.println("Exception caught when trying to listen on port " + portNumber + " or listening for a connection");
+                System.out.println(e.getMessage());
+            }
+            return;
+        }
+
+        ThreadFactory gameThreads = newGameThreadFactory(threads);
+        if (gameThreads == null) {
+            return;
+        }
+
+        MoveJournal games = journal;
+        LiveGames live = new LiveGames();
+        Lobby<PlayerConnection> lobby = new Lobby<>(
+                (from, p1, p2) -> gameThreads.newThread(new GameThread(p1, p2, from, games, live)).start(), //Splits every pair off into their own game thread.
+                (from, p1) -> gameThreads.newThread(new GameThread(p1, new ComputerPlayer(p1.computerLevel()), from, games, live)).start());
+        lobby.startReports(60_000);
+        Metrics.watch(lobby);
+        ResumableGames<PlayerConnection> resumes = journal == null ? null : new ResumableGames<>(journal, lobby,
+                (from, game, x, o) -> gameThreads.newThread(new GameThread(x, o != null ? o : new ComputerPlayer(game.computerLevel()), from, games, live, game)).start(),
+                lobby::returned, true);
+
         try (
                 ServerSocket serverSocket = new ServerSocket(portNumber); //Initializes Server Socket @ specified portNumber
         ) {
-            while (true) { //Continously accepts new connections and pairs up two connections.
-                Socket client1=serverSocket.accept();
-                Socket client2=serverSocket.accept();
-                new GameThread(client1,client2).start(); //Splits the two clients off into their own game thread.
+            while (true) { //Continously accepts new connections and sends them to the lobby.
+                Socket client = serverSocket.accept();
+                gameThreads.newThread(() -> joinLobby(client, lobby, resumes, live)).start(); //Negotiating the protocol takes a moment, so it isn't done on the accept loop.
             }
         } catch (IOException e) {
             System.out.println("Exception caught when trying to listen on port " + portNumber + " or listening for a connection");
             System.out.println(e.getMessage());
         }
     }
+
+    /**
+     * joinLobby() works out which protocol a new client speaks and puts it in the lobby. A spectator stays on
+     * this thread instead, which sends it the games it watches until it leaves.
+     *
+     * @param client  The clients socket.
+     * @param lobby   The lobby.
+     * @param resumes The games waiting for their players to come back, null without a journal.
+     * @param live    The games being played, for spectators.
+     */
+    private static void joinLobby(Socket client, Lobby<PlayerConnection> lobby, ResumableGames<PlayerConnection> resumes, LiveGames live) {
+        try {
+            PlayerConnection player = new PlayerConnection(client);
+            player.negotiate(System.nanoTime() + PlayerConnection.NEGOTIATION_TIMEOUT_MS * 1_000_000L);
+            if (player.isProbe()) {
+                return; //A Router seeing that we are up, it has its answer.
+            }
+            if (player.watchGameId() != BinaryProtocol.WATCH_NONE) {
+                player.spectate(live);
+            } else if (resumes == null || !resumes.claim(player)) { //Coming back to a game takes them straight to it.
+                lobby.enqueue(player);
+            }
+        } catch (IOException e) {
+            System.out.println("Lost a client before it made it to the lobby.");
+            System.out.println(e.getMessage());
+            try {
+                client.close();
+            } catch (IOException ignored) {
+                //Already gone.
+            }
+        }
+    }
+
+    /**
+     * routerAddresses() reads a list of routers, "<host>,<host>,...". Every address a host name has counts.
+     */
+    private static List<InetAddress> routerAddresses(String list) throws UnknownHostException {
+        List<InetAddress> addresses = new ArrayList<>();
+        for (String host : list.split(",")) {
+            addresses.addAll(Arrays.asList(InetAddress.getAllByName(host)));
+        }
+        return addresses;
+    }
+
+    /**
+     * openJournal() opens the move journal and makes sure what was written reaches the disk when the server is
+     * stopped. Games still being played are left unfinished in it, so they can be resumed.
+     */
+    private static MoveJournal openJournal(Path directory) throws IOException {
+        MoveJournal journal = MoveJournal.open(directory);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.out.println("Couldn't close the move journal.");
+            }
+        }, "journal-close"));
+        return journal;
+    }
+
+    /**
+     * newGameThreadFactory() creates the factory for the threads that games are run on.
+     * Virtual threads are looked up by reflection so the server still builds and runs on Java versions
+     * before 21, it just tells you it fell back to platform threads.
+     *
+     * @param kind Either "platform" or "virtual".
+     * @return The thread factory, or null if the kind is unknown.
+     */
+    private static ThreadFactory newGameThreadFactory(String kind) {
+        if (kind.equals("platform")) {
+            return Thread::new;
+        }
+        if (!kind.equals("virtual")) {
+            System.out.println("Unknown thread kind: " + kind + " (expected platform or virtual)");
+            return null;
+        }
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null); //Thread.ofVirtual()
+            Method name = Class.forName("java.lang.Thread$Builder").getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, "game-", 0L); //.name("game-", 0)
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder); //.factory()
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads need Java 21 or newer, using platform threads instead.");
+            return Thread::new;
+        }
+    }
 }
@@ -0,0 +1,199 @@
+package Server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This is the spectator class. It is the queue of frames waiting to be sent to one client that is watching
+ * a game. The game puts frames in with offer() (from the game's thread or event loop) and whoever owns the
+ * client's socket takes them out, so the players never wait for a spectator's socket.
+ *
+ * The queue holds at most QUEUE_LIMIT frames. A spectator that falls that far behind isn't sent the moves
+ * it missed: its queue is thrown away and replaced by a snapshot of the board as it is now, so a slow
+ * spectator never costs the game more than one small queue of memory and never makes it wait.
+ *
+ * The frames are the shared read-only buffers of Spectators. Every spectator gets its own duplicate() of
+ * them, which is its own position over the same bytes, so nothing is copied per spectator.
+ * The queue is guarded by a ReentrantLock rather than the spectator's monitor, a thread-per-game spectator
+ * waits in take() on a virtual thread, and waiting on a monitor would pin its carrier thread.
+ *
+ */
+public class Spectator {
+    public static final int QUEUE_LIMIT = 64; //Frames a spectator can fall behind by before it gets a snapshot instead.
+
+    private final long watching; //The game id the client asked for, or BinaryProtocol.WATCH_ANY.
+    private final boolean allVariants; //False if the client only knows the classic board.
+    private final Runnable ready; //Called when frames arrive at an empty queue, null if the owner waits in take() instead.
+    private final ReentrantLock lock = new ReentrantLock(); //Guards the queue and the flags.
+    private final Condition changed = lock.newCondition(); //Signalled when a frame arrives or no more will.
+    private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+    private boolean ended = false; //Set once no more frames will come, the client is let go once it has the queued ones.
+    private boolean closed = false; //Set once the client is gone.
+
+    /**
+     * @param watching    The game id the client asked for, or BinaryProtocol.WATCH_ANY.
+     * @param allVariants False if the client is from before version 8 and only knows the classic board.
+     * @param ready       Called (from the game's thread) when frames arrive at an empty queue. Null to use take().
+     */
+    public Spectator(long watching, boolean allVariants, Runnable ready) {
+        this.watching = watching;
+        this.allVariants = allVariants;
+        this.ready = ready;
+        Metrics.spectatorJoined();
+    }
+
+    public long watching() {
+        return watching;
+    }
+
+    /**
+     * knowsVariants() tells whether the client can be shown games on other boards than the classic one.
+     */
+    public boolean knowsVariants() {
+        return allVariants;
+    }
+
+    /**
+     * offer() queues a frame for the client. Called by the game's Spectators, which is locked while it does.
+     *
+     * @param frame  The shared read-only frame.
+     * @param update True for a board update, which a snapshot can replace. Anything else is always sent.
+     * @param game   The game, for the snapshot if the client has fallen too far behind.
+     * @return false if the client has gone, so the game can forget about it.
+     */
+    boolean offer(ByteBuffer frame, boolean update, Spectators game) {
+        boolean wasEmpty;
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            wasEmpty = queue.isEmpty();
+            if (queue.size() >= QUEUE_LIMIT) { //Fell behind, the board as it is now replaces everything it missed.
+                queue.clear();
+                queue.add(game.snapshot().duplicate());
+                Metrics.spectatorFellBehind();
+                if (!update) {
+                    queue.add(frame.duplicate());
+                }
+            } else {
+                queue.add(frame.duplicate());
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (wasEmpty && ready != null) {
+            ready.run();
+        }
+        return true;
+    }
+
+    /**
+     * poll() takes the next frame to send.
+     *
+     * @return The frame, or null if there is nothing to send right now.
+     */
+    public ByteBuffer poll() {
+        lock.lock();
+        try {
+            return queue.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * take() waits for the next frame to send.
+     *
+     * @param timeoutMs How long to wait at most.
+     * @return The frame, or null if nothing arrived in time or no more will come (see isEnded()).
+     * @throws InterruptedException
+     */
+    public ByteBuffer take(long timeoutMs) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lock();
+        try {
+            while (queue.isEmpty() && !ended && !closed) {
+                if (remaining <= 0) {
+                    return null;
+                }
+                remaining = changed.awaitNanos(remaining);
+            }
+            return queue.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return queue.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * isEnded() tells whether the game the client watched is over and it was not moved on to another one.
+     * Once the queue is empty too the client can be disconnected.
+     */
+    public boolean isEnded() {
+        lock.lock();
+        try {
+            return ended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * end() says no more frames will come.
+     */
+    void end() {
+        boolean wasEmpty;
+        lock.lock();
+        try {
+            ended = true;
+            wasEmpty = queue.isEmpty();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (wasEmpty && ready != null) { //Nothing left to send, so the owner needs waking up to let the client go.
+            ready.run();
+        }
+    }
+
+    /**
+     * close() is called by the owner once the client is gone. The game drops the spectator the next time it
+     * sends something.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.clear();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        Metrics.spectatorLeft();
+    }
+}
@@ -0,0 +1,172 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is the spectators class. Every game being played has one, it sends every board update of the game
+ * to the clients watching it. An update is encoded exactly once, into a read-only ByteBuffer shared by
+ * every Spectator, however many of them there are. The game only pays for the encoding and for putting the
+ * buffer in each spectator's queue, the writing to the sockets is left to whoever owns them.
+ *
+ * It also keeps the board as of the last update, so a client that starts watching halfway through (or fell
+ * behind) gets a snapshot of it. That snapshot is only encoded when somebody needs it, once per update.
+ * A game nobody watches only copies its board on every update, and its GAME_ID and VARIANT frames aren't
+ * encoded until the first spectator comes along.
+ * Spectators that know about variants (version 8 and up) get a VARIANT frame with the GAME_ID, LiveGames
+ * keeps the older ones away from games that aren't played on the classic board.
+ *
+ */
+public class Spectators {
+    private final long id; //The id the game can be watched with.
+    private final int variant; //The board the game is played on.
+    private ByteBuffer idFrame = null; //The GAME_ID frame every spectator gets first, null until somebody watches.
+    private ByteBuffer variantFrame = null; //The VARIANT frame that follows it for spectators that know about variants.
+    private final ArrayList<Spectator> watching = new ArrayList<>(); //Guarded by this, like everything below.
+    private final Board board; //The board as of the last update.
+    private int sequence = 0;
+    private ByteBuffer snapshot = null; //SNAPSHOT frame of the board, null until somebody needs it after an update.
+    private boolean over = false; //Set once the game is over, nobody can start watching it anymore.
+
+    /**
+     * @param id      The id the game can be watched with.
+     * @param variant The board the game is played on.
+     */
+    public Spectators(long id, int variant) {
+        this.id = id;
+        this.variant = variant;
+        board = Board.create(variant);
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public int variant() {
+        return variant;
+    }
+
+    /**
+     * update() sends the spectators the board, every time the game sends it to its players.
+     *
+     * @param board    The game board.
+     * @param sequence The sequence number the players got with it.
+     * @param whole    True to send the whole board (a resumed game), false to send what changed.
+     */
+    public synchronized void update(Board board, int sequence, boolean whole) {
+        this.board.copyFrom(board);
+        this.sequence = sequence;
+        snapshot = null;
+        if (watching.isEmpty()) {
+            return;
+        }
+        publish(whole ? snapshot() : encode(out -> MessageEncoder.DELTA.board(out, board, sequence)), true);
+    }
+
+    /**
+     * gameOver() tells the spectators how the game ended, from 'X's point of view.
+     *
+     * @param result BinaryProtocol.WIN or BinaryProtocol.DRAW.
+     * @param winner The winners symbol, anything for a draw.
+     */
+    public synchronized void gameOver(int result, char winner) {
+        if (watching.isEmpty()) {
+            return;
+        }
+        int forX = result == BinaryProtocol.DRAW ? result : winner == 'X' ? BinaryProtocol.WIN : BinaryProtocol.LOSE;
+        publish(encode(out -> MessageEncoder.DELTA.gameOver(out, forX)), false);
+    }
+
+    /**
+     * add() starts sending the game to a spectator, beginning with the game id (and variant) and the whole board.
+     * The spectator must be able to show the game's board, see canBeWatchedBy().
+     *
+     * @return false if the game is already over.
+     */
+    synchronized boolean add(Spectator spectator) {
+        if (over) {
+            return false;
+        }
+        if (idFrame == null) { //The first spectator of the game.
+            idFrame = encode(out -> WatchableEncoder.gameId(out, id));
+            variantFrame = encode(out -> VariantEncoder.variantFrame(out, variant));
+        }
+        if (spectator.offer(idFrame, false, this) && (!spectator.knowsVariants() || spectator.offer(variantFrame, false, this))
+                && spectator.offer(snapshot(), true, this)) {
+            watching.add(spectator);
+        }
+        return true;
+    }
+
+    /**
+     * canBeWatchedBy() tells whether a spectator can show the game, a client from before version 8 only
+     * knows the classic board.
+     */
+    public boolean canBeWatchedBy(Spectator spectator) {
+        return spectator.knowsVariants() || variant == BinaryProtocol.VARIANT_CLASSIC;
+    }
+
+    /**
+     * end() is called once the game is over. Nobody can start watching it from then on.
+     *
+     * @return The spectators that were still watching it.
+     */
+    synchronized List<Spectator> end() {
+        over = true;
+        List<Spectator> left = new ArrayList<>(watching);
+        watching.clear();
+        return left;
+    }
+
+    /**
+     * snapshot() is the SNAPSHOT frame of the board as of the last update, encoded the first time it is needed.
+     * Must be called with this locked.
+     */
+    ByteBuffer snapshot() {
+        if (snapshot == null) {
+            snapshot = encode(out -> MessageEncoder.DELTA.snapshot(out, board, sequence));
+        }
+        return snapshot;
+    }
+
+    /**
+     * publish() puts a frame in every spectator's queue, forgetting the ones that have gone.
+     */
+    private void publish(ByteBuffer frame, boolean update) {
+        for (int i = 0; i < watching.size(); ) {
+            if (watching.get(i).offer(frame, update, this)) {
+                i++;
+            } else { //Gone, the last one takes its place.
+                Spectator last = watching.remove(watching.size() - 1);
+                if (i < watching.size()) {
+                    watching.set(i, last);
+                }
+            }
+        }
+    }
+
+    /**
+     * encode() writes a frame once into a read-only heap buffer. Not a direct one, there is one of these per
+     * update of every game and direct memory is slow to get and only given back once the GC gets round to it.
+     * The channel copies the few bytes into its own (reused) direct buffer when it writes them.
+     */
+    private static ByteBuffer encode(Frame frame) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        try {
+            frame.write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            //Can't happen, the frame is written to memory.
+        }
+        return ByteBuffer.wrap(bytes.toByteArray()).asReadOnlyBuffer();
+    }
+
+    private interface Frame {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
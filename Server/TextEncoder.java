@@ -0,0 +1,73 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * This is the text encoder class. It writes the messages exactly the way GameThread used to println()
+ * them, so terminal clients (and the GUI client in text mode) see the same output as always.
+ *
+ */
+public class TextEncoder implements MessageEncoder {
+    private static final Charset CHARSET = Charset.defaultCharset(); //Same charset a PrintWriter uses.
+    private static final String NEW_LINE = System.lineSeparator(); //Same separator println() uses.
+
+    public void variant(DataOutputStream out, int variant) throws IOException {
+        //A terminal client only ever plays the classic board.
+    }
+
+    public void assign(DataOutputStream out, char player) throws IOException {
+        println(out, player == 'X' ? "You are player 1: 'X'" : "You are player 2: 'O'");
+    }
+
+    public void resumable(DataOutputStream out, long gameId, int token) throws IOException {
+        //A terminal client can't resume a game.
+    }
+
+    public void watchable(DataOutputStream out, long gameId) throws IOException {
+        //Nor does it get told about spectators, its output stays the same as always.
+    }
+
+    public void board(DataOutputStream out, Board board, int sequence) throws IOException {
+        out.write(board.render().getBytes(CHARSET));
+    }
+
+    public void snapshot(DataOutputStream out, Board board, int sequence) throws IOException {
+        board(out, board, sequence);
+    }
+
+    public void yourTurn(DataOutputStream out, char player) throws IOException {
+        println(out, "Please enter a column number (0-6) to place '" + player + "': ");
+    }
+
+    public void waiting(DataOutputStream out) throws IOException {
+        println(out, "Waiting for other player...");
+    }
+
+    public void invalidMove(DataOutputStream out, int reason) throws IOException {
+        if (reason == BinaryProtocol.COLUMN_FULL) {
+            println(out, "That column is full! Please select another one");
+        } else if (reason == BinaryProtocol.INVALID_COLUMN) {
+            println(out, "Invalid column number. Try again!");
+        } else {
+            println(out, "Invalid Input. Try again!");
+        }
+    }
+
+    public void gameOver(DataOutputStream out, int result) throws IOException {
+        if (result == BinaryProtocol.WIN) {
+            println(out, "You Win! New game starting in 5 seconds...");
+        } else if (result == BinaryProtocol.LOSE) {
+            println(out, "You Lose! New game starting in 5 seconds...");
+        } else {
+            println(out, "It's a draw! New game starting in 5 seconds...");
+        }
+    }
+
+    private static void println(DataOutputStream out, String line) throws IOException {
+        out.write((line + NEW_LINE).getBytes(CHARSET));
+    }
+}
@@ -0,0 +1,164 @@
+package Server;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is the timing wheel class. It is the one place the server keeps every deadline it has: the move
+ * clocks, the heartbeats of idle connections, the pause between games and so on. Scheduling and cancelling
+ * a timeout are both O(1) whatever the number of timeouts, so millions of them cost about a small object
+ * each rather than a thread or a socket timeout.
+ *
+ * The wheel is an array of WHEEL_SIZE buckets, one per TICK_MS. A timeout goes in the bucket its deadline
+ * falls in, with the number of whole turns of the wheel still to go before it is due. The wheel thread
+ * moves on one bucket every tick and runs whatever in it is due. Deadlines are rounded up to the next tick,
+ * so a timeout never runs early but may run up to a tick late.
+ *
+ * Timeouts are scheduled from any thread through a queue the wheel thread empties every tick, so only the
+ * wheel thread ever touches the buckets. The tasks run on the wheel thread and must be quick, anything that
+ * can block has to be handed to another thread (an event loop's execute(), for instance).
+ *
+ */
+public class TimingWheel {
+    public static final long TICK_MS = 10; //How precise the deadlines are.
+    public static final int WHEEL_SIZE = 1024; //Buckets, a whole turn of the wheel is just over 10 seconds.
+    public static final TimingWheel SHARED = new TimingWheel(); //The wheel every part of the server uses.
+
+    private final Bucket[] buckets = new Bucket[WHEEL_SIZE];
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>(); //Scheduled since the last tick.
+    private final long startNanos = System.nanoTime();
+    private long tick = 0; //The next tick to run, only used by the wheel thread.
+
+    private TimingWheel() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            buckets[i] = new Bucket();
+        }
+        Thread thread = new Thread(this::run, "timing-wheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * schedule() runs the task on the wheel thread once the delay is over. Safe to call from any thread.
+     *
+     * @param task    The task, it must not block.
+     * @param delayMs Delay in milliseconds.
+     * @return The timeout, to cancel it with.
+     */
+    public Timeout schedule(Runnable task, long delayMs) {
+        long deadline = (System.nanoTime() - startNanos + delayMs * 1_000_000L) / (TICK_MS * 1_000_000L) + 1; //Rounded up, never early.
+        Timeout timeout = new Timeout(task, deadline);
+        added.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (true) {
+            long due = startNanos + tick * TICK_MS * 1_000_000L;
+            long sleepNanos = due - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    Thread.sleep(sleepNanos / 1_000_000L, (int) (sleepNanos % 1_000_000L));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            Timeout timeout;
+            while ((timeout = added.poll()) != null) { //Puts everything scheduled since the last tick in its bucket.
+                if (timeout.state.get() != Timeout.CANCELLED) {
+                    long ticks = Math.max(timeout.deadline, tick); //Already due, it runs this tick.
+                    timeout.rounds = (ticks - tick) / WHEEL_SIZE;
+                    buckets[(int) (ticks % WHEEL_SIZE)].add(timeout);
+                }
+            }
+            buckets[(int) (tick % WHEEL_SIZE)].expire();
+            tick++;
+        }
+    }
+
+    /**
+     * A scheduled task. Cancelling it only marks it, the wheel drops it when it next passes its bucket.
+     */
+    public static final class Timeout {
+        private static final int WAITING = 0, CANCELLED = 1, EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline; //The tick it is due on.
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private long rounds; //Whole turns of the wheel still to go, only used by the wheel thread.
+        private Timeout previous, next; //The other timeouts in the same bucket.
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * cancel() stops the task from running.
+         *
+         * @return false if it is too late, the task has already run (or is running).
+         */
+        public boolean cancel() {
+            return state.compareAndSet(WAITING, CANCELLED);
+        }
+    }
+
+    /**
+     * One slot of the wheel, a doubly linked list so any timeout can be taken out in O(1).
+     */
+    private static final class Bucket {
+        private Timeout head, tail;
+
+        void add(Timeout timeout) {
+            timeout.previous = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.previous = timeout.next = null;
+        }
+
+        /**
+         * expire() runs every timeout in the bucket that is due, drops the cancelled ones and counts the
+         * others down a turn.
+         */
+        void expire() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.state.get() == Timeout.CANCELLED) {
+                    remove(timeout);
+                } else if (timeout.rounds <= 0) {
+                    remove(timeout);
+                    if (timeout.state.compareAndSet(Timeout.WAITING, Timeout.EXPIRED)) {
+                        try {
+                            timeout.task.run();
+                        } catch (RuntimeException e) { //One broken task mustn't stop every other timeout in the server.
+                            System.out.println("A timeout failed.");
+                            System.out.println(e);
+                        }
+                    }
+                } else {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
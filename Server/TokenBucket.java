@@ -0,0 +1,84 @@
+package Server;
+
+/**
+ * This is the token bucket class. Every client connection has one, it limits how much input the client may
+ * send that the game has no use for: moves sent when it isn't their turn, nonsense, columns that aren't on
+ * the board or are full, resyncs, pongs and anything sent while waiting in the lobby. A move the game takes
+ * is free, the opponent's turn already limits how often those come.
+ *
+ * The bucket holds up to a burst of tokens and fills up at the rate, and every wasted input takes one. The
+ * input has already been dealt with by then, so the bucket can go into debt, by up to a burst (a client that
+ * wasted a lot at once waits for it, but not forever). A connection whose bucket is empty stops reading from
+ * the client until there is a token again (see Connection and PlayerConnection), so whatever else the client
+ * sends waits in the socket and, once that is full, in the client. It is only ever used by the thread
+ * reading the connection.
+ *
+ */
+public class TokenBucket {
+    private static volatile int defaultRate = 20; //Tokens per second for every connection from then on, 0 for no limit.
+    private static volatile int defaultBurst = 40;
+
+    private final double perNano; //Tokens added per nanosecond.
+    private final double burst; //The most tokens the bucket holds.
+    private double tokens;
+    private long filledAt = System.nanoTime(); //When tokens was last brought up to date.
+
+    /**
+     * configure() sets the limit of every connection made from then on.
+     *
+     * @param perSecond How many wasted inputs a second a client may send, 0 for no limit.
+     * @param burst     How many it may send at once.
+     */
+    public static void configure(int perSecond, int burst) {
+        defaultRate = perSecond;
+        defaultBurst = burst;
+    }
+
+    /**
+     * A bucket with the configured limit, full to begin with.
+     */
+    public TokenBucket() {
+        this(defaultRate, defaultBurst);
+    }
+
+    /**
+     * @param perSecond Tokens added per second, 0 for a bucket that never runs out.
+     * @param burst     The most tokens the bucket holds, it starts out full.
+     */
+    public TokenBucket(int perSecond, int burst) {
+        perNano = perSecond / 1e9;
+        this.burst = Math.max(burst, 1);
+        tokens = this.burst;
+    }
+
+    /**
+     * take() takes a token for a wasted input.
+     *
+     * @return false if there was none, the client should be read no more until nanosUntilToken() is 0.
+     */
+    public boolean take() {
+        if (perNano == 0) {
+            return true;
+        }
+        fill();
+        tokens = Math.max(tokens - 1, -burst);
+        return tokens >= 0;
+    }
+
+    /**
+     * nanosUntilToken() is how long until the bucket has a whole token again.
+     */
+    public long nanosUntilToken() {
+        if (perNano == 0) {
+            return 0;
+        }
+        fill();
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / perNano);
+    }
+
+    private void fill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - filledAt) * perNano);
+        filledAt = now;
+    }
+}
@@ -0,0 +1,114 @@
+package Server;
+
+import java.util.Arrays;
+
+/**
+ * This is the transposition table class. The same connect 4 position can be reached by lots of different
+ * move orders, so the search remembers what it found out about every position it searched and looks it up
+ * before searching it again.
+ *
+ * The table has a fixed size and is made of two long arrays, nothing is allocated once it is created.
+ * Each position hashes to a bucket of two slots: the first keeps whichever entry was searched deepest,
+ * the second always takes the newest entry. Every entry is packed into one long (see pack()).
+ *
+ * One table is shared by every search thread without any locks. A slot stores the key xor-ed with the
+ * entry, so if two threads write the same slot at once and the key and entry end up from different
+ * writes, the key no longer checks out and the slot just looks empty.
+ *
+ */
+public class TranspositionTable {
+    public static final int EXACT = 0; //The score is the real score of the position.
+    public static final int LOWER_BOUND = 1; //The real score is at least the score (the search was cut off).
+    public static final int UPPER_BOUND = 2; //The real score is at most the score (no move got above alpha).
+    public static final int NO_MOVE = 15; //Move of an entry that has no best move.
+
+    private static final long VALID = 1L << 30; //Set in every entry so an entry is never 0.
+
+    private final long[] keys; //Key xor entry of every slot.
+    private final long[] entries;
+    private final int bucketBits;
+
+    /**
+     * @param bucketBits The table holds 2 ^ bucketBits buckets of two slots, 32 bytes each.
+     */
+    public TranspositionTable(int bucketBits) {
+        this.bucketBits = bucketBits;
+        keys = new long[2 << bucketBits];
+        entries = new long[2 << bucketBits];
+    }
+
+    /**
+     * probe() looks up what is known about a position.
+     *
+     * @param key The key of the position, see GameBoard.key().
+     * @return The entry, or 0 if the position isn't in the table.
+     */
+    public long probe(long key) {
+        int slot = bucket(key);
+        long entry = entries[slot];
+        if ((keys[slot] ^ entry) == key && entry != 0) {
+            return entry;
+        }
+        entry = entries[slot + 1];
+        if ((keys[slot + 1] ^ entry) == key && entry != 0) {
+            return entry;
+        }
+        return 0;
+    }
+
+    /**
+     * store() remembers what the search found out about a position.
+     *
+     * @param key   The key of the position.
+     * @param depth How deep the position was searched.
+     * @param score The score the search found.
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND.
+     * @param move  The best move found, or NO_MOVE.
+     */
+    public void store(long key, int depth, int score, int bound, int move) {
+        long entry = pack(depth, score, bound, move);
+        int slot = bucket(key);
+        long deepest = entries[slot];
+        if (depth < depth(deepest) && (keys[slot] ^ deepest) != key) { //Keep the deeper entry, use the other slot.
+            slot++;
+        }
+        keys[slot] = key ^ entry;
+        entries[slot] = entry;
+    }
+
+    /**
+     * clear() forgets everything.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(entries, 0);
+    }
+
+    private int bucket(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - bucketBits)) << 1; //Fibonacci hashing, the top bits are the best mixed.
+    }
+
+    /**
+     * pack() squeezes an entry into a long: the score in the low 16 bits, then 8 bits of depth, 2 bits of
+     * bound, 4 bits of move and the valid bit.
+     */
+    private static long pack(int depth, int score, int bound, int move) {
+        return (score & 0xFFFFL) | ((long) depth << 16) | ((long) bound << 24) | ((long) move << 26) | VALID;
+    }
+
+    public static int score(long entry) {
+        return (short) entry;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 16) & 0xFF;
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> 24) & 0x3;
+    }
+
+    public static int move(long entry) {
+        return (int) (entry >>> 26) & 0xF;
+    }
+}
@@ -0,0 +1,230 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+import java.util.Arrays;
+
+/**
+ * This is the variant board class. It is the Board of the variants whose boards are too big for the
+ * bitboards of the classic GameBoard (see BinaryProtocol's VARIANT_ constants), like 8 x 9 or 10 x 12 connect 5.
+ * Board.create() picks it for any variant but the classic one.
+ *
+ * Instead of looking along every line through the last piece for a win, the board keeps the length of the
+ * runs of pieces in each of the four directions. A run's length is kept at both of its ends. The cell a
+ * piece drops into is empty, so the runs it joins (of the same player) end right next to it on either side,
+ * their lengths are read from there and the joined run's length is written at its two new ends. So
+ * checking a move takes the same few steps however big the board is, and there is no scan at all. The
+ * board takes five bytes per cell (the piece and a run length per direction) plus the column heights.
+ *
+ * Only what a game needs is here, the Board interface. undo(), key() and the bitboards are the classic
+ * GameBoard's only, so the computer player (and everything it uses) only ever plays the classic board.
+ *
+ */
+public class VariantBoard implements Board {
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {-1, 1}}; //Row and column steps: horizontal, vertical and both diagonals.
+
+    private final int variant;
+    private final int rows, cols, connect;
+    private final byte[] cells; //'X', 'O' or 0 for every cell, row by row from the top.
+    private final byte[][] runs; //Per direction, the length of the run of pieces a cell is at the end of (stale inside a run).
+    private final int[] height; //Amount of pieces in every column.
+    private int moveCount = 0;
+    private int placedRow = 0; //The row index of the last piece that was placed.
+    private int placedCol = 0; //The column index of the last piece that was placed.
+    private char winner = ' '; //The player who got a line of connect pieces, ' ' while nobody has.
+
+    /**
+     * @param variant One of BinaryProtocol's VARIANT_ constants.
+     */
+    public VariantBoard(int variant) {
+        this.variant = variant;
+        rows = BinaryProtocol.rows(variant);
+        cols = BinaryProtocol.cols(variant);
+        connect = BinaryProtocol.connect(variant);
+        cells = new byte[rows * cols];
+        runs = new byte[DIRECTIONS.length][rows * cols];
+        height = new int[cols];
+    }
+
+    @Override
+    public int variant() {
+        return variant;
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int cols() {
+        return cols;
+    }
+
+    @Override
+    public int connect() {
+        return connect;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(cells, (byte) 0);
+        for (byte[] run : runs) {
+            Arrays.fill(run, (byte) 0);
+        }
+        Arrays.fill(height, 0);
+        moveCount = 0;
+        placedRow = 0;
+        placedCol = 0;
+        winner = ' ';
+    }
+
+    /**
+     * copyFrom() makes this board the same as another one of the same variant.
+     *
+     * @param other The board to copy, a VariantBoard of the same variant.
+     */
+    @Override
+    public void copyFrom(Board other) {
+        VariantBoard board = (VariantBoard) other;
+        System.arraycopy(board.cells, 0, cells, 0, cells.length);
+        for (int d = 0; d < runs.length; d++) {
+            System.arraycopy(board.runs[d], 0, runs[d], 0, cells.length);
+        }
+        System.arraycopy(board.height, 0, height, 0, cols);
+        moveCount = board.moveCount;
+        placedRow = board.placedRow;
+        placedCol = board.placedCol;
+        winner = board.winner;
+    }
+
+    @Override
+    public char pieceAt(int row, int col) {
+        byte piece = cells[row * cols + col];
+        return piece == 0 ? ' ' : (char) piece;
+    }
+
+    @Override
+    public boolean canPlay(int col) {
+        return height[col] < rows;
+    }
+
+    /**
+     * dropPiece() places the players piece in the lowest empty spot in the column, and joins it up with the
+     * runs of their pieces next to it.
+     *
+     * @param col    The column to place in (must be on the board)
+     * @param player The char symbol of the player (either 'X' or 'O')
+     * @return true if the piece was placed, false if the column is full
+     */
+    @Override
+    public boolean dropPiece(int col, char player) {
+        if (!canPlay(col)) {
+            return false;
+        }
+        int row = rows - 1 - height[col];
+        int cell = row * cols + col;
+        cells[cell] = (byte) player;
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            int rowStep = DIRECTIONS[d][0];
+            int colStep = DIRECTIONS[d][1];
+            int before = runAt(d, row - rowStep, col - colStep, player); //The run this piece carries on, on one side...
+            int after = runAt(d, row + rowStep, col + colStep, player); //...and on the other.
+            int length = before + 1 + after;
+            int step = rowStep * cols + colStep; //The same steps in the cells array.
+            runs[d][cell] = (byte) length;
+            runs[d][cell - before * step] = (byte) length; //The two ends of the joined run.
+            runs[d][cell + after * step] = (byte) length;
+            if (length >= connect && winner == ' ') {
+                winner = player;
+            }
+        }
+        placedRow = row; //Keeps track of last placed row.
+        placedCol = col; //Keeps track of last placed col.
+        height[col]++;
+        moveCount++;
+        return true;
+    }
+
+    /**
+     * runAt() is the length of the players run that ends at a cell, 0 if the cell is off the board or not theirs.
+     * Only ever called for a cell next to an empty one, which is always the end of its run.
+     */
+    private int runAt(int direction, int row, int col, char player) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols || cells[row * cols + col] != player) {
+            return 0;
+        }
+        return runs[direction][row * cols + col];
+    }
+
+    /**
+     * winCheck() is the same check as GameBoard's, the runs already know whether the player has a line.
+     *
+     * @param player The symbol of the player to check win for.
+     * @return The player symbol if they have won, ' ' if not.
+     */
+    @Override
+    public char winCheck(char player) {
+        return winner == player ? player : ' ';
+    }
+
+    @Override
+    public boolean isFull() {
+        return moveCount == rows * cols;
+    }
+
+    @Override
+    public char currentPlayer() {
+        return (moveCount & 1) == 0 ? 'X' : 'O';
+    }
+
+    @Override
+    public int moveCount() {
+        return moveCount;
+    }
+
+    @Override
+    public int height(int col) {
+        return height[col];
+    }
+
+    @Override
+    public int placedRow() {
+        return placedRow;
+    }
+
+    @Override
+    public int placedCol() {
+        return placedCol;
+    }
+
+    /**
+     * render() builds the terminal-friendly version of the board, the same way GameBoard does for the
+     * classic one.
+     *
+     * @return The rendered board, including the trailing line separator.
+     */
+    @Override
+    public String render() {
+        String newLine = System.lineSeparator();
+        String edge = "-".repeat(cols * 4 + 1);
+        StringBuilder sb = new StringBuilder(cells.length * 10 + 128);
+        sb.append(edge).append(newLine); //Start of game board output
+        for (int row = 0; row < rows; row++) {
+            sb.append("| ");
+            for (int col = 0; col < cols; col++) {
+                sb.append(pieceAt(row, col)).append(" | ");
+            }
+            sb.append(newLine);
+            if (row < rows - 1) {
+                sb.append(newLine);
+            }
+        }
+        sb.append(edge).append(newLine); //End of game board output
+        for (int col = 0; col < cols; col++) {
+            sb.append(" [").append(col).append(']');
+        }
+        sb.append(newLine);
+        return sb.toString();
+    }
+}
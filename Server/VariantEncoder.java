@@ -0,0 +1,27 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * This is the variant encoder class used for version 8 of the binary protocol. It is the WatchableEncoder
+ * plus the VARIANT frame, which tells the player which board the game is played on before the game starts
+ * (see Board.create()). Spectators are sent the same frame for the game they are watching.
+ *
+ */
+public class VariantEncoder extends WatchableEncoder {
+
+    public void variant(DataOutputStream out, int variant) throws IOException {
+        variantFrame(out, variant);
+    }
+
+    /**
+     * variantFrame() writes a VARIANT frame.
+     */
+    public static void variantFrame(DataOutputStream out, int variant) throws IOException {
+        BinaryProtocol.writeHeader(out, BinaryProtocol.VARIANT, 1);
+        out.writeByte(variant);
+    }
+}
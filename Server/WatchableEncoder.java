@@ -0,0 +1,27 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * This is the watchable encoder class used for version 6 of the binary protocol. It is the ResumableEncoder
+ * plus the GAME_ID frame, which tells the player the id other clients can watch their game with (see
+ * LiveGames). Spectators are sent the same frame for the game they are watching.
+ *
+ */
+public class WatchableEncoder extends ResumableEncoder {
+
+    public void watchable(DataOutputStream out, long gameId) throws IOException {
+        gameId(out, gameId);
+    }
+
+    /**
+     * gameId() writes a GAME_ID frame.
+     */
+    public static void gameId(DataOutputStream out, long gameId) throws IOException {
+        BinaryProtocol.writeHeader(out, BinaryProtocol.GAME_ID, 8);
+        out.writeLong(gameId);
+    }
+}
@@ -0,0 +1,185 @@
+package Server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This is the game board test class. The bitboard replaced a 6 x 7 char array that was scanned for wins
+ * around the last piece placed, so it plays games on both and checks they agree after every move: the same
+ * pieces, the same winner (rows, columns, both diagonals, right up to the edges) and the same full board.
+ *
+ */
+class GameBoardTest {
+
+    @Test
+    void randomGamesMatchTheCharBoard() {
+        Random random = new Random(3);
+        for (int game = 0; game < 20_000; game++) {
+            play(random);
+        }
+    }
+
+    @Test
+    void winsAtTheEdges() {
+        assertWins('X', 0, 1, 0, 1, 0, 1, 0); //Column 0.
+        assertWins('X', 6, 5, 6, 5, 6, 5, 6); //Column 6.
+        assertWins('X', 3, 3, 4, 4, 5, 5, 6); //Bottom row up to column 6.
+        assertWins('O', 6, 0, 5, 1, 6, 2, 5, 3); //Bottom row from column 0.
+        assertWins('X', 0, 1, 1, 2, 2, 3, 2, 3, 3, 6, 3); //Up to the right from the corner.
+        assertWins('X', 6, 5, 5, 4, 4, 3, 4, 3, 3, 0, 3); //Up to the left from the other corner.
+        assertWins('X', 0, 1, 1, 3, 3, 3, 3, 2, 6, 2, 2); //The same line, finished in the middle.
+    }
+
+    @Test
+    void fullBoardWithoutAWinner() {
+        int[] moves = {0, 1, 0, 1, 0, 1, 1, 0, 1, 0, 1, 0, 2, 3, 2, 3, 2, 3, 3, 2, 3, 2, 3, 2, 4, 5, 4, 5, 4, 5, 5, 4, 5, 4, 5, 4, 6, 6, 6, 6, 6, 6};
+        GameBoard board = new GameBoard();
+        char[][] reference = emptyReference();
+        char player = 'X';
+        for (int move = 0; move < moves.length; move++) {
+            assertFalse(board.isFull());
+            drop(board, reference, moves[move], player);
+            assertEquals(' ', board.winCheck(player), "Move " + move);
+            assertEquals(' ', referenceWinCheck(reference, placedRow(reference, moves[move]), moves[move], player), "Move " + move);
+            player = player == 'X' ? 'O' : 'X';
+        }
+        assertTrue(board.isFull());
+        assertTrue(referenceIsFull(reference));
+    }
+
+    /**
+     * play() plays one random game on both boards until somebody wins or the board is full.
+     */
+    private static void play(Random random) {
+        GameBoard board = new GameBoard();
+        char[][] reference = emptyReference();
+        char player = 'X';
+        while (true) {
+            int col = random.nextInt(GameBoard.COLS);
+            if (!board.canPlay(col)) {
+                assertNotEquals(' ', reference[0][col], "Column " + col + " isn't full on the char board");
+                continue;
+            }
+            drop(board, reference, col, player);
+            int row = placedRow(reference, col);
+            assertEquals(row, board.placedRow());
+            assertEquals(col, board.placedCol());
+            for (int r = 0; r < GameBoard.ROWS; r++) {
+                for (int c = 0; c < GameBoard.COLS; c++) {
+                    assertEquals(reference[r][c], board.pieceAt(r, c));
+                }
+            }
+            char winner = referenceWinCheck(reference, row, col, player);
+            assertEquals(winner, board.winCheck(player));
+            char other = player == 'X' ? 'O' : 'X';
+            assertEquals(' ', board.winCheck(other)); //Their last move didn't win, and this one can't have made them.
+            assertEquals(referenceIsFull(reference), board.isFull());
+            if (winner != ' ' || board.isFull()) {
+                return;
+            }
+            player = other;
+        }
+    }
+
+    private static void assertWins(char winner, int... moves) {
+        GameBoard board = new GameBoard();
+        char[][] reference = emptyReference();
+        char player = 'X';
+        for (int move = 0; move < moves.length; move++) {
+            drop(board, reference, moves[move], player);
+            char expected = move == moves.length - 1 ? winner : ' '; //Only the last move wins.
+            assertEquals(expected, referenceWinCheck(reference, placedRow(reference, moves[move]), moves[move], player), "Move " + move);
+            assertEquals(expected, board.winCheck(player), "Move " + move);
+            player = player == 'X' ? 'O' : 'X';
+        }
+    }
+
+    private static void drop(GameBoard board, char[][] reference, int col, char player) {
+        assertTrue(board.dropPiece(col, player));
+        for (int row = GameBoard.ROWS - 1; row >= 0; row--) {
+            if (reference[row][col] == ' ') {
+                reference[row][col] = player;
+                return;
+            }
+        }
+        throw new AssertionError("Column " + col + " is full on the char board");
+    }
+
+    private static char[][] emptyReference() {
+        char[][] reference = new char[GameBoard.ROWS][GameBoard.COLS];
+        for (char[] row : reference) {
+            Arrays.fill(row, ' ');
+        }
+        return reference;
+    }
+
+    /**
+     * placedRow() is the row of the top piece of a column, the one just dropped in it.
+     */
+    private static int placedRow(char[][] reference, int col) {
+        int row = 0;
+        while (reference[row][col] == ' ') {
+            row++;
+        }
+        return row;
+    }
+
+    private static boolean referenceIsFull(char[][] reference) {
+        for (int col = 0; col < GameBoard.COLS; col++) {
+            if (reference[0][col] == ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * referenceWinCheck() is the win check the char board had: the row, the column and both diagonals
+     * through the last piece placed.
+     */
+    private static char referenceWinCheck(char[][] board, int placedRow, int placedCol, char player) {
+        int pieceCount = 0;
+        for (int col = 0; col < GameBoard.COLS; col++) { //The row.
+            pieceCount = board[placedRow][col] == player ? pieceCount + 1 : 0;
+            if (pieceCount == 4) {
+                return player;
+            }
+        }
+        pieceCount = 0;
+        for (int row = placedRow; row < GameBoard.ROWS && board[row][placedCol] == player; row++) { //Down the column.
+            if (++pieceCount == 4) {
+                return player;
+            }
+        }
+        if (1 + count(board, placedRow, placedCol, -1, -1, player) + count(board, placedRow, placedCol, 1, 1, player) >= 4) {
+            return player;
+        }
+        if (1 + count(board, placedRow, placedCol, 1, -1, player) + count(board, placedRow, placedCol, -1, 1, player) >= 4) {
+            return player;
+        }
+        return ' ';
+    }
+
+    /**
+     * count() counts the player's pieces going one way from a position, not counting the position itself.
+     */
+    private static int count(char[][] board, int row, int col, int rowStep, int colStep, char player) {
+        int pieceCount = 0;
+        for (int i = 1; i < 4; i++) {
+            int r = row + i * rowStep;
+            int c = col + i * colStep;
+            if (r < 0 || r >= GameBoard.ROWS || c < 0 || c >= GameBoard.COLS || board[r][c] != player) {
+                break;
+            }
+            pieceCount++;
+        }
+        return pieceCount;
+    }
+}
@@ -0,0 +1,105 @@
+package Server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This is the hash ring test class. It routes game ids the way the Router makes them (one after the other from
+ * a time in microseconds) and checks the ring spreads them evenly over the game servers, that taking a server
+ * down only moves that server's games and spreads them over the others, and that they all come back once it is
+ * up again.
+ *
+ */
+class HashRingTest {
+    private static final long FIRST_ID = 1_700_000_000_000L * 1000; //Like the router's first id.
+    private static final int KEYS = 100_000;
+    private static final List<String> NODES = List.of("game1:1025", "game2:1025", "game3:1025", "game4:1025");
+
+    @Test
+    void spreadsKeysEvenly() {
+        HashRing<String> ring = new HashRing<>(NODES);
+        Map<String, Integer> counts = count(ring);
+        assertEquals(NODES.size(), counts.size());
+        for (String node : NODES) {
+            double share = counts.get(node) / (double) KEYS;
+            assertTrue(share > 0.15 && share < 0.35, node + " has " + share + " of the keys"); //A quarter each, give or take.
+        }
+    }
+
+    @Test
+    void takingANodeDownOnlyMovesItsKeys() {
+        HashRing<String> ring = new HashRing<>(NODES);
+        List<String> before = assign(ring);
+        String down = NODES.get(2);
+        assertTrue(ring.setUp(down, false));
+        assertFalse(ring.isUp(down));
+        List<String> after = assign(ring);
+
+        Map<String, Integer> movedTo = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            if (before.get(i).equals(down)) {
+                assertNotEquals(down, after.get(i));
+                movedTo.merge(after.get(i), 1, Integer::sum);
+            } else {
+                assertEquals(before.get(i), after.get(i), "Key " + i + " moved off a node that is still up");
+            }
+        }
+        assertEquals(NODES.size() - 1, movedTo.size(), "The dead node's keys went to " + movedTo); //Spread over every other node.
+
+        assertTrue(ring.setUp(down, true));
+        assertEquals(before, assign(ring)); //Back where they were.
+    }
+
+    @Test
+    void theSamePlacesWhateverTheOrder() {
+        List<String> reversed = new ArrayList<>(NODES);
+        Collections.reverse(reversed);
+        assertEquals(assign(new HashRing<>(NODES)), assign(new HashRing<>(reversed))); //Every router agrees.
+    }
+
+    @Test
+    void nothingWhenEveryNodeIsDown() {
+        HashRing<String> ring = new HashRing<>(NODES);
+        for (String node : NODES) {
+            ring.setUp(node, false);
+        }
+        assertNull(ring.node(FIRST_ID));
+        assertNull(new HashRing<String>(List.of()).node(FIRST_ID));
+    }
+
+    @Test
+    void setUpOnlyReportsChanges() {
+        HashRing<String> ring = new HashRing<>(NODES);
+        assertFalse(ring.setUp(NODES.get(0), true)); //Already up.
+        assertFalse(ring.setUp("elsewhere:1025", false)); //Not on the ring.
+        assertTrue(ring.setUp(NODES.get(0), false));
+        assertFalse(ring.setUp(NODES.get(0), false));
+    }
+
+    private static List<String> assign(HashRing<String> ring) {
+        List<String> nodes = new ArrayList<>(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            nodes.add(ring.node(FIRST_ID + i));
+        }
+        return nodes;
+    }
+
+    private static Map<String, Integer> count(HashRing<String> ring) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String node : assign(ring)) {
+            counts.merge(node, 1, Integer::sum);
+        }
+        return counts;
+    }
+}
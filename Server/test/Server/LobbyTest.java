@@ -0,0 +1,179 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This is the lobby test class. Players are only paired with players who want the same board variant and
+ * whose rating is in the same band, the one who waited is player 1, and a player who left while waiting is
+ * never paired. The waiting slots are taken and emptied with compareAndSet, so it also has a crowd of threads
+ * enqueue players at once and checks every one of them ended up in exactly one game of their own kind.
+ *
+ */
+class LobbyTest {
+
+    @Test
+    void pairsByVariantAndRatingBand() {
+        List<Player[]> games = new ArrayList<>();
+        Lobby<Player> lobby = new Lobby<>((from, p1, p2) -> games.add(new Player[]{p1, p2}));
+        Player classic = new Player(BinaryProtocol.VARIANT_CLASSIC, 1000);
+        Player large = new Player(BinaryProtocol.VARIANT_LARGE, 1000);
+        Player grand = new Player(BinaryProtocol.VARIANT_GRAND, 1000);
+        Player classicOtherBand = new Player(BinaryProtocol.VARIANT_CLASSIC, 1200);
+        lobby.enqueue(classic);
+        lobby.enqueue(large);
+        lobby.enqueue(grand);
+        lobby.enqueue(classicOtherBand);
+        assertEquals(0, games.size());
+        assertEquals(4, lobby.queueDepth());
+
+        Player classicSameBand = new Player(BinaryProtocol.VARIANT_CLASSIC, 1199);
+        lobby.enqueue(classicSameBand);
+        assertEquals(1, games.size());
+        assertSame(classic, games.get(0)[0]); //Waited first, so player 1.
+        assertSame(classicSameBand, games.get(0)[1]);
+
+        Player largeSameBand = new Player(BinaryProtocol.VARIANT_LARGE, 1050);
+        lobby.enqueue(largeSameBand);
+        assertEquals(2, games.size());
+        assertSame(large, games.get(1)[0]);
+        assertSame(largeSameBand, games.get(1)[1]);
+        assertEquals(2, lobby.queueDepth()); //The grand one and the other band are still waiting.
+        assertEquals(2, lobby.matches());
+    }
+
+    @Test
+    void playersWhoLeftAreNotPaired() {
+        List<Player[]> games = new ArrayList<>();
+        Lobby<Player> lobby = new Lobby<>((from, p1, p2) -> games.add(new Player[]{p1, p2}));
+        Player left = new Player(BinaryProtocol.VARIANT_CLASSIC, 0);
+        lobby.enqueue(left);
+        left.alive = false;
+
+        Player next = new Player(BinaryProtocol.VARIANT_CLASSIC, 0);
+        lobby.enqueue(next); //Finds the slot taken by somebody who left, and waits in it instead.
+        assertEquals(0, games.size());
+        assertTrue(left.closed);
+        assertEquals(1, lobby.abandoned());
+        assertEquals(1, lobby.queueDepth());
+
+        Player last = new Player(BinaryProtocol.VARIANT_CLASSIC, 0);
+        lobby.enqueue(last);
+        assertEquals(1, games.size());
+        assertSame(next, games.get(0)[0]);
+        assertSame(last, games.get(0)[1]);
+    }
+
+    @Test
+    void computerGamesDoNotWait() {
+        List<Player> computerGames = new ArrayList<>();
+        List<Player[]> games = new ArrayList<>();
+        Lobby<Player> lobby = new Lobby<>((from, p1, p2) -> games.add(new Player[]{p1, p2}), (from, p1) -> computerGames.add(p1));
+        Player player = new Player(BinaryProtocol.VARIANT_CLASSIC, 0);
+        player.computerLevel = 2;
+        lobby.enqueue(player);
+        assertEquals(List.of(player), computerGames);
+        assertEquals(0, lobby.queueDepth());
+
+        Lobby<Player> noComputer = new Lobby<>((from, p1, p2) -> games.add(new Player[]{p1, p2})); //Waits for a person instead.
+        noComputer.enqueue(player);
+        assertEquals(1, noComputer.queueDepth());
+        assertEquals(0, games.size());
+    }
+
+    @Test
+    void concurrentPlayersArePairedOnceEach() throws InterruptedException {
+        int threads = 8;
+        int perThread = 2_000; //Even, so every kind of game ends up with an even amount of players.
+        int[][] kinds = {{BinaryProtocol.VARIANT_CLASSIC, 0}, {BinaryProtocol.VARIANT_CLASSIC, 1500}, {BinaryProtocol.VARIANT_LARGE, 0}, {BinaryProtocol.VARIANT_GRAND, 0}};
+        ConcurrentLinkedQueue<Player[]> games = new ConcurrentLinkedQueue<>();
+        Lobby<Player> lobby = new Lobby<>((from, p1, p2) -> games.add(new Player[]{p1, p2}));
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    int[] kind = kinds[i % kinds.length];
+                    lobby.enqueue(new Player(kind[0], kind[1]));
+                }
+                done.countDown();
+            }).start();
+        }
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        assertEquals(threads * perThread / 2, games.size());
+        assertEquals(0, lobby.queueDepth());
+        Set<Player> paired = new HashSet<>();
+        for (Player[] game : games) {
+            assertTrue(paired.add(game[0]) && paired.add(game[1]), "A player was paired twice");
+            assertEquals(game[0].variant, game[1].variant);
+            assertEquals(game[0].rating / Lobby.RATING_BAND_WIDTH, game[1].rating / Lobby.RATING_BAND_WIDTH);
+        }
+    }
+
+    /**
+     * A player connected straight to us, who asked for a variant and claimed a rating.
+     */
+    private static final class Player implements Lobby.Entrant {
+        private final int variant;
+        private final int rating;
+        private int computerLevel = 0;
+        private volatile boolean alive = true;
+        private volatile boolean closed = false;
+
+        Player(int variant, int rating) {
+            this.variant = variant;
+            this.rating = rating;
+        }
+
+        public int variant() {
+            return variant;
+        }
+
+        public int rating() {
+            return rating;
+        }
+
+        public int computerLevel() {
+            return computerLevel;
+        }
+
+        public boolean isRouted() {
+            return false;
+        }
+
+        public long routedGameId() {
+            return 0;
+        }
+
+        public boolean isRoutedSecond() {
+            return false;
+        }
+
+        public boolean isAlive() {
+            return alive && !closed;
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package Server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This is the move decoder test class. MoveDecoder replaced reading a line with BufferedReader.readLine()
+ * and parsing it with Integer.parseInt(), so it checks the two still agree on everything a client could send:
+ * the same column for every line, nonsense where parseInt() throws, and the lines split in the same places.
+ * The only differences are on purpose, a line longer than MAX_LINE_LENGTH is nonsense and every negative
+ * number is -1.
+ *
+ */
+class MoveDecoderTest {
+    private static final String ALPHABET = "0123456789012345678901234567890123456789+-+- aZ.\té²ÿ"; //Mostly digits, so plenty of lines are numbers.
+
+    @Test
+    void parsesLikeParseInt() {
+        String[] lines = {"", "0", "3", "6", "7", "-1", "-0", "+0", "+5", "007", "-007", " 3", "3 ", "3a", "+", "-", "--1", "+-1", "1-",
+                "2147483647", "2147483648", "-2147483648", "-2147483649", "99999999999999999999", "0000000000000000000000000000000000000003",
+                "²", "é"};
+        for (String line : lines) {
+            assertEquals(expected(line), MoveInput.parseColumn(line), "\"" + line + "\"");
+        }
+    }
+
+    @Test
+    void longLinesAreNonsense() {
+        String zeros = "0".repeat(MoveDecoder.MAX_LINE_LENGTH - 1);
+        assertEquals(3, MoveInput.parseColumn(zeros + "3")); //Just fits.
+        assertEquals(MoveInput.NOT_A_NUMBER, MoveInput.parseColumn(zeros + "03"));
+        assertEquals(MoveInput.NOT_A_NUMBER, MoveInput.parseColumn("1".repeat(MoveDecoder.MAX_LINE_LENGTH * 5)));
+    }
+
+    @Test
+    void randomLinesParseLikeParseInt() {
+        Random random = new Random(4);
+        for (int i = 0; i < 200_000; i++) {
+            String line = randomLine(random);
+            assertEquals(expected(line), MoveInput.parseColumn(line), "\"" + line + "\"");
+        }
+    }
+
+    @Test
+    void splitsLinesLikeReadLine() throws IOException {
+        Random random = new Random(5);
+        String[] breaks = {"\n", "\r", "\r\n"};
+        for (int i = 0; i < 2_000; i++) {
+            StringBuilder input = new StringBuilder();
+            int count = random.nextInt(20);
+            for (int line = 0; line < count; line++) {
+                input.append(randomLine(random)).append(breaks[random.nextInt(breaks.length)]);
+            }
+
+            List<Integer> expected = new ArrayList<>();
+            BufferedReader reader = new BufferedReader(new StringReader(input.toString()));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                expected.add(expected(line));
+            }
+
+            List<Integer> decoded = new ArrayList<>();
+            MoveDecoder decoder = new MoveDecoder();
+            for (int c = 0; c < input.length(); c++) {
+                int column = decoder.decode(input.charAt(c));
+                if (column != MoveDecoder.INCOMPLETE && column != MoveDecoder.SKIPPED) { //A too long line answers once, as soon as it is too long.
+                    decoded.add(column);
+                }
+            }
+            assertEquals(expected, decoded, input.toString());
+        }
+    }
+
+    /**
+     * expected() is what the server made of a line before there was a MoveDecoder, with the two differences on purpose.
+     */
+    private static int expected(String line) {
+        if (line.length() > MoveDecoder.MAX_LINE_LENGTH) {
+            return MoveInput.NOT_A_NUMBER;
+        }
+        try {
+            int column = Integer.parseInt(line);
+            return column < 0 ? -1 : column;
+        } catch (NumberFormatException e) {
+            return MoveInput.NOT_A_NUMBER;
+        }
+    }
+
+    /**
+     * randomLine() makes up a line, mostly short ones and now and then one around MAX_LINE_LENGTH. Only chars
+     * up to 255, the decoder is fed bytes (parseInt() would take digits of other scripts as well).
+     */
+    private static String randomLine(Random random) {
+        int length = random.nextInt(10) == 0 ? MoveDecoder.MAX_LINE_LENGTH - 2 + random.nextInt(5) : random.nextInt(12);
+        StringBuilder line = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            line.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,220 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This is the move journal test class. It writes games to a journal in a temporary directory, closes it the way
+ * a stopping server does (or tears its last record the way a crash does) and opens it again, then checks that
+ * exactly the unfinished games come back, with the moves that made it to disk, and that their players get
+ * their seats back with the tokens they were given and no others.
+ *
+ */
+class MoveJournalTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversOnlyUnfinishedGames() throws IOException {
+        MoveJournal journal = MoveJournal.open(directory);
+        MoveJournal.Game unfinished = journal.startGame(0, BinaryProtocol.VARIANT_LARGE, 0);
+        play(journal, unfinished, 3, 3, 4);
+        MoveJournal.Game ended = journal.startGame(0, BinaryProtocol.VARIANT_CLASSIC, 0);
+        play(journal, ended, 0, 1);
+        journal.endGame(ended, 3, MoveJournal.ABANDONED, ' ');
+        MoveJournal.Game won = journal.startGame(0, BinaryProtocol.VARIANT_CLASSIC, 0);
+        play(journal, won, 0, 1, 0, 1, 0, 1, 0); //X won, the server stopped before the END record.
+        journal.close();
+
+        journal = MoveJournal.open(directory);
+        assertEquals(1, journal.recovered().size());
+        MoveJournal.Game game = journal.recovered().get(0);
+        assertEquals(unfinished.id(), game.id());
+        assertEquals(BinaryProtocol.VARIANT_LARGE, game.variant());
+        assertEquals(unfinished.token('X'), game.token('X'));
+        assertEquals(unfinished.token('O'), game.token('O'));
+        assertEquals(4, game.sequence());
+        assertEquals(3, game.board().moveCount());
+        int bottom = game.board().rows() - 1;
+        assertEquals('X', game.board().pieceAt(bottom, 3));
+        assertEquals('O', game.board().pieceAt(bottom - 1, 3));
+        assertEquals('X', game.board().pieceAt(bottom, 4));
+        journal.close();
+
+        journal = MoveJournal.open(directory); //The won game's END was written when it was found, it stays over.
+        assertEquals(1, journal.recovered().size());
+        journal.close();
+    }
+
+    @Test
+    void recoversAfterATruncatedSegment() throws IOException {
+        MoveJournal journal = MoveJournal.open(directory);
+        MoveJournal.Game game = journal.startGame(0, BinaryProtocol.VARIANT_CLASSIC, 0);
+        play(journal, game, 2, 3, 2, 3, 4);
+        journal.close();
+
+        Path segment = firstSegment();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(6 * MoveJournal.RECORD_SIZE + 9); //Two seats, four moves and the first 9 bytes of the fifth.
+        }
+
+        journal = MoveJournal.open(directory);
+        assertEquals(1, journal.recovered().size());
+        MoveJournal.Game recovered = journal.recovered().get(0);
+        assertEquals(game.id(), recovered.id());
+        assertEquals(4, recovered.board().moveCount());
+        assertEquals(5, recovered.sequence());
+        assertEquals(' ', recovered.board().pieceAt(GameBoard.ROWS - 1, 4)); //The torn move is gone.
+        assertEquals('X', recovered.board().currentPlayer());
+        journal.close();
+    }
+
+    @Test
+    void skipsATornRecord() throws IOException {
+        MoveJournal journal = MoveJournal.open(directory);
+        MoveJournal.Game game = journal.startGame(0, BinaryProtocol.VARIANT_CLASSIC, 0);
+        play(journal, game, 5, 5, 6);
+        journal.close();
+
+        Path segment = firstSegment();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x7F}), 4 * MoveJournal.RECORD_SIZE + 14); //The last move's column, its check byte no longer matches.
+        }
+
+        journal = MoveJournal.open(directory);
+        MoveJournal.Game recovered = journal.recovered().get(0);
+        assertEquals(2, recovered.board().moveCount());
+        assertEquals(3, recovered.sequence());
+        journal.close();
+    }
+
+    @Test
+    void resumeTokensTakeTheirSeatsBack() throws IOException {
+        MoveJournal journal = MoveJournal.open(directory);
+        MoveJournal.Game game = journal.startGame(0, BinaryProtocol.VARIANT_CLASSIC, 0);
+        assertNotEquals(game.token('X'), game.token('O'));
+        play(journal, game, 3);
+        journal.close();
+
+        journal = MoveJournal.open(directory);
+        List<Returner[]> resumed = new ArrayList<>();
+        Lobby<Returner> lobby = new Lobby<>((from, p1, p2) -> { });
+        ResumableGames<Returner> resumes = new ResumableGames<>(journal, lobby,
+                (from, recovered, x, o) -> resumed.add(new Returner[]{x, o}), player -> { }, true);
+
+        int wrong = game.token('X') + 1;
+        if (wrong == game.token('O')) {
+            wrong++;
+        }
+        assertFalse(resumes.claim(new Returner(game.id(), wrong)));
+        assertFalse(resumes.claim(new Returner(game.id() + 1, game.token('X')))); //Not a game we have.
+        Returner x = new Returner(game.id(), game.token('X'));
+        assertTrue(resumes.claim(x));
+        assertTrue(resumed.isEmpty()); //Waits for 'O'.
+        assertFalse(resumes.claim(new Returner(game.id(), game.token('X')))); //Somebody already has that seat.
+        Returner o = new Returner(game.id(), game.token('O'));
+        assertTrue(resumes.claim(o));
+
+        assertEquals(1, resumed.size());
+        assertSame(x, resumed.get(0)[0]);
+        assertSame(o, resumed.get(0)[1]);
+        assertFalse(resumes.claim(new Returner(game.id(), game.token('O')))); //The game is back on, nothing left to claim.
+        journal.close();
+    }
+
+    /**
+     * play() writes the moves of a game, X first, numbered the way the game thread does.
+     */
+    private static void play(MoveJournal journal, MoveJournal.Game game, int... columns) {
+        char player = 'X';
+        for (int i = 0; i < columns.length; i++) {
+            journal.move(game, i + 2, player, columns[i]);
+            player = player == 'X' ? 'O' : 'X';
+        }
+    }
+
+    /**
+     * firstSegment() is the segment the games were written to. The one after it is only there because the
+     * flusher keeps the next segment ready.
+     */
+    private Path firstSegment() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.journal")) {
+            files.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments.get(0);
+    }
+
+    /**
+     * A player coming back to a game, with the id and token it was given.
+     */
+    private static final class Returner implements ResumableGames.Returning {
+        private final long gameId;
+        private final int token;
+        private boolean closed = false;
+
+        Returner(long gameId, int token) {
+            this.gameId = gameId;
+            this.token = token;
+        }
+
+        public long resumeGameId() {
+            return gameId;
+        }
+
+        public int resumeToken() {
+            return token;
+        }
+
+        public int variant() {
+            return BinaryProtocol.VARIANT_CLASSIC;
+        }
+
+        public int rating() {
+            return 0;
+        }
+
+        public int computerLevel() {
+            return 0;
+        }
+
+        public boolean isRouted() {
+            return false;
+        }
+
+        public long routedGameId() {
+            return 0;
+        }
+
+        public boolean isRoutedSecond() {
+            return false;
+        }
+
+        public boolean isAlive() {
+            return !closed;
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
+}
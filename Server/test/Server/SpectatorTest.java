@@ -0,0 +1,158 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This is the spectator test class. A spectator that keeps up gets every frame of the game, one that falls
+ * QUEUE_LIMIT frames behind has its queue replaced by a snapshot of the board as it is now, and the frames
+ * that aren't board updates (the end of the game) still come after it. The frames are shared between the
+ * spectators, so it also checks one spectator reading them doesn't move them for another.
+ *
+ */
+class SpectatorTest {
+
+    @Test
+    void keepingUpGetsEveryFrame() {
+        Board board = Board.create(BinaryProtocol.VARIANT_CLASSIC);
+        Spectators game = new Spectators(7, BinaryProtocol.VARIANT_CLASSIC);
+        game.update(board, 1, false);
+        Spectator spectator = new Spectator(7, true, null);
+        assertTrue(game.add(spectator));
+        assertEquals(List.of(BinaryProtocol.GAME_ID, BinaryProtocol.VARIANT, BinaryProtocol.SNAPSHOT), types(drain(spectator)));
+
+        for (int sequence = 2; sequence < 2 + 3 * Spectator.QUEUE_LIMIT; sequence++) { //Far more than fit in the queue, read as they come.
+            board.dropPiece(sequence % board.cols(), (sequence & 1) == 0 ? 'X' : 'O');
+            game.update(board, sequence, false);
+            List<ByteBuffer> frames = drain(spectator);
+            assertEquals(List.of(BinaryProtocol.DELTA), types(frames));
+            assertEquals(sequence, frames.get(0).getInt(3));
+            if (board.isFull()) {
+                board.reset();
+            }
+        }
+    }
+
+    @Test
+    void aFullQueueKeepsEveryFrame() {
+        Board board = Board.create(BinaryProtocol.VARIANT_CLASSIC);
+        Spectators game = new Spectators(7, BinaryProtocol.VARIANT_CLASSIC);
+        game.update(board, 1, false);
+        Spectator spectator = new Spectator(7, true, null);
+        game.add(spectator);
+        int last = fill(game, board);
+
+        List<ByteBuffer> frames = drain(spectator);
+        assertEquals(Spectator.QUEUE_LIMIT, frames.size()); //Right at the limit, nothing was thrown away yet.
+        assertEquals(List.of(BinaryProtocol.GAME_ID, BinaryProtocol.VARIANT, BinaryProtocol.SNAPSHOT), types(frames.subList(0, 3)));
+        assertEquals(last, frames.get(frames.size() - 1).getInt(3));
+    }
+
+    @Test
+    void fallingBehindGetsASnapshot() {
+        Board board = Board.create(BinaryProtocol.VARIANT_CLASSIC);
+        Spectators game = new Spectators(7, BinaryProtocol.VARIANT_CLASSIC);
+        game.update(board, 1, false);
+        Spectator spectator = new Spectator(7, true, null);
+        game.add(spectator);
+        int sequence = fill(game, board);
+
+        sequence++;
+        board.dropPiece(3, 'X');
+        game.update(board, sequence, false); //One too many.
+        List<ByteBuffer> frames = drain(spectator);
+        assertEquals(List.of(BinaryProtocol.SNAPSHOT), types(frames)); //Everything it missed is gone, the board as it is now instead.
+        assertEquals(sequence, frames.get(0).getInt(3));
+    }
+
+    @Test
+    void theEndOfTheGameComesAfterTheSnapshot() {
+        Board board = Board.create(BinaryProtocol.VARIANT_CLASSIC);
+        Spectators game = new Spectators(7, BinaryProtocol.VARIANT_CLASSIC);
+        game.update(board, 1, false);
+        Spectator spectator = new Spectator(7, true, null);
+        game.add(spectator);
+        fill(game, board);
+
+        game.gameOver(BinaryProtocol.WIN, 'X'); //Not a board update, it can't be left out.
+        assertEquals(List.of(BinaryProtocol.SNAPSHOT, BinaryProtocol.GAME_OVER), types(drain(spectator)));
+    }
+
+    @Test
+    void spectatorsShareFramesWithoutSharingPositions() {
+        Board board = Board.create(BinaryProtocol.VARIANT_CLASSIC);
+        Spectators game = new Spectators(7, BinaryProtocol.VARIANT_CLASSIC);
+        game.update(board, 1, false);
+        Spectator first = new Spectator(7, true, null);
+        Spectator second = new Spectator(7, true, null);
+        game.add(first);
+        game.add(second);
+        drain(first);
+        drain(second);
+
+        board.dropPiece(3, 'X');
+        game.update(board, 2, false);
+        ByteBuffer mine = first.poll();
+        mine.position(mine.limit()); //As if the socket took all of it.
+        ByteBuffer theirs = second.poll();
+        assertEquals(0, theirs.position());
+        assertEquals(mine.limit(), theirs.remaining());
+        assertEquals(BinaryProtocol.DELTA, theirs.get(2));
+    }
+
+    @Test
+    void goneSpectatorsAreForgotten() {
+        Board board = Board.create(BinaryProtocol.VARIANT_CLASSIC);
+        Spectators game = new Spectators(7, BinaryProtocol.VARIANT_CLASSIC);
+        Spectator spectator = new Spectator(7, true, null);
+        game.add(spectator);
+        spectator.close();
+        assertTrue(spectator.isClosed());
+        assertNull(spectator.poll());
+
+        board.dropPiece(0, 'X');
+        game.update(board, 2, false);
+        assertTrue(spectator.isEmpty());
+        assertFalse(game.end().contains(spectator)); //Dropped by the update.
+    }
+
+    /**
+     * fill() sends updates until a spectator that was just added (with its GAME_ID, VARIANT and SNAPSHOT) and
+     * never read anything has a full queue.
+     *
+     * @return The sequence number of the last update.
+     */
+    private static int fill(Spectators game, Board board) {
+        int sequence = 1;
+        for (int queued = 3; queued < Spectator.QUEUE_LIMIT; queued++) {
+            game.update(board, ++sequence, false);
+        }
+        return sequence;
+    }
+
+    private static List<ByteBuffer> drain(Spectator spectator) {
+        List<ByteBuffer> frames = new ArrayList<>();
+        ByteBuffer frame;
+        while ((frame = spectator.poll()) != null) {
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    private static List<Integer> types(List<ByteBuffer> frames) {
+        List<Integer> types = new ArrayList<>();
+        for (ByteBuffer frame : frames) {
+            types.add((int) frame.get(2)); //After the two length bytes.
+        }
+        return types;
+    }
+}
@@ -0,0 +1,82 @@
+package Server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This is the timing wheel test class. It runs on the shared wheel with the real clock, so it only checks
+ * what the wheel promises: a timeout never runs early, runs once it is due, runs in deadline order with the
+ * others, and doesn't run at all once it was cancelled.
+ *
+ */
+class TimingWheelTest {
+
+    @Test
+    void firesOnceDueAndNeverEarly() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        long[] firedAt = new long[1];
+        long scheduledAt = System.nanoTime();
+        TimingWheel.SHARED.schedule(() -> {
+            firedAt[0] = System.nanoTime();
+            fired.countDown();
+        }, 50);
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(firedAt[0] - scheduledAt >= TimeUnit.MILLISECONDS.toNanos(50), "Ran early");
+    }
+
+    @Test
+    void firesInDeadlineOrder() throws InterruptedException {
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch fired = new CountDownLatch(4);
+        int[] delays = {120, 30, 90, 60}; //At least a few ticks apart, each one lands in a bucket of its own.
+        for (int delay : delays) {
+            TimingWheel.SHARED.schedule(() -> {
+                order.add(delay);
+                fired.countDown();
+            }, delay);
+        }
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of(30, 60, 90, 120), order);
+    }
+
+    @Test
+    void cancelledNeverFires() throws InterruptedException {
+        AtomicBoolean ran = new AtomicBoolean(false);
+        TimingWheel.Timeout timeout = TimingWheel.SHARED.schedule(() -> ran.set(true), 30);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel()); //Only the first cancel counts.
+
+        CountDownLatch later = new CountDownLatch(1); //Once this has run, the cancelled one's bucket is long gone by.
+        TimingWheel.SHARED.schedule(later::countDown, 100);
+        assertTrue(later.await(2, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void tooLateToCancelOnceFired() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        TimingWheel.Timeout timeout = TimingWheel.SHARED.schedule(fired::countDown, 0);
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    void aFailingTaskDoesNotStopTheWheel() throws InterruptedException {
+        TimingWheel.SHARED.schedule(() -> {
+            throw new IllegalStateException("Broken on purpose.");
+        }, 10);
+        CountDownLatch fired = new CountDownLatch(2);
+        TimingWheel.SHARED.schedule(fired::countDown, 10); //Most likely the same bucket, after the broken one.
+        TimingWheel.SHARED.schedule(fired::countDown, 60);
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+    }
+}
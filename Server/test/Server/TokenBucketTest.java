@@ -0,0 +1,71 @@
+package Server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This is the token bucket test class. It runs on the real clock, with rates slow enough that nothing refills
+ * while a test takes its tokens and a sleep where it should: a full bucket lets a burst through and no more, it
+ * fills up at the rate but never past the burst, the debt a client runs up is capped, and a rate of 0 never
+ * runs out.
+ *
+ */
+class TokenBucketTest {
+
+    @Test
+    void aBurstAndNoMore() {
+        TokenBucket bucket = new TokenBucket(1, 5);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.take(), "Token " + i);
+        }
+        assertFalse(bucket.take());
+        assertFalse(bucket.take());
+    }
+
+    @Test
+    void fillsUpAtTheRate() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100, 2); //A token every 10 ms.
+        assertTrue(bucket.take());
+        assertTrue(bucket.take());
+        assertFalse(bucket.take()); //One in debt, two to go until the next token.
+        long waitNanos = bucket.nanosUntilToken();
+        assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(15) && waitNanos <= TimeUnit.MILLISECONDS.toNanos(20), "Waits " + waitNanos);
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos) + 5);
+        assertEquals(0, bucket.nanosUntilToken());
+        assertTrue(bucket.take());
+    }
+
+    @Test
+    void neverFillsPastTheBurst() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100, 3);
+        Thread.sleep(100); //Ten tokens' worth.
+        for (int i = 0; i < 3; i++) {
+            assertTrue(bucket.take(), "Token " + i);
+        }
+        assertFalse(bucket.take());
+    }
+
+    @Test
+    void debtIsCappedAtABurst() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+        for (int i = 0; i < 1_000; i++) {
+            bucket.take();
+        }
+        long waitNanos = bucket.nanosUntilToken(); //From 3 in debt up to one token is 4 seconds, not 997.
+        assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(3_900) && waitNanos <= TimeUnit.SECONDS.toNanos(4), "Waits " + waitNanos);
+    }
+
+    @Test
+    void noLimit() {
+        TokenBucket bucket = new TokenBucket(0, 1);
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(bucket.take());
+        }
+        assertEquals(0, bucket.nanosUntilToken());
+    }
+}
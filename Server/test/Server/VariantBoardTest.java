@@ -0,0 +1,141 @@
+package Server;
+
+import Protocol.BinaryProtocol;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This is the variant board test class. VariantBoard never scans the board for a win, it keeps the length of
+ * the runs in every direction and joins them up as pieces drop, so it plays random games on both variants and
+ * checks the result against a scan of every line on the board after every move. Dropping a piece between two
+ * runs of the same player is where the bookkeeping can go wrong, so that is also tried on purpose in rows and
+ * both diagonals (a column only ever grows at the top).
+ *
+ */
+class VariantBoardTest {
+    private static final int[] VARIANTS = {BinaryProtocol.VARIANT_LARGE, BinaryProtocol.VARIANT_GRAND};
+
+    @Test
+    void randomGamesMatchTheScan() {
+        Random random = new Random(6);
+        for (int variant : VARIANTS) {
+            for (int game = 0; game < 5_000; game++) {
+                play(Board.create(variant), random);
+            }
+        }
+    }
+
+    @Test
+    void joiningTwoRuns() {
+        //Large, connect 4. X gets two runs with a gap and fills it last, O plays out of the way.
+        assertWins(BinaryProtocol.VARIANT_LARGE, 'X', 0, 8, 1, 8, 3, 7, 2); //A row, 2 + 1 + 1.
+        assertWins(BinaryProtocol.VARIANT_LARGE, 'X', 0, 8, 2, 8, 3, 7, 1); //A row, 1 + 1 + 2.
+        assertWins(BinaryProtocol.VARIANT_LARGE, 'X', 0, 1, 2, 2, 2, 3, 3, 3, 3, 8, 1); //Up to the right, 1 + 1 + 2.
+        assertWins(BinaryProtocol.VARIANT_LARGE, 'X', 8, 7, 6, 6, 6, 5, 5, 5, 5, 0, 7); //Up to the left, 1 + 1 + 2.
+        //Grand, connect 5.
+        assertWins(BinaryProtocol.VARIANT_GRAND, 'X', 0, 11, 1, 11, 3, 10, 4, 10, 2); //A row, 2 + 1 + 2.
+        assertWins(BinaryProtocol.VARIANT_GRAND, 'O', 11, 0, 11, 1, 10, 3, 11, 4, 10, 5, 9, 2); //A row, 2 + 1 + 3, longer than it has to be.
+    }
+
+    @Test
+    void joinedRunsShortOfALine() {
+        //Two runs of one joined by a piece in the middle are three, not a win on the large board.
+        Board board = Board.create(BinaryProtocol.VARIANT_LARGE);
+        char[][] reference = emptyReference(board);
+        int[] moves = {0, 8, 2, 8, 1};
+        char player = 'X';
+        for (int col : moves) {
+            drop(board, reference, col, player);
+            assertEquals(' ', board.winCheck('X'));
+            assertEquals(' ', board.winCheck('O'));
+            player = player == 'X' ? 'O' : 'X';
+        }
+        assertFalse(board.isFull());
+    }
+
+    /**
+     * play() plays one random game until somebody wins or the board is full.
+     */
+    private static void play(Board board, Random random) {
+        char[][] reference = emptyReference(board);
+        char player = 'X';
+        while (true) {
+            int col = random.nextInt(board.cols());
+            if (!board.canPlay(col)) {
+                continue;
+            }
+            drop(board, reference, col, player);
+            char other = player == 'X' ? 'O' : 'X';
+            assertEquals(hasLine(reference, player, board.connect()) ? player : ' ', board.winCheck(player));
+            assertEquals(' ', board.winCheck(other)); //Their last move didn't win, and this one can't have made them.
+            if (board.winCheck(player) != ' ' || board.isFull()) {
+                return;
+            }
+            player = other;
+        }
+    }
+
+    private static void assertWins(int variant, char winner, int... moves) {
+        Board board = Board.create(variant);
+        char[][] reference = emptyReference(board);
+        char player = 'X';
+        for (int move = 0; move < moves.length; move++) {
+            drop(board, reference, moves[move], player);
+            char expected = move == moves.length - 1 ? winner : ' '; //Only the last move wins.
+            assertEquals(expected != ' ', hasLine(reference, player, board.connect()), "Move " + move);
+            assertEquals(expected, board.winCheck(player), "Move " + move);
+            player = player == 'X' ? 'O' : 'X';
+        }
+    }
+
+    private static void drop(Board board, char[][] reference, int col, char player) {
+        assertTrue(board.dropPiece(col, player));
+        int row = reference.length - 1;
+        while (reference[row][col] != ' ') {
+            row--;
+        }
+        reference[row][col] = player;
+        assertEquals(row, board.placedRow());
+        assertEquals(col, board.placedCol());
+        assertEquals(player, board.pieceAt(row, col));
+    }
+
+    private static char[][] emptyReference(Board board) {
+        char[][] reference = new char[board.rows()][board.cols()];
+        for (char[] row : reference) {
+            Arrays.fill(row, ' ');
+        }
+        return reference;
+    }
+
+    /**
+     * hasLine() looks at every cell of the board in every direction for connect of the players pieces in a row.
+     */
+    private static boolean hasLine(char[][] board, char player, int connect) {
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {-1, 1}};
+        for (int row = 0; row < board.length; row++) {
+            for (int col = 0; col < board[row].length; col++) {
+                for (int[] direction : directions) {
+                    int count = 0;
+                    int r = row;
+                    int c = col;
+                    while (r >= 0 && r < board.length && c >= 0 && c < board[r].length && board[r][c] == player && count < connect) {
+                        count++;
+                        r += direction[0];
+                        c += direction[1];
+                    }
+                    if (count == connect) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}